@@ -0,0 +1,629 @@
+package opencranium;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import opencranium.cera.Layer;
+import opencranium.cranium.Activation;
+import opencranium.cranium.Processable;
+import opencranium.cranium.ProcessableCodec;
+import opencranium.cranium.Processor;
+import opencranium.cranium.WorkspaceProcessor;
+import opencranium.util.Id;
+import opencranium.util.IdManager;
+import opencranium.util.Time;
+import opencranium.util.log.Logger;
+
+/**
+ * Saves and restores the state of a core: the ids of the IdManager, the
+ * current tick, the activation threshold of each layer, and the queue and the
+ * short term memory of each processor. The state is written in a compact
+ * binary format with a file channel, and it is read from a mapped file.
+ * <p>
+ * The processors are code, so they are not saved. The core to restore must
+ * be created with the same processors, registered in the same order, and the
+ * checkpoint fills their queues and memories. The processable elements are
+ * saved with the codec registered for their id, the elements without codec
+ * are skipped.
+ * 
+ * @see ProcessableCodec
+ * 
+ * @author Jorge Muñoz
+ * @author Raúl Arrabales
+ */
+public class Checkpoint {
+
+	/**
+	 * Mark at the beginning of the files.
+	 */
+	private static final int MAGIC = 0x4F43434B;
+
+	/**
+	 * Version of the format.
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * Charset of the strings.
+	 */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Number of the id of the null elements.
+	 */
+	private static final int NULL = -1;
+
+	/**
+	 * Codecs of the processable elements, indexed by the number of their id.
+	 */
+	private final Map<Integer, ProcessableCodec> codecs;
+
+	/**
+	 * Buffer where the checkpoint is written.
+	 */
+	private ByteBuffer buffer;
+
+	/**
+	 * Number of elements saved or restored in the last operation.
+	 */
+	private int elements;
+
+	/**
+	 * Number of elements skipped in the last operation.
+	 */
+	private int skipped;
+
+	/**
+	 * The state of a processor read from a checkpoint, applied to the
+	 * processor once the whole checkpoint has been read.
+	 */
+	private static class ProcessorState {
+
+		/**
+		 * The processor of the core, null if it was not found.
+		 */
+		private Processor processor;
+
+		/**
+		 * The elements of the queue.
+		 */
+		private Processable[] queue;
+
+		/**
+		 * The short term memory, null if it was not saved.
+		 */
+		private Processable[] memory;
+
+	}
+
+	/**
+	 * Default constructor.
+	 */
+	public Checkpoint() {
+		this.codecs = new HashMap<Integer, ProcessableCodec>();
+	}
+
+	/**
+	 * Registers the codec of the processable elements with an id.
+	 * 
+	 * @param id
+	 *            The id of the elements.
+	 * @param codec
+	 *            The codec, null to remove it.
+	 */
+	public synchronized void registerCodec(Id id, ProcessableCodec codec) {
+		if (codec == null) {
+			this.codecs.remove(id.getId());
+		} else {
+			this.codecs.put(id.getId(), codec);
+		}
+	}
+
+	/**
+	 * Saves the state of a core into a file. A record in the log is stored if
+	 * the state is not correctly saved.
+	 * 
+	 * @param core
+	 *            The core.
+	 * @param file
+	 *            The file where the state is saved.
+	 * @return true if the state was saved, false otherwise.
+	 */
+	public synchronized boolean save(Core core, File file) {
+		this.elements = 0;
+		this.skipped = 0;
+		if (this.buffer == null) {
+			this.buffer = ByteBuffer.allocate(64 * 1024);
+		}
+		this.buffer.clear();
+		this.ensure(8);
+		this.buffer.putInt(MAGIC);
+		this.buffer.putInt(VERSION);
+		List<Id> ids = IdManager.instance().getIds();
+		this.ensure(4);
+		this.buffer.putInt(ids.size());
+		for (Id id : ids) {
+			this.ensure(4);
+			this.buffer.putInt(id.getId());
+			this.putString(id.getName());
+			this.putString(id.getProcessableClass().getName());
+		}
+		Time tick = core.getCurrentTick();
+		this.ensure(12);
+		this.buffer.putInt(tick.getTick());
+		this.buffer.putLong(tick.getMilliseconds());
+		for (Layer.Type type : Layer.Type.values()) {
+			Layer layer = core.getLayer(type);
+			List<Processor> processors = layer.getProcessors();
+			this.ensure(8);
+			this.buffer.putInt(layer.getActivationThreshold().getValue());
+			this.buffer.putInt(processors.size());
+			for (Processor processor : processors) {
+				this.ensure(4);
+				this.buffer.putInt(processor.getId().getId());
+				this.putQueue(processor.getQueued());
+				Processable[] memory = null;
+				if (processor instanceof WorkspaceProcessor) {
+					memory = ((WorkspaceProcessor) processor).getSortTermMemory();
+				}
+				this.putMemory(memory);
+			}
+		}
+		this.buffer.flip();
+		boolean saved = false;
+		FileOutputStream fos = null;
+		try {
+			fos = new FileOutputStream(file);
+			FileChannel channel = fos.getChannel();
+			while (this.buffer.hasRemaining()) {
+				channel.write(this.buffer);
+			}
+			saved = true;
+		} catch (IOException e) {
+			Logger.warning("Checkpoint.save(Core, File)", "Checkpoint not saved due an IOException");
+			Logger.exception(e);
+		} finally {
+			if (fos != null) {
+				try {
+					fos.close();
+				} catch (IOException e) {
+					Logger.warning("Checkpoint.save(Core, File)", "File not closed when saving the checkpoint");
+					Logger.exception(e);
+				}
+			}
+		}
+		return saved;
+	}
+
+	/**
+	 * Restores the state of a core from a file. The processors of the core
+	 * are matched by layer, id and order with the saved ones, the elements of
+	 * the processors not found are skipped. The elements waiting in the queues
+	 * of the processors restored are replaced by the saved ones. A record in
+	 * the log is stored if the state is not correctly restored.
+	 * 
+	 * @param core
+	 *            The core, with the same processors as the saved one.
+	 * @param file
+	 *            The file that contains the state.
+	 * @return true if the state was restored, false otherwise.
+	 */
+	public synchronized boolean restore(Core core, File file) {
+		this.elements = 0;
+		this.skipped = 0;
+		boolean restored = false;
+		FileInputStream fis = null;
+		try {
+			fis = new FileInputStream(file);
+			FileChannel channel = fis.getChannel();
+			ByteBuffer input = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (input.remaining() < 8 || input.getInt() != MAGIC || input.getInt() != VERSION) {
+				Logger.warning("Checkpoint.restore(Core, File)", "The file is not a checkpoint: " + file);
+			} else {
+				this.restore(core, input);
+				restored = true;
+			}
+		} catch (IOException e) {
+			Logger.warning("Checkpoint.restore(Core, File)", "Checkpoint not restored due an IOException");
+			Logger.exception(e);
+		} catch (BufferUnderflowException e) {
+			Logger.warning("Checkpoint.restore(Core, File)", "Checkpoint not restored, the file is truncated");
+			Logger.exception(e);
+		} catch (OpenCraniumException e) {
+			Logger.warning("Checkpoint.restore(Core, File)", "Checkpoint not restored, the file is corrupted");
+			Logger.exception(e);
+		} finally {
+			if (fis != null) {
+				try {
+					fis.close();
+				} catch (IOException e) {
+					Logger.warning("Checkpoint.restore(Core, File)", "File not closed when restoring the checkpoint");
+					Logger.exception(e);
+				}
+			}
+		}
+		return restored;
+	}
+
+	/**
+	 * @return the number of processable elements saved or restored in the
+	 *         last operation.
+	 */
+	public synchronized int getElements() {
+		return this.elements;
+	}
+
+	/**
+	 * @return the number of processable elements skipped in the last
+	 *         operation, because they had no codec or their processor was not
+	 *         found.
+	 */
+	public synchronized int getSkipped() {
+		return this.skipped;
+	}
+
+	/**
+	 * Restores the state of a core from a buffer. The whole buffer is read
+	 * before the core is modified, so the core is not changed if the buffer is
+	 * truncated or corrupted.
+	 * 
+	 * @param core
+	 *            The core.
+	 * @param input
+	 *            The buffer, after the header.
+	 * @throws BufferUnderflowException
+	 *             If the buffer is truncated.
+	 * @throws OpenCraniumException
+	 *             If the buffer is corrupted.
+	 */
+	private void restore(Core core, ByteBuffer input) {
+		Map<Integer, Id> ids = new HashMap<Integer, Id>();
+		int count = this.getCount(input);
+		for (int i = 0; i < count; i++) {
+			int number = input.getInt();
+			String name = this.getString(input);
+			String className = this.getString(input);
+			try {
+				ids.put(number, IdManager.instance().getId(name, Class.forName(className)));
+			} catch (ClassNotFoundException e) {
+				Logger.warning("Checkpoint.restore(Core, File)", "Class of the id not found: " + className);
+			}
+		}
+		int tick = input.getInt();
+		Time currentTick = new Time(tick, input.getLong());
+		Layer.Type[] types = Layer.Type.values();
+		int[] thresholds = new int[types.length];
+		List<List<ProcessorState>> states = new ArrayList<List<ProcessorState>>(types.length);
+		for (int t = 0; t < types.length; t++) {
+			thresholds[t] = input.getInt();
+			List<Processor> processors = core.getLayer(types[t]).getProcessors();
+			count = this.getCount(input);
+			List<ProcessorState> layerStates = new ArrayList<ProcessorState>(count);
+			for (int i = 0; i < count; i++) {
+				ProcessorState state = new ProcessorState();
+				state.processor = this.takeProcessor(processors, ids.get(input.getInt()));
+				state.queue = this.getElements(input, ids, state.processor != null);
+				int size = input.getInt();
+				if (size != NULL) {
+					state.memory = new Processable[this.checkCount(input, size)];
+					for (int j = 0; j < size; j++) {
+						state.memory[j] = this.getElement(input, ids, state.processor != null);
+					}
+				}
+				layerStates.add(state);
+			}
+			states.add(layerStates);
+		}
+
+		core.setCurrentTick(currentTick);
+		for (int t = 0; t < types.length; t++) {
+			core.getLayer(types[t]).setActivationThreshold(new Activation(thresholds[t]));
+			for (ProcessorState state : states.get(t)) {
+				if (state.processor != null) {
+					// the restored queue replaces the elements waiting
+					for (Processable processable : state.processor.removeQueued()) {
+						Processor.release(processable);
+					}
+					state.processor.addProcessables(state.queue);
+					if (state.processor instanceof WorkspaceProcessor && state.memory != null) {
+						((WorkspaceProcessor) state.processor).setSortTermMemory(state.memory);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes from a list the first processor with an id.
+	 * 
+	 * @param processors
+	 *            The processors not restored yet.
+	 * @param id
+	 *            The id.
+	 * @return The processor, null if there is none.
+	 */
+	private Processor takeProcessor(List<Processor> processors, Id id) {
+		if (id != null) {
+			for (int i = 0; i < processors.size(); i++) {
+				if (processors.get(i).getId().equals(id)) {
+					return processors.remove(i);
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Writes the elements of a queue, skipping the elements without codec.
+	 * The elements are retained while they are written, so a recyclable
+	 * element processed meanwhile is not reused.
+	 * 
+	 * @param queue
+	 *            The elements.
+	 */
+	private void putQueue(Processable[] queue) {
+		retain(queue);
+		try {
+			this.ensure(4);
+			int position = this.buffer.position();
+			this.buffer.putInt(0);
+			int count = 0;
+			for (Processable processable : queue) {
+				if (this.putElement(processable)) {
+					count++;
+				}
+			}
+			this.buffer.putInt(position, count);
+		} finally {
+			release(queue);
+		}
+	}
+
+	/**
+	 * Writes a short term memory, the elements without codec are written as
+	 * null. The elements are retained while they are written.
+	 * 
+	 * @param memory
+	 *            The memory, can be null.
+	 */
+	private void putMemory(Processable[] memory) {
+		this.ensure(4);
+		if (memory == null) {
+			this.buffer.putInt(NULL);
+			return;
+		}
+		retain(memory);
+		try {
+			this.buffer.putInt(memory.length);
+			for (Processable processable : memory) {
+				if (!this.putElement(processable)) {
+					this.ensure(4);
+					this.buffer.putInt(NULL);
+				}
+			}
+		} finally {
+			release(memory);
+		}
+	}
+
+	/**
+	 * Retains some elements.
+	 * 
+	 * @param processables
+	 *            The elements, the null ones are ignored.
+	 */
+	private static void retain(Processable[] processables) {
+		for (Processable processable : processables) {
+			if (processable != null) {
+				Processor.retain(processable);
+			}
+		}
+	}
+
+	/**
+	 * Releases some elements.
+	 * 
+	 * @param processables
+	 *            The elements, the null ones are ignored.
+	 */
+	private static void release(Processable[] processables) {
+		for (Processable processable : processables) {
+			if (processable != null) {
+				Processor.release(processable);
+			}
+		}
+	}
+
+	/**
+	 * Writes a processable element with its codec.
+	 * 
+	 * @param processable
+	 *            The element, can be null.
+	 * @return true if it was written, false if it is null or it has no codec.
+	 */
+	private boolean putElement(Processable processable) {
+		if (processable == null) {
+			return false;
+		}
+		ProcessableCodec codec = this.codecs.get(processable.getId().getId());
+		if (codec == null) {
+			this.skipped++;
+			return false;
+		}
+		int start = this.buffer.position();
+		while (true) {
+			try {
+				this.ensure(8);
+				this.buffer.putInt(processable.getId().getId());
+				this.buffer.putInt(0);
+				codec.encode(processable, this.buffer);
+				break;
+			} catch (BufferOverflowException e) {
+				this.buffer.position(start);
+				this.grow(this.buffer.capacity());
+			}
+		}
+		this.buffer.putInt(start + 4, this.buffer.position() - start - 8);
+		this.elements++;
+		return true;
+	}
+
+	/**
+	 * Reads the elements of a queue.
+	 * 
+	 * @param input
+	 *            The buffer.
+	 * @param ids
+	 *            The ids, indexed by their saved number.
+	 * @param decode
+	 *            false to skip the elements.
+	 * @return The elements decoded.
+	 */
+	private Processable[] getElements(ByteBuffer input, Map<Integer, Id> ids, boolean decode) {
+		int count = this.getCount(input);
+		List<Processable> queue = new ArrayList<Processable>(count);
+		for (int i = 0; i < count; i++) {
+			Processable processable = this.getElement(input, ids, decode);
+			if (processable != null) {
+				queue.add(processable);
+			}
+		}
+		return queue.toArray(new Processable[queue.size()]);
+	}
+
+	/**
+	 * Reads a processable element.
+	 * 
+	 * @param input
+	 *            The buffer.
+	 * @param ids
+	 *            The ids, indexed by their saved number.
+	 * @param decode
+	 *            false to skip the element.
+	 * @return The element, null if it was null or skipped.
+	 */
+	private Processable getElement(ByteBuffer input, Map<Integer, Id> ids, boolean decode) {
+		int number = input.getInt();
+		if (number == NULL) {
+			return null;
+		}
+		int length = input.getInt();
+		if (length < 0 || length > input.remaining()) {
+			throw new OpenCraniumException("Invalid length of an element: " + length, this);
+		}
+		int end = input.position() + length;
+		Id id = ids.get(number);
+		ProcessableCodec codec = id == null ? null : this.codecs.get(id.getId());
+		Processable processable = null;
+		if (decode && codec != null) {
+			ByteBuffer data = input.slice();
+			data.limit(length);
+			try {
+				processable = codec.decode(id, data);
+			} catch (RuntimeException e) {
+				throw new OpenCraniumException("Element not decoded: " + e, this);
+			}
+			this.elements++;
+		} else {
+			this.skipped++;
+		}
+		input.position(end);
+		return processable;
+	}
+
+	/**
+	 * Writes a string.
+	 * 
+	 * @param string
+	 *            The string.
+	 */
+	private void putString(String string) {
+		byte[] bytes = string.getBytes(UTF8);
+		this.ensure(4 + bytes.length);
+		this.buffer.putInt(bytes.length);
+		this.buffer.put(bytes);
+	}
+
+	/**
+	 * Reads a string.
+	 * 
+	 * @param input
+	 *            The buffer.
+	 * @return The string.
+	 */
+	private String getString(ByteBuffer input) {
+		int length = input.getInt();
+		if (length < 0 || length > input.remaining()) {
+			throw new OpenCraniumException("Invalid length of a string: " + length, this);
+		}
+		byte[] bytes = new byte[length];
+		input.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * Reads a number of items, each of them of at least 4 bytes.
+	 * 
+	 * @param input
+	 *            The buffer.
+	 * @return The number of items.
+	 */
+	private int getCount(ByteBuffer input) {
+		return this.checkCount(input, input.getInt());
+	}
+
+	/**
+	 * Checks a number of items read, each of them of at least 4 bytes, so a
+	 * corrupted number does not allocate a huge array.
+	 * 
+	 * @param input
+	 *            The buffer.
+	 * @param count
+	 *            The number of items.
+	 * @return The number of items.
+	 */
+	private int checkCount(ByteBuffer input, int count) {
+		if (count < 0 || count > input.remaining() / 4) {
+			throw new OpenCraniumException("Invalid number of items: " + count, this);
+		}
+		return count;
+	}
+
+	/**
+	 * Makes sure the buffer has room for some bytes.
+	 * 
+	 * @param bytes
+	 *            The number of bytes.
+	 */
+	private void ensure(int bytes) {
+		if (this.buffer.remaining() < bytes) {
+			this.grow(bytes);
+		}
+	}
+
+	/**
+	 * Grows the buffer keeping its content.
+	 * 
+	 * @param bytes
+	 *            Minimum number of bytes to add.
+	 */
+	private void grow(int bytes) {
+		int capacity = Math.max(this.buffer.capacity() * 2, this.buffer.capacity() + bytes);
+		ByteBuffer bigger = ByteBuffer.allocate(capacity);
+		this.buffer.flip();
+		bigger.put(this.buffer);
+		this.buffer = bigger;
+	}
+
+}
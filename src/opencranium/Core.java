@@ -4,13 +4,23 @@ import static opencranium.Property.MULTI_POOL;
 import static opencranium.Property.RUNTIME_THREADS;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
 
 import opencranium.cera.CoreLayer;
+import opencranium.cera.Layer;
 import opencranium.cera.MissionLayer;
 import opencranium.cera.PhysicalLayer;
+import opencranium.cera.RoutingTable;
 import opencranium.cera.SensoryMotorLayer;
+import opencranium.cranium.Processable;
 import opencranium.cranium.ProcessorThreadPool;
+import opencranium.cranium.ProvenanceStore;
+import opencranium.util.Clock;
 import opencranium.util.Time;
+import opencranium.util.VirtualClock;
 import opencranium.util.configuration.Properties;
 import opencranium.util.log.Logger;
 
@@ -29,14 +39,141 @@ public class Core implements Runnable {
 	public static final String PROPERTIES = "ceracranium.properties";
 
 	/**
-	 * Unique instance of the class.
+	 * Holder of the default instance of the class, created the first time it
+	 * is used.
 	 */
-	private static Core core = new Core();
+	private static class Instance {
+
+		/**
+		 * Default instance of the class.
+		 */
+		private static final Core CORE = create(new File(PROPERTIES));
+
+	}
 
 	/**
-	 * Current time of execution.
+	 * Builder of cores. By default a core uses one pool of threads for all the
+	 * layers with the default number of threads.
+	 * 
+	 * @see Core#builder()
+	 * 
+	 * @author Jorge Muñoz
+	 * @author Raúl Arrabales
+	 */
+	public static class Builder {
+
+		/**
+		 * true to use one pool of threads per layer.
+		 */
+		private boolean multiPool;
+
+		/**
+		 * Number of threads of each pool.
+		 */
+		private int threads;
+
+		/**
+		 * Pool of threads created outside shared by all the layers, null to
+		 * create the pools.
+		 */
+		private ProcessorThreadPool threadPool;
+
+		/**
+		 * Default constructor.
+		 */
+		public Builder() {
+		}
+
+		/**
+		 * @param multiPool
+		 *            true to use one pool of threads per layer, false to use
+		 *            one pool for all the layers.
+		 * @return this builder.
+		 */
+		public Builder multiPool(boolean multiPool) {
+			this.multiPool = multiPool;
+			return this;
+		}
+
+		/**
+		 * @param threads
+		 *            Number of threads of each pool, zero or negative values
+		 *            means the default number of threads.
+		 * @return this builder.
+		 */
+		public Builder threads(int threads) {
+			this.threads = threads;
+			return this;
+		}
+
+		/**
+		 * @param threadPool
+		 *            Pool of threads created outside shared by all the layers,
+		 *            null to create the pools of the core.
+		 * @return this builder.
+		 * @see Core#Core(ProcessorThreadPool)
+		 */
+		public Builder threadPool(ProcessorThreadPool threadPool) {
+			this.threadPool = threadPool;
+			return this;
+		}
+
+		/**
+		 * Reads the number of threads and the multipool mode from a properties
+		 * file. The values not in the file are left unchanged.
+		 * 
+		 * @param file
+		 *            The properties file.
+		 * @return this builder.
+		 * @see Property
+		 */
+		public Builder properties(File file) {
+			Properties properties = Properties.instance();
+			if (properties.load(file)) {
+				if (properties.exists(RUNTIME_THREADS)) {
+					this.threads = properties.intValue(RUNTIME_THREADS);
+				}
+				if (properties.exists(MULTI_POOL)) {
+					this.multiPool = properties.booleanValue(MULTI_POOL);
+				}
+			}
+			return this;
+		}
+
+		/**
+		 * Creates the core.
+		 * 
+		 * @return A new core.
+		 * @throws IllegalArgumentException
+		 *             If a shared pool of threads is set in multipool mode.
+		 */
+		public Core build() {
+			if (this.threadPool == null) {
+				return new Core(this.multiPool, this.threads);
+			}
+			if (this.multiPool) {
+				throw new IllegalArgumentException("A shared thread pool cannot be used in multipool mode.");
+			}
+			return new Core(this.threadPool);
+		}
+
+	}
+
+	/**
+	 * Core bound to each thread.
+	 */
+	private static final ThreadLocal<Core> CURRENT = new ThreadLocal<Core>();
+
+	/**
+	 * Current time of execution. It is replaced once per tick and never
+	 * modified, so it can be read without locks.
 	 */
-	private Time currentTick;
+	private volatile Time currentTick;
+
+	/**
+	 * Clock of the times of the ticks and of the elements created.
+	 */
+	private volatile Clock clock = Clock.SYSTEM;
 
 	/**
 	 * Sensory motor layer.
@@ -58,6 +195,23 @@ public class Core implements Runnable {
 	 */
 	private CoreLayer coreLayer;
 
+	/**
+	 * Table with the routes of the results of the layers.
+	 */
+	private RoutingTable routingTable;
+
+	/**
+	 * Routes of the results compiled from the routing table, indexed by the
+	 * ordinal of the source layer type and by the ordinal of the kind.
+	 */
+	private volatile Layer[][][] routes;
+
+	/**
+	 * Store of the provenance of the results, null if the results keep strong
+	 * references to the elements that generated them.
+	 */
+	private volatile ProvenanceStore provenanceStore;
+
 	/**
 	 * Thread pool of processors of all layer.
 	 */
@@ -96,7 +250,7 @@ public class Core implements Runnable {
 	/**
 	 * Variable to know if the architecture was started.
 	 */
-	private boolean started;
+	private volatile boolean started;
 
 	/**
 	 * Variable to know if the architecture use multipool or not.
@@ -140,61 +294,147 @@ public class Core implements Runnable {
 	private int coreLayerTime;
 
 	/**
-	 * Default constructor
-	 */
-	private Core() {
+	 * Default constructor. Several cores can be created in the same virtual
+	 * machine, each one with its own layers, thread pools and ticks.
+	 * 
+	 * @param multiPool
+	 *            true to use one pool of threads per layer, false to use one
+	 *            pool for all the layers.
+	 * @param threads
+	 *            Number of threads of each pool, zero or negative values means
+	 *            the default number of threads.
+	 */
+	public Core(boolean multiPool, int threads) {
 		this.currentTick = new Time(0, System.currentTimeMillis());
-		Properties properties = Properties.instance();
-		int threads = 0;
-		this.multiPool = false;
-		if (properties.load(new File(PROPERTIES))) {
-			if (properties.exists(RUNTIME_THREADS)) {
-				threads = properties.intValue(RUNTIME_THREADS);
-			}
-			if (properties.exists(MULTI_POOL)) {
-				this.multiPool = properties.booleanValue(MULTI_POOL);
-			}
-		}
+		this.multiPool = multiPool;
 		if (multiPool) {
-			if (threads > 0) {
-				this.threadPoolSensoryMotor = new ProcessorThreadPool(threads);
-				this.threadPoolPhysical = new ProcessorThreadPool(threads);
-				this.threadPoolMission = new ProcessorThreadPool(threads);
-				this.threadPoolCore = new ProcessorThreadPool(threads);
-			} else {
-				this.threadPoolSensoryMotor = new ProcessorThreadPool();
-				this.threadPoolPhysical = new ProcessorThreadPool();
-				this.threadPoolMission = new ProcessorThreadPool();
-				this.threadPoolCore = new ProcessorThreadPool();
-			}
+			this.threadPoolSensoryMotor = createThreadPool(threads);
+			this.threadPoolPhysical = createThreadPool(threads);
+			this.threadPoolMission = createThreadPool(threads);
+			this.threadPoolCore = createThreadPool(threads);
 			this.sensoryMotorLayer = new SensoryMotorLayer(this, this.threadPoolSensoryMotor);
 			this.physicalLayer = new PhysicalLayer(this, this.threadPoolPhysical);
 			this.missionLayer = new MissionLayer(this, this.threadPoolMission);
 			this.coreLayer = new CoreLayer(this, this.threadPoolCore);
 		} else {
-			if (threads > 0) {
-				this.threadPool = new ProcessorThreadPool(threads);
-			} else {
-				this.threadPool = new ProcessorThreadPool();
-			}
+			this.threadPool = createThreadPool(threads);
 			this.sensoryMotorLayer = new SensoryMotorLayer(this, this.threadPool);
 			this.physicalLayer = new PhysicalLayer(this, this.threadPool);
 			this.missionLayer = new MissionLayer(this, this.threadPool);
 			this.coreLayer = new CoreLayer(this, this.threadPool);
 		}
+		this.setRoutingTable(RoutingTable.createDefault());
+	}
+
+	/**
+	 * Constructor of a core whose layers share a pool of threads created
+	 * outside, for example the pool of an agent of a scheduler shared by
+	 * several cores.
+	 * 
+	 * @param threadPool
+	 *            The pool of threads of all the layers.
+	 * @see opencranium.cranium.AgentScheduler#createAgent()
+	 */
+	public Core(ProcessorThreadPool threadPool) {
+		if (threadPool == null) {
+			throw new IllegalArgumentException("The thread pool cannot be null.");
+		}
+		this.currentTick = new Time(0, System.currentTimeMillis());
+		this.multiPool = false;
+		this.threadPool = threadPool;
+		this.threadPool.setCore(this);
+		this.sensoryMotorLayer = new SensoryMotorLayer(this, this.threadPool);
+		this.physicalLayer = new PhysicalLayer(this, this.threadPool);
+		this.missionLayer = new MissionLayer(this, this.threadPool);
+		this.coreLayer = new CoreLayer(this, this.threadPool);
+		this.setRoutingTable(RoutingTable.createDefault());
+	}
+
+	/**
+	 * Creates a core with the configuration of a properties file.
+	 * 
+	 * @param file
+	 *            The properties file. The default configuration is used if it
+	 *            cannot be loaded.
+	 * @return A new core.
+	 * @see Property
+	 */
+	public static Core create(File file) {
+		return builder().properties(file).build();
+	}
+
+	/**
+	 * @return a new builder of cores.
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Creates a thread pool owned by this core.
+	 * 
+	 * @param threads
+	 *            Number of threads, zero or negative values means the default
+	 *            number of threads.
+	 * @return The thread pool.
+	 */
+	private ProcessorThreadPool createThreadPool(int threads) {
+		ProcessorThreadPool pool = threads > 0 ? new ProcessorThreadPool(threads) : new ProcessorThreadPool();
+		pool.setCore(this);
+		return pool;
 	}
 
 	/**
-	 * Returns the unique instance of this class.
+	 * Returns the default instance of this class, configured with the
+	 * properties file. It is created the first time this method is called.
 	 * 
-	 * @return the unique instance of this class.
+	 * @return the default instance of this class.
+	 * @see #PROPERTIES
 	 */
 	public static Core instance() {
-		return core;
+		return Instance.CORE;
+	}
+
+	/**
+	 * Returns the core bound to the current thread. The threads of the pools,
+	 * the executors of the implicit processing, the mailboxes, the dispatch
+	 * threads of the workspaces and the clocks of a core are bound to it, so
+	 * the elements created by them take the ticks of their own core. A thread
+	 * without a core is warned and bound to the default instance.
+	 * 
+	 * @return The core bound to the current thread, or the default instance if
+	 *         there was none.
+	 * @see #setCurrent(Core)
+	 */
+	public static Core current() {
+		Core current = CURRENT.get();
+		if (current == null) {
+			Logger.warning("Core.current()", "No core bound to the thread " + Thread.currentThread().getName()
+					+ ", the default core is used");
+			current = instance();
+			CURRENT.set(current);
+		}
+		return current;
 	}
 
 	/**
-	 * Returns the current tick of execution.
+	 * Binds a core to the current thread.
+	 * 
+	 * @param core
+	 *            The core, null to unbind the current one.
+	 * @see #current()
+	 */
+	public static void setCurrent(Core core) {
+		if (core == null) {
+			CURRENT.remove();
+		} else {
+			CURRENT.set(core);
+		}
+	}
+
+	/**
+	 * Returns the current tick of execution. The time returned is a snapshot
+	 * published once per tick, it must not be updated.
 	 * 
 	 * @return the current tick of execution.
 	 */
@@ -208,8 +448,112 @@ public class Core implements Runnable {
 	 * @param tick
 	 *            current tick of execution.
 	 */
-	public void setCurrentTick(Time tick) {
-		this.currentTick.update(tick);
+	public synchronized void setCurrentTick(Time tick) {
+		this.currentTick = new Time(tick.getTick(), tick.getMilliseconds());
+	}
+
+	/**
+	 * Advances the current tick by one and notifies the new tick to all the
+	 * layers.
+	 * 
+	 * @return the new current tick.
+	 * @see Layer#systemTick(Time)
+	 * @see TickClock
+	 */
+	public synchronized Time nextTick() {
+		Time tick = new Time(this.currentTick.getTick() + 1, this.clock.currentTimeMillis());
+		this.currentTick = tick;
+		for (Layer.Type type : Layer.Type.values()) {
+			this.getLayer(type).systemTick(tick);
+		}
+		return tick;
+	}
+
+	/**
+	 * @return the clock of the times of the ticks and of the elements
+	 *         created.
+	 */
+	public Clock getClock() {
+		return this.clock;
+	}
+
+	/**
+	 * Sets the clock of the times of the ticks and of the elements created by
+	 * the processors of this core. The real time pacing of the thread pools
+	 * always uses the system clock.
+	 * 
+	 * @param clock
+	 *            the clock, by default the system clock.
+	 * @see #simulate(int, long)
+	 */
+	public void setClock(Clock clock) {
+		if (clock == null) {
+			throw new IllegalArgumentException("The clock cannot be null.");
+		}
+		this.clock = clock;
+	}
+
+	/**
+	 * Checks if all the layers are idle.
+	 * 
+	 * @return true if no layer has work.
+	 * @see Layer#isIdle()
+	 */
+	public boolean isIdle() {
+		for (Layer.Type type : Layer.Type.values()) {
+			if (!this.getLayer(type).isIdle()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Simulates the execution during some ticks with a virtual clock. Each
+	 * tick the method waits until all the layers are idle, then advances the
+	 * virtual clock by the period and advances the tick, so the ticks are as
+	 * fast as the work of the processors allows. The processors must be
+	 * executing without time limit, for example after calling execute().
+	 * 
+	 * @param ticks
+	 *            Number of ticks to simulate.
+	 * @param period
+	 *            Virtual time in milliseconds of each tick.
+	 * @return The current tick at the end of the simulation.
+	 * @throws OpenCraniumException
+	 *             If the clock of the core is not a virtual clock.
+	 * @see #setClock(Clock)
+	 * @see #execute()
+	 */
+	public Time simulate(int ticks, long period) {
+		Clock current = this.clock;
+		if (!(current instanceof VirtualClock)) {
+			throw new OpenCraniumException("The simulation needs a virtual clock.", this);
+		}
+		VirtualClock virtualClock = (VirtualClock) current;
+		for (int i = 0; i < ticks; i++) {
+			this.waitIdle();
+			virtualClock.advance(period);
+			this.nextTick();
+		}
+		this.waitIdle();
+		return this.currentTick;
+	}
+
+	/**
+	 * Waits until all the layers are idle. The layers are checked twice, so
+	 * an element submitted between the checks of two layers is not missed.
+	 */
+	private void waitIdle() {
+		int checks = 0;
+		while (checks < 2) {
+			if (this.isIdle()) {
+				checks++;
+			} else {
+				checks = 0;
+				LockSupport.parkNanos(10000);
+			}
+		}
 	}
 
 	/**
@@ -240,6 +584,88 @@ public class Core implements Runnable {
 		return this.coreLayer;
 	}
 
+	/**
+	 * Returns the layer of a type.
+	 * 
+	 * @param type
+	 *            The type of the layer.
+	 * @return The layer.
+	 */
+	public Layer getLayer(Layer.Type type) {
+		switch (type) {
+		case SENSORY_MOTOR_LAYER:
+			return this.sensoryMotorLayer;
+		case PHYSICAL_LAYER:
+			return this.physicalLayer;
+		case MISSION_LAYER:
+			return this.missionLayer;
+		default:
+			return this.coreLayer;
+		}
+	}
+
+	/**
+	 * @return the routing table
+	 */
+	public RoutingTable getRoutingTable() {
+		return this.routingTable;
+	}
+
+	/**
+	 * Sets the table with the routes of the results of the layers. The table
+	 * is validated and compiled here, the later changes in the table have no
+	 * effect until it is set again.
+	 * 
+	 * @param routingTable
+	 *            the routing table to set.
+	 */
+	public void setRoutingTable(RoutingTable routingTable) {
+		if (routingTable == null) {
+			throw new IllegalArgumentException("The routing table cannot be null.");
+		}
+		Layer[] layers = new Layer[Layer.Type.values().length];
+		for (Layer.Type type : Layer.Type.values()) {
+			layers[type.ordinal()] = this.getLayer(type);
+		}
+		this.routes = routingTable.compile(layers);
+		this.routingTable = routingTable;
+	}
+
+	/**
+	 * @return the provenance store, null if there is none.
+	 */
+	public ProvenanceStore getProvenanceStore() {
+		return this.provenanceStore;
+	}
+
+	/**
+	 * Sets the store of the provenance of the results generated by the
+	 * processors of the layers. With a store the results only keep the ids of
+	 * the elements that generated them, so long chains of results do not keep
+	 * all their ancestors in memory.
+	 * 
+	 * @param provenanceStore
+	 *            the provenance store, null to keep strong references to the
+	 *            elements that generated each result.
+	 */
+	public void setProvenanceStore(ProvenanceStore provenanceStore) {
+		this.provenanceStore = provenanceStore;
+	}
+
+	/**
+	 * Returns the layers which receive a kind of results of a type of layer.
+	 * The array must not be modified.
+	 * 
+	 * @param source
+	 *            The type of the layer which generates the results.
+	 * @param kind
+	 *            The kind of the results.
+	 * @return The target layers, null if there is no route.
+	 */
+	public Layer[] getRoute(Layer.Type source, Processable.Kind kind) {
+		return this.routes[source.ordinal()][kind.ordinal()];
+	}
+
 	/**
 	 * Resets all layers.
 	 */
@@ -266,6 +692,7 @@ public class Core implements Runnable {
 		} else {
 			this.threadPool.startAll();
 		}
+		this.started = true;
 	}
 
 	/**
@@ -284,6 +711,60 @@ public class Core implements Runnable {
 		} else {
 			this.threadPool.stopAll();
 		}
+		this.started = false;
+	}
+
+	/**
+	 * Stops the architecture gracefully. The mailboxes of the layers and the
+	 * dispatch threads of the workspaces are stopped, submitting to the
+	 * processors the elements waiting in them, the processors stop accepting
+	 * new elements, the layers are executed until the queues are empty or the
+	 * timeout expires, and the threads are stopped and joined. The elements
+	 * which were not processed, including the ones rejected by the closed
+	 * processors, are returned, so they can be persisted, for example with a
+	 * checkpoint before the shutdown.
+	 * 
+	 * @param timeout
+	 *            Maximum time in milliseconds to drain the queues and join the
+	 *            threads.
+	 * @return The elements dropped from the queues.
+	 * @throws OpenCraniumException
+	 *             If the architecture was not started or it is running as
+	 *             thread.
+	 * @see ProcessorThreadPool#drainAndStop(long)
+	 */
+	public Processable[] shutdown(long timeout) {
+		if (!this.started) {
+			throw new OpenCraniumException("Core was not previously started.", this);
+		}
+		if (this.running) {
+			throw new OpenCraniumException("Core is running as thread, it must be stopped first.", this);
+		}
+		if (timeout < 0) {
+			throw new IllegalArgumentException("The timeout cannot be negative.");
+		}
+		ProcessorThreadPool[] pools;
+		if (this.multiPool) {
+			pools = new ProcessorThreadPool[] { this.threadPoolSensoryMotor, this.threadPoolPhysical,
+					this.threadPoolMission, this.threadPoolCore };
+		} else {
+			pools = new ProcessorThreadPool[] { this.threadPool };
+		}
+		for (Layer.Type type : Layer.Type.values()) {
+			this.getLayer(type).stopThreads();
+		}
+		long deadline = System.currentTimeMillis() + timeout;
+		List<Processable> dropped = new ArrayList<Processable>();
+		for (ProcessorThreadPool pool : pools) {
+			long remaining = Math.max(0, deadline - System.currentTimeMillis());
+			dropped.addAll(Arrays.asList(pool.drainAndStop(remaining)));
+		}
+		// results of the last pools drained sent to the pools already stopped
+		for (ProcessorThreadPool pool : pools) {
+			dropped.addAll(Arrays.asList(pool.removeRejected()));
+		}
+		this.started = false;
+		return dropped.toArray(new Processable[dropped.size()]);
 	}
 
 	/**
@@ -448,12 +929,20 @@ public class Core implements Runnable {
 		this.running = false;
 	}
 
+	/**
+	 * Executes the layers in cycles until the architecture is stopped. The
+	 * current tick is advanced at the end of each cycle, so a TickClock must
+	 * not drive a core running as thread.
+	 * 
+	 * @see #nextTick()
+	 */
 	@Override
 	public void run() {
 		if (this.running) {
 			throw new OpenCraniumException("Core can be only started as thread once.", this);
 		}
 		this.running = true;
+		setCurrent(this);
 		startArchitecture();
 		if (this.multiPool) {
 			if (this.pauseTime > 0) {
@@ -462,6 +951,7 @@ public class Core implements Runnable {
 					this.threadPoolPhysical.executeDuring(this.physicalLayerTime);
 					this.threadPoolMission.executeDuring(this.missionLayerTime);
 					this.threadPoolCore.executeDuring(this.coreLayerTime);
+					this.nextTick();
 					try {
 						Thread.sleep(this.pauseTime);
 					} catch (InterruptedException e) {
@@ -474,12 +964,14 @@ public class Core implements Runnable {
 					this.threadPoolPhysical.executeDuring(this.physicalLayerTime);
 					this.threadPoolMission.executeDuring(this.missionLayerTime);
 					this.threadPoolCore.executeDuring(this.coreLayerTime);
+					this.nextTick();
 				}
 			}
 		} else {
 			if (this.pauseTime > 0) {
 				while (this.running) {
 					this.threadPool.executeDuring(this.executionTime);
+					this.nextTick();
 					try {
 						Thread.sleep(this.pauseTime);
 					} catch (InterruptedException e) {
@@ -489,6 +981,7 @@ public class Core implements Runnable {
 			} else {
 				while (this.running) {
 					this.threadPool.executeDuring(this.executionTime);
+					this.nextTick();
 				}
 			}
 		}
@@ -0,0 +1,246 @@
+package opencranium;
+
+import java.util.concurrent.locks.LockSupport;
+
+import opencranium.util.log.Logger;
+
+/**
+ * A driver of the ticks of a core at a fixed rate. The deadline of each tick
+ * is computed from the start of the clock and the period, not from the end of
+ * the previous tick, so the time spent advancing the ticks does not
+ * accumulate as drift. A tick that starts one period or more after its
+ * deadline is an overrun, the ticks missed are skipped instead of executed in
+ * a burst. The differences between the real period of the ticks and the
+ * nominal one are counted in a histogram of jitter.
+ * 
+ * @see Core#nextTick()
+ * 
+ * @author Jorge Muñoz
+ * @author Raúl Arrabales
+ */
+public class TickClock implements Runnable {
+
+	/**
+	 * Number of buckets of the histogram of jitter. The bucket i counts the
+	 * ticks with a jitter lower than 2^i microseconds, and the last one all
+	 * the greater jitters.
+	 */
+	public static final int HISTOGRAM_BUCKETS = 32;
+
+	/**
+	 * The core.
+	 */
+	private final Core core;
+
+	/**
+	 * Period of the ticks in nanoseconds.
+	 */
+	private final long period;
+
+	/**
+	 * Thread of the clock.
+	 */
+	private Thread thread;
+
+	/**
+	 * Variable to know if the clock is running.
+	 */
+	private volatile boolean running;
+
+	/**
+	 * Number of ticks advanced.
+	 */
+	private volatile long ticks;
+
+	/**
+	 * Number of ticks which started one period or more after their deadline.
+	 */
+	private volatile long overruns;
+
+	/**
+	 * Number of ticks skipped because of the overruns.
+	 */
+	private volatile long missedTicks;
+
+	/**
+	 * Maximum jitter in nanoseconds.
+	 */
+	private volatile long maximumJitter;
+
+	/**
+	 * Histogram of the jitter of the period of the ticks.
+	 */
+	private final long[] jitterHistogram;
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param core
+	 *            The core whose ticks are advanced.
+	 * @param period
+	 *            Period of the ticks in milliseconds, greater than 0.
+	 */
+	public TickClock(Core core, long period) {
+		if (core == null) {
+			throw new IllegalArgumentException("The core cannot be null.");
+		}
+		if (period <= 0) {
+			throw new IllegalArgumentException("The period must be greater than 0.");
+		}
+		this.core = core;
+		this.period = period * 1000000L;
+		this.jitterHistogram = new long[HISTOGRAM_BUCKETS];
+	}
+
+	/**
+	 * Starts the clock in a new thread.
+	 * 
+	 * @throws OpenCraniumException
+	 *             If the clock is running.
+	 */
+	public synchronized void start() {
+		if (this.running) {
+			throw new OpenCraniumException("The clock is running.", this);
+		}
+		this.running = true;
+		this.thread = new Thread(this, "TickClock");
+		this.thread.start();
+	}
+
+	/**
+	 * Stops the clock and waits until its thread ends.
+	 * 
+	 * @throws OpenCraniumException
+	 *             If the clock was not running.
+	 */
+	public void stop() {
+		Thread clockThread;
+		synchronized (this) {
+			if (!this.running) {
+				throw new OpenCraniumException("The clock was not running.", this);
+			}
+			this.running = false;
+			clockThread = this.thread;
+			this.thread = null;
+		}
+		LockSupport.unpark(clockThread);
+		try {
+			clockThread.join();
+		} catch (InterruptedException e) {
+			Logger.warning("TickClock.stop()", e.getMessage());
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		Core.setCurrent(this.core);
+		long deadline = System.nanoTime();
+		long lastTick = 0;
+		boolean first = true;
+		while (this.running) {
+			long now = System.nanoTime();
+			while (this.running && deadline - now > 0) {
+				LockSupport.parkNanos(deadline - now);
+				now = System.nanoTime();
+			}
+			if (!this.running) {
+				break;
+			}
+			long late = now - deadline;
+			if (late >= this.period) {
+				long missed = late / this.period;
+				this.overruns++;
+				this.missedTicks += missed;
+				deadline += missed * this.period;
+			}
+			if (!first) {
+				this.addJitter(Math.abs(now - lastTick - this.period));
+			}
+			first = false;
+			lastTick = now;
+			this.core.nextTick();
+			this.ticks++;
+			deadline += this.period;
+		}
+	}
+
+	/**
+	 * Counts the jitter of a tick in the histogram.
+	 * 
+	 * @param jitter
+	 *            The jitter in nanoseconds.
+	 */
+	private void addJitter(long jitter) {
+		if (jitter > this.maximumJitter) {
+			this.maximumJitter = jitter;
+		}
+		long microseconds = jitter / 1000L;
+		int bucket = Math.min(64 - Long.numberOfLeadingZeros(microseconds), HISTOGRAM_BUCKETS - 1);
+		synchronized (this.jitterHistogram) {
+			this.jitterHistogram[bucket]++;
+		}
+	}
+
+	/**
+	 * @return if the clock is running.
+	 */
+	public boolean isRunning() {
+		return this.running;
+	}
+
+	/**
+	 * @return the period of the ticks in milliseconds.
+	 */
+	public long getPeriod() {
+		return this.period / 1000000L;
+	}
+
+	/**
+	 * @return the number of ticks advanced.
+	 */
+	public long getTicks() {
+		return this.ticks;
+	}
+
+	/**
+	 * @return the number of ticks which started one period or more after their
+	 *         deadline.
+	 */
+	public long getOverruns() {
+		return this.overruns;
+	}
+
+	/**
+	 * @return the number of ticks skipped because of the overruns.
+	 */
+	public long getMissedTicks() {
+		return this.missedTicks;
+	}
+
+	/**
+	 * @return the maximum jitter of the period of the ticks in nanoseconds.
+	 */
+	public long getMaximumJitter() {
+		return this.maximumJitter;
+	}
+
+	/**
+	 * Returns the histogram of the jitter of the period of the ticks. The
+	 * bucket i counts the ticks with a jitter lower than 2^i microseconds and
+	 * greater or equal than the limit of the previous bucket, the last bucket
+	 * counts all the greater jitters.
+	 * 
+	 * @return A copy of the histogram.
+	 */
+	public long[] getJitterHistogram() {
+		synchronized (this.jitterHistogram) {
+			return this.jitterHistogram.clone();
+		}
+	}
+
+}
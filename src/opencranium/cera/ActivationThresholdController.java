@@ -0,0 +1,194 @@
+package opencranium.cera;
+
+import opencranium.cranium.Activation;
+
+/**
+ * A feedback controller of the activation threshold of a layer. In each tick
+ * it measures the load of the layer as the utilization of its processors and
+ * the depth of their queues, compared with the targets. When the layer is
+ * overloaded the threshold is raised to discard more elements with low
+ * activation, and when it is underloaded the threshold is lowered. The change
+ * is proportional to the load error and bounded in each tick, and the
+ * threshold is never raised over the average activation of the elements
+ * accepted during the last tick.
+ * 
+ * @see Layer#setActivationThresholdController(ActivationThresholdController)
+ * 
+ * @author Jorge Muñoz
+ * @author Raúl Arrabales
+ */
+public class ActivationThresholdController {
+
+	/**
+	 * Fraction of the available processing time that the processors of the
+	 * layer should use.
+	 */
+	private float targetUtilization;
+
+	/**
+	 * Number of elements waiting in the queues of the processors of the layer
+	 * considered a full load, 0 to not use the queues' depth.
+	 */
+	private int targetQueueDepth;
+
+	/**
+	 * Maximum change of the threshold in one tick.
+	 */
+	private int maximumStep;
+
+	/**
+	 * Proportional gain, change of the threshold by unit of load error in
+	 * fractions of the activation range.
+	 */
+	private float gain;
+
+	/**
+	 * Number of threads that execute the processors of the layer.
+	 */
+	private int parallelism;
+
+	/**
+	 * Load of the layer measured in the last tick, 1 is the target load.
+	 */
+	private float lastLoad;
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param targetUtilization
+	 *            Fraction of the available processing time that the
+	 *            processors should use, between 0 and 1.
+	 * @param targetQueueDepth
+	 *            Elements waiting in the queues considered a full load, 0 to
+	 *            not use the queues' depth.
+	 * @param maximumStep
+	 *            Maximum change of the threshold in one tick, greater than 0.
+	 */
+	public ActivationThresholdController(float targetUtilization, int targetQueueDepth, int maximumStep) {
+		if (targetUtilization <= 0 || targetUtilization > 1) {
+			throw new IllegalArgumentException("The target utilization must be in (0, 1].");
+		}
+		if (targetQueueDepth < 0) {
+			throw new IllegalArgumentException("The target queue depth cannot be negative.");
+		}
+		if (maximumStep <= 0) {
+			throw new IllegalArgumentException("The maximum step must be greater than 0.");
+		}
+		this.targetUtilization = targetUtilization;
+		this.targetQueueDepth = targetQueueDepth;
+		this.maximumStep = maximumStep;
+		this.gain = 0.1f;
+		this.parallelism = Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Calculates the threshold for the next tick.
+	 * 
+	 * @param layer
+	 *            The layer, with the statistics of the last tick already
+	 *            updated.
+	 * @param threshold
+	 *            The current threshold.
+	 * @param processingNanoTime
+	 *            Nanoseconds spent by the processors of the layer during the
+	 *            last tick.
+	 * @param tickNanoTime
+	 *            Duration of the last tick in nanoseconds.
+	 * @param queueDepth
+	 *            Elements waiting in the queues of the processors.
+	 * @return The new threshold.
+	 */
+	public int nextThreshold(Layer layer, int threshold, long processingNanoTime, long tickNanoTime, int queueDepth) {
+		float load = 0;
+		if (tickNanoTime > 0) {
+			float utilization = (float) processingNanoTime / ((float) tickNanoTime * this.parallelism);
+			load = utilization / this.targetUtilization;
+		}
+		if (this.targetQueueDepth > 0) {
+			load = Math.max(load, (float) queueDepth / this.targetQueueDepth);
+		}
+		this.lastLoad = load;
+		if (layer.getLastNumberOfTotalProcessableElementsSubmitted() == 0) {
+			// nothing was submitted, nothing to learn from
+			return threshold;
+		}
+		int step = Math.round(this.gain * (load - 1) * (Activation.MAX - Activation.MIN));
+		step = Math.max(-this.maximumStep, Math.min(this.maximumStep, step));
+		int next = threshold + step;
+		if (step > 0) {
+			int average = layer.getLastTickAverageActivation().getValue();
+			next = Math.max(threshold, Math.min(next, average));
+		}
+		return Math.max(Activation.MIN, Math.min(Activation.MAX, next));
+	}
+
+	/**
+	 * @return the load measured in the last tick, 1 is the target load.
+	 */
+	public float getLastLoad() {
+		return this.lastLoad;
+	}
+
+	/**
+	 * @return the gain
+	 */
+	public float getGain() {
+		return this.gain;
+	}
+
+	/**
+	 * Sets the proportional gain, the change of the threshold by unit of load
+	 * error in fractions of the activation range.
+	 * 
+	 * @param gain
+	 *            the gain to set, greater than 0.
+	 */
+	public void setGain(float gain) {
+		if (gain <= 0) {
+			throw new IllegalArgumentException("The gain must be greater than 0.");
+		}
+		this.gain = gain;
+	}
+
+	/**
+	 * @return the parallelism
+	 */
+	public int getParallelism() {
+		return this.parallelism;
+	}
+
+	/**
+	 * Sets the number of threads that execute the processors of the layer.
+	 * 
+	 * @param parallelism
+	 *            the parallelism to set, at least 1.
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("The parallelism must be at least 1.");
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @return the targetUtilization
+	 */
+	public float getTargetUtilization() {
+		return this.targetUtilization;
+	}
+
+	/**
+	 * @return the targetQueueDepth
+	 */
+	public int getTargetQueueDepth() {
+		return this.targetQueueDepth;
+	}
+
+	/**
+	 * @return the maximumStep
+	 */
+	public int getMaximumStep() {
+		return this.maximumStep;
+	}
+
+}
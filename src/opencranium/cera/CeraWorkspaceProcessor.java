@@ -1,10 +1,12 @@
 package opencranium.cera;
 
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Vector;
 
 import opencranium.command.Action;
+import opencranium.cranium.Generators;
 import opencranium.cranium.Processable;
+import opencranium.cranium.ProvenanceStore;
 import opencranium.cranium.WorkspaceProcessor;
 import opencranium.data.Percept;
 import opencranium.data.Percept.MemoryType;
@@ -25,11 +27,58 @@ import opencranium.util.Id;
  */
 public abstract class CeraWorkspaceProcessor extends WorkspaceProcessor {
 
+	/**
+	 * The natures of the percepts, cached because Nature.values() returns a
+	 * new array in each call.
+	 */
+	private static final Nature[] NATURES = Nature.values();
+
+	/**
+	 * Source of the percepts generated in each type of layer, indexed by the
+	 * ordinal of the type. null to keep the source unknown.
+	 */
+	private static final Source[] LAYER_SOURCES = new Source[Layer.Type.values().length];
+
+	static {
+		LAYER_SOURCES[Layer.Type.SENSORY_MOTOR_LAYER.ordinal()] = Source.EXTEROCEPTIVE_SENSOR;
+		LAYER_SOURCES[Layer.Type.PHYSICAL_LAYER.ordinal()] = Source.PHYSICAL_PROCESSOR;
+		LAYER_SOURCES[Layer.Type.MISSION_LAYER.ordinal()] = Source.MISSION_PROCESSOR;
+	}
+
 	/**
 	 * The layer of this workspace.
 	 */
 	private Layer layer;
 
+	/**
+	 * Unmodifiable list with the elements of the last short term memory, set
+	 * as the generators of all the results while the memory does not change.
+	 */
+	private Generators provenance;
+
+	/**
+	 * Generators of the results registered in the provenance store for the
+	 * last short term memory, null if they were not registered.
+	 */
+	private Collection<Processable> storedProvenance;
+
+	/**
+	 * Store where the generators of the results were registered.
+	 */
+	private ProvenanceStore provenanceStore;
+
+	/**
+	 * Votes of each nature in the short term memory, indexed by the ordinal of
+	 * the nature. The array is reused.
+	 */
+	private final float[] natureVotes = new float[NATURES.length];
+
+	/**
+	 * Most voted nature in the current short term memory, null if it is not
+	 * calculated yet.
+	 */
+	private Nature memoryNature;
+
 	/**
 	 * Default constructor
 	 * 
@@ -70,69 +119,166 @@ public abstract class CeraWorkspaceProcessor extends WorkspaceProcessor {
 	protected void manageResult(Processable result) {
 		if (result != null) {
 			Processable[] shortTermMemory = this.getSortTermMemory();
-			Collection<Processable> generatedBy = result.getGeneratedBy();
-			if ((generatedBy == null || generatedBy.isEmpty()) && shortTermMemory != null) {
-				if (generatedBy == null) {
-					generatedBy = new Vector<Processable>(shortTermMemory.length);
+			this.memoryNature = null;
+			this.prepareResult(result, shortTermMemory);
+		}
+		this.layer.manageResult(result);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * opencranium.cranium.WorkspaceProcessor#manageResults(opencranium.cranium
+	 * .Processable[])
+	 */
+	@Override
+	protected void manageResults(Processable[] results) {
+		Processable[] shortTermMemory = this.getSortTermMemory();
+		this.memoryNature = null;
+		for (Processable result : results) {
+			this.prepareResult(result, shortTermMemory);
+		}
+		this.layer.manageResults(results);
+	}
+
+	/**
+	 * Completes the information of a result before it is sent to the layer:
+	 * the elements that generated it and, for percepts, the memory type, the
+	 * nature and the source when they are unknown. Nothing is allocated while
+	 * the short term memory does not change.
+	 * 
+	 * @param result
+	 *            The result, cannot be null.
+	 * @param shortTermMemory
+	 *            The current short term memory of the processor.
+	 */
+	private void prepareResult(Processable result, Processable[] shortTermMemory) {
+		Collection<Processable> generatedBy = result.getGeneratedBy();
+		if ((generatedBy == null || generatedBy.isEmpty()) && shortTermMemory != null) {
+			Collection<Processable> generators = this.getGenerators(shortTermMemory);
+			if (generators instanceof Generators) {
+				// the result holds its own references to the pooled generators
+				((Generators) generators).retainElements();
+			}
+			result.setGeneratedBy(generators);
+		}
+		if (result instanceof Percept) {
+			Percept p = (Percept) result;
+			if (p.getMemoryType() == MemoryType.UNKNOWN) {
+				p.setMemoryType(MemoryType.SHORT_TERM);
+			}
+			if (p.getNature() == Nature.UNKNOWN && shortTermMemory != null && shortTermMemory.length > 0) {
+				if (this.memoryNature == null) {
+					this.memoryNature = this.voteNature(shortTermMemory);
 				}
-				for (Processable p : shortTermMemory) {
-					if (p != null) {
-						generatedBy.add(p);
-					}
+				p.setNature(this.memoryNature);
+			}
+			if (p.getSource() == Source.UNKNOWN) {
+				Source source = LAYER_SOURCES[this.layer.getLayerType().ordinal()];
+				if (source != null) {
+					p.setSource(source);
 				}
-				result.setGeneratedBy(generatedBy);
 			}
-			if (result instanceof Percept) {
-				Percept p = (Percept) result;
-				if (p.getMemoryType() == MemoryType.UNKNOWN) {
-					p.setMemoryType(MemoryType.SHORT_TERM);
+		}
+	}
+
+	/**
+	 * Returns the generators of the results: the elements of the short term
+	 * memory, registered in the provenance store of the Core if there is one.
+	 * Without a store the results reference the elements, so each result must
+	 * retain them.
+	 * 
+	 * @param shortTermMemory
+	 *            The current short term memory of the processor.
+	 * @return An unmodifiable collection shared by all the results.
+	 * @see Generators#retainElements()
+	 */
+	private Collection<Processable> getGenerators(Processable[] shortTermMemory) {
+		Generators current = this.provenance;
+		Generators elements = this.getProvenance(shortTermMemory);
+		ProvenanceStore store = this.layer.core == null ? null : this.layer.core.getProvenanceStore();
+		if (store == null) {
+			return elements;
+		}
+		if (elements != current || store != this.provenanceStore || this.storedProvenance == null) {
+			this.storedProvenance = store.createProvenance(elements.toArray(new Processable[elements.size()]));
+			this.provenanceStore = store;
+		}
+		return this.storedProvenance;
+	}
+
+	/**
+	 * Returns the elements of the short term memory as an unmodifiable list
+	 * shared by all the results. A new list is only created when the elements
+	 * of the memory change, the processor retains its elements until the list
+	 * is replaced.
+	 * 
+	 * @param shortTermMemory
+	 *            The current short term memory of the processor.
+	 * @return The list with the elements of the memory that are not null.
+	 */
+	private Generators getProvenance(Processable[] shortTermMemory) {
+		Generators current = this.provenance;
+		int size = 0;
+		boolean same = current != null;
+		for (Processable p : shortTermMemory) {
+			if (p != null) {
+				same = same && size < current.size() && current.get(size) == p;
+				size++;
+			}
+		}
+		if (!same || size != current.size()) {
+			Processable[] elements = new Processable[size];
+			size = 0;
+			for (Processable p : shortTermMemory) {
+				if (p != null) {
+					elements[size++] = p;
 				}
-				if (p.getNature() == Nature.UNKNOWN && shortTermMemory != null && shortTermMemory.length > 0) {
-					float maximumValue = 0;
-					int pos = 0;
-					Nature[] nature = Nature.values();
-					float[] values = new float[nature.length];
-					int i = 0;
-					for (Processable proaux : shortTermMemory) {
-						if (proaux instanceof Percept) {
-							Percept peraux = (Percept) proaux;
-							Nature perNature = peraux.getNature();
-							i = 0;
-							while (i < nature.length && nature[i] != perNature) {
-								i++;
-							}
-							values[i] += peraux.getActivation().getValue() + 1;
-							if (values[i] > maximumValue) {
-								maximumValue = values[i];
-								pos = i;
-							}
-						}
-					}
-					/*
-					 * maybe is not a good decision but we set the most
-					 * frequently nature when it is unknown
-					 */
-					p.setNature(nature[pos]);
+			}
+			for (Processable p : elements) {
+				retain(p);
+			}
+			if (current != null) {
+				for (Processable p : current) {
+					release(p);
 				}
-				if (p.getSource() == Source.UNKNOWN) {
-					switch (this.layer.getLayerType()) {
-					case SENSORY_MOTOR_LAYER:
-						p.setSource(Source.EXTEROCEPTIVE_SENSOR);
-						break;
-					case PHYSICAL_LAYER:
-						p.setSource(Source.PHYSICAL_PROCESSOR);
-						break;
-					case MISSION_LAYER:
-						p.setSource(Source.MISSION_PROCESSOR);
-						break;
-					case CORE_LAYER:
-						break;
-					default:
-					}
+			}
+			current = new Generators(elements);
+			this.provenance = current;
+		}
+		return current;
+	}
+
+	/**
+	 * Calculates the nature of the percepts of the short term memory with
+	 * more votes, weighted by their activation.
+	 * 
+	 * @param shortTermMemory
+	 *            The current short term memory of the processor.
+	 * @return The most voted nature.
+	 */
+	private Nature voteNature(Processable[] shortTermMemory) {
+		float[] values = this.natureVotes;
+		Arrays.fill(values, 0);
+		float maximumValue = 0;
+		int pos = 0;
+		for (Processable proaux : shortTermMemory) {
+			if (proaux instanceof Percept) {
+				Percept peraux = (Percept) proaux;
+				int i = peraux.getNature().ordinal();
+				values[i] += peraux.getActivation().getValue() + 1;
+				if (values[i] > maximumValue) {
+					maximumValue = values[i];
+					pos = i;
 				}
 			}
 		}
-		this.layer.manageResult(result);
+		/*
+		 * maybe is not a good decision but we set the most frequently nature
+		 * when it is unknown
+		 */
+		return NATURES[pos];
 	}
 
 	/*
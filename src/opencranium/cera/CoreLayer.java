@@ -152,11 +152,96 @@ public class CoreLayer extends Layer {
 	/*
 	 * (non-Javadoc)
 	 * 
-	 * @see opencranium.cera.Layer#manageResult(opencranium.cranium.Processable)
+	 * @see
+	 * opencranium.cera.Layer#layerSubmitProcessables(opencranium.cranium.Processable
+	 * [])
+	 */
+	@Override
+	protected void layerSubmitProcessables(Processable[] processables) {
+		for (CognitiveFunction function : this.consciousCognitiveFunctionsList) {
+			function.addProcessables(processables);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see opencranium.cera.Layer#getQueueDepth()
+	 */
+	@Override
+	protected int getQueueDepth() {
+		int depth = 0;
+		for (CognitiveFunction function : this.consciousCognitiveFunctionsList) {
+			depth += function.getQueueSize();
+		}
+		return depth;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see opencranium.cera.Layer#getProcessingNanoTime()
+	 */
+	@Override
+	protected long getProcessingNanoTime() {
+		long nanoTime = 0;
+		for (CognitiveFunction function : this.consciousCognitiveFunctionsList) {
+			nanoTime += function.getTotalProcessingNanoTime();
+		}
+		return nanoTime;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see opencranium.cera.Layer#getCpuNanoTime()
 	 */
 	@Override
-	protected void layerManageResult(Processable processable) {
-		throw new CeraException("No results expected in Core Layer", this);
+	protected long getCpuNanoTime() {
+		long nanoTime = 0;
+		for (CognitiveFunction function : this.consciousCognitiveFunctionsList) {
+			nanoTime += function.getTotalCpuNanoTime();
+		}
+		return nanoTime;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see opencranium.cera.Layer#getProcessors()
+	 */
+	@Override
+	public List<Processor> getProcessors() {
+		return new ArrayList<Processor>(this.consciousCognitiveFunctionsList);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see opencranium.cera.Layer#isProcessing()
+	 */
+	@Override
+	protected boolean isProcessing() {
+		for (CognitiveFunction function : this.consciousCognitiveFunctionsList) {
+			if (function.isSomethingToProcess() || function.isProcessing()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see opencranium.cera.Layer#shedQueued(float)
+	 */
+	@Override
+	protected int shedQueued(float fraction) {
+		int shed = 0;
+		for (CognitiveFunction function : this.consciousCognitiveFunctionsList) {
+			shed += function.shedLowest((int) Math.ceil(function.getQueueSize() * fraction));
+		}
+		return shed;
 	}
 
 	/*
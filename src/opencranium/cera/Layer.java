@@ -1,7 +1,15 @@
 package opencranium.cera;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import opencranium.Core;
 import opencranium.cognitive.CognitiveFunction;
@@ -26,6 +34,43 @@ import opencranium.util.Time;
  */
 public abstract class Layer implements Statistics {
 
+	/**
+	 * How the results are sent to the cognitive functions of the layer for an
+	 * implicit processing. In all the modes but SERIAL the cognitive functions
+	 * are executed by an executor and they must be thread safe.
+	 * 
+	 * @see Layer#setImplicitProcessing(ImplicitProcessing, ExecutorService)
+	 * 
+	 * @author Jorge Muñoz
+	 * @author Raúl Arrabales
+	 */
+	public enum ImplicitProcessing {
+
+		/**
+		 * The cognitive functions are executed one after the other in the
+		 * thread of the processor, before the result is routed.
+		 */
+		SERIAL,
+
+		/**
+		 * The cognitive functions are executed in parallel, the result is
+		 * routed when all of them finish.
+		 */
+		PARALLEL,
+
+		/**
+		 * The cognitive functions are executed in parallel with the routing of
+		 * the result, the processor waits until all of them finish.
+		 */
+		CONCURRENT,
+
+		/**
+		 * The cognitive functions are executed in parallel with the routing of
+		 * the result and nobody waits for them.
+		 */
+		ASYNCHRONOUS
+	}
+
 	/**
 	 * Type of the layer, it can be the sensory-motor layer, physical layer,
 	 * mission layer or core layer.
@@ -123,64 +168,107 @@ public abstract class Layer implements Statistics {
 	private Activation lastTickMiniumActivation;
 
 	/**
-	 * Current maximum activation of the layer.
+	 * Statistics of the current tick. They are replaced by new ones in each
+	 * tick.
 	 */
-	private Activation curentTickMaximumActivation;
+	private AtomicReference<TickStatistics> tickStatistics;
 
 	/**
-	 * Current minimum activation of the layer.
+	 * Activation threshold to accept processable elements.
 	 */
-	private Activation curentTickMiniumActivation;
+	private volatile Activation activationThreshold;
 
 	/**
-	 * Activation threshold to accept processable elements.
+	 * Controller that adjusts the activation threshold in each tick, null if
+	 * the threshold is fixed.
 	 */
-	private Activation activationThreshold;
+	private ActivationThresholdController activationThresholdController;
 
 	/**
-	 * Average activation during last tick, only processed elements.
+	 * Processing time of the processors of the layer when the last tick
+	 * started.
 	 */
-	private Activation lastTickAverageActivation;
+	private long lastProcessingNanoTime;
 
 	/**
-	 * Average activation during last tick, including the ones discarded by the
-	 * threshold.
+	 * CPU time the processors of the layer can use in each tick, 0 if there
+	 * is no budget.
 	 */
-	private Activation lastTickTotalAverageActivation;
+	private volatile long cpuBudget;
 
 	/**
-	 * Number of processed elements during last tick, only processed elements.
+	 * CPU time of the processors of the layer when the last tick started.
 	 */
-	private int lastNumberOfProcessableElementsSubmitted;
+	private long lastCpuNanoTime;
 
 	/**
-	 * Number of processed elements during last tick, including the ones
-	 * discarded by the threshold.
+	 * CPU time used by the processors of the layer during the last tick.
 	 */
-	private int lastNumberOfTotalProcessableElementsSubmitted;
+	private volatile long lastTickCpuNanoTime;
 
 	/**
-	 * Number of processed elements during this tick, only processed elements.
+	 * Queued elements shed when the last tick ended.
 	 */
-	private int numberOfProcessableElementsSubmitted;
+	private volatile int lastTickShed;
 
 	/**
-	 * Number of processed elements during this tick, including the ones
-	 * discarded by the threshold.
+	 * Queued elements shed since the layer was created.
 	 */
-	private int numberOfTotalProcessableElementsSubmitted;
+	private final AtomicLong totalShed = new AtomicLong();
 
 	/**
-	 * Sum of activations during this tick, including the ones discarded by the
-	 * threshold.
+	 * Inbound mailbox of the layer, null if the other layers submit their
+	 * results synchronously.
+	 */
+	private volatile LayerMailbox mailbox;
+
+	/**
+	 * How the results are sent to the cognitive functions.
+	 */
+	private volatile ImplicitProcessing implicitProcessing;
+
+	/**
+	 * Executor of the cognitive functions when the implicit processing is not
+	 * serial.
 	 */
-	private long sumTickActivation;
+	private volatile ExecutorService implicitProcessingExecutor;
 
 	/**
-	 * Sum of activations during this tick, including the ones discarded by the
+	 * Nanoseconds the results waited for the implicit processing.
+	 */
+	private final AtomicLong implicitProcessingWaitNanoTime = new AtomicLong();
+
+	/**
+	 * Number of times the results waited for the implicit processing.
+	 */
+	private final AtomicLong implicitProcessingWaits = new AtomicLong();
+
+	/**
+	 * Number of implicit processes submitted to the executor and not finished.
+	 */
+	private final AtomicInteger implicitProcessesRunning = new AtomicInteger();
+
+	/**
+	 * Average activation during last tick, only processed elements.
+	 */
+	private Activation lastTickAverageActivation;
+
+	/**
+	 * Average activation during last tick, including the ones discarded by the
 	 * threshold.
 	 */
-	private long sumTickTotalActivation;
+	private Activation lastTickTotalAverageActivation;
+
+	/**
+	 * Number of processed elements during last tick, only processed elements.
+	 */
+	private volatile int lastNumberOfProcessableElementsSubmitted;
+
+	/**
+	 * Number of processed elements during last tick, including the ones
+	 * discarded by the threshold.
+	 */
+	private volatile int lastNumberOfTotalProcessableElementsSubmitted;
 
 	/**
 	 * Default constructor
@@ -197,11 +285,11 @@ public abstract class Layer implements Statistics {
 		this.cognitiveFunctions = new Vector<CognitiveFunction>();
 		this.elementProcessingTime = new ElementProcessingTime(this.id);
 		this.core = core;
+		this.implicitProcessing = ImplicitProcessing.SERIAL;
 
 		this.lastTickMaximumActivation = new Activation(Activation.MIN);
 		this.lastTickMiniumActivation = new Activation(Activation.MAX);
-		this.curentTickMaximumActivation = new Activation(Activation.MIN);
-		this.curentTickMiniumActivation = new Activation(Activation.MAX);
+		this.tickStatistics = new AtomicReference<TickStatistics>(new TickStatistics());
 		this.activationThreshold = new Activation(Activation.MIN);
 		this.lastTickAverageActivation = new Activation(Activation.MIN);
 		this.lastTickTotalAverageActivation = new Activation(Activation.MIN);
@@ -219,15 +307,106 @@ public abstract class Layer implements Statistics {
 	 */
 	public void submitProcessable(Processable processable) {
 		long t1 = System.nanoTime();
-		int activationValue = processable.getActivation().getValue();
-		if (activationValue > this.curentTickMaximumActivation.getValue()) {
-			this.curentTickMaximumActivation.setValue(activationValue);
+		if (this.isAccepted(processable)) {
+			layerSubmitProcessable(processable);
+			if (StatisticsManager.isRecording()) {
+				long t2 = System.nanoTime();
+				long nanoTime = t2 - t1;
+				processable.getId().addProcessingTime(this.id, nanoTime);
+				this.id.addProcessingTime(processable.getId(), nanoTime);
+			}
+		}
+	}
+
+	/**
+	 * Posts a processable element generated in other layer, or in this one, to
+	 * the layer. If the layer has a mailbox the element is queued in it and
+	 * submitted later by the thread of the mailbox, otherwise it is submitted
+	 * now.
+	 * 
+	 * @param processable
+	 *            The processable element.
+	 * @param source
+	 *            The layer that generated the element.
+	 * @see Layer#setMailbox(LayerMailbox)
+	 */
+	public void postProcessable(Processable processable, Layer source) {
+		LayerMailbox box = this.mailbox;
+		if (box == null || !box.post(processable, source)) {
+			this.submitProcessable(processable);
 		}
-		if (activationValue < this.curentTickMiniumActivation.getValue()) {
-			this.curentTickMiniumActivation.setValue(activationValue);
+	}
+
+	/**
+	 * Posts several processable elements generated in other layer, or in this
+	 * one, to the layer.
+	 * 
+	 * @param processables
+	 *            The processable elements.
+	 * @param source
+	 *            The layer that generated the elements.
+	 * @see Layer#postProcessable(Processable, Layer)
+	 */
+	public void postProcessables(Processable[] processables, Layer source) {
+		LayerMailbox box = this.mailbox;
+		if (box == null) {
+			this.submitProcessables(processables);
+		} else {
+			for (Processable processable : processables) {
+				if (!box.post(processable, source)) {
+					this.submitProcessable(processable);
+				}
+			}
 		}
-		this.sumTickTotalActivation += activationValue;
-		this.numberOfTotalProcessableElementsSubmitted++;
+	}
+
+	/**
+	 * Submits several processable elements to the layer. Each element is
+	 * accepted or discarded as in submitProcessable(Processable), and the
+	 * accepted ones are submitted together to the layer.
+	 * 
+	 * @param processables
+	 *            The processable elements.
+	 * @see Layer#submitProcessable(Processable)
+	 */
+	public void submitProcessables(Processable[] processables) {
+		long t1 = System.nanoTime();
+		Processable[] accepted = new Processable[processables.length];
+		int count = 0;
+		for (Processable processable : processables) {
+			if (processable != null && this.isAccepted(processable)) {
+				accepted[count] = processable;
+				count++;
+			}
+		}
+		if (count > 0) {
+			if (count < accepted.length) {
+				accepted = Arrays.copyOf(accepted, count);
+			}
+			layerSubmitProcessables(accepted);
+			if (StatisticsManager.isRecording()) {
+				long t2 = System.nanoTime();
+				long nanoTime = (t2 - t1) / count;
+				for (Processable processable : accepted) {
+					processable.getId().addProcessingTime(this.id, nanoTime);
+					this.id.addProcessingTime(processable.getId(), nanoTime);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Updates the statistics of the current tick with a processable element
+	 * submitted to the layer and checks if it must be accepted. The discarded
+	 * elements are recorded in the statistics. It can be called concurrently
+	 * from several threads.
+	 * 
+	 * @param processable
+	 *            The processable element.
+	 * @return true if the element is accepted in the layer.
+	 */
+	private boolean isAccepted(Processable processable) {
+		int activationValue = processable.getActivation().getValue();
 		AppraisalType appraisal = null;
 		Source source = null;
 		boolean sameLayer = false;
@@ -237,62 +416,192 @@ public abstract class Layer implements Statistics {
 			source = percept.getSource();
 			sameLayer = percept.getSource() != Source.UNKNOWN && Type.getType(percept.getSource()) == this.layerType;
 		}
+		boolean accepted = false;
 		if (activationValue >= this.activationThreshold.getValue() || processable.isAction()
 				|| (source == Source.COGNITIVE_FUNCTION || sameLayer)
 				|| (appraisal != null && (appraisal == AppraisalType.NOVELTY || appraisal == AppraisalType.MISSMATCH))) {
-			this.sumTickActivation += activationValue;
-			this.numberOfProcessableElementsSubmitted++;
-			layerSubmitProcessable(processable);
-			if (StatisticsManager.isRecording()) {
-				long t2 = System.nanoTime();
-				long nanoTime = t2 - t1;
-				processable.getId().addProcessingTime(this.id, nanoTime);
-				this.id.addProcessingTime(processable.getId(), nanoTime);
-			}
+			accepted = true;
 		} else {
 			if (StatisticsManager.isRecording()) {
 				processable.getId().addDiscarded(this.id);
 			}
 		}
+		while (!this.tickStatistics.get().add(activationValue, accepted)) {
+			// retired by a new tick, added to the new statistics
+		}
+		return accepted;
 	}
 
 	/**
-	 * Updates the internal tick of the layer.
+	 * Updates the internal tick of the layer. The statistics of the current
+	 * tick are swapped atomically by new ones and aggregated once the threads
+	 * adding an element to them finish. The elements submitted after the swap
+	 * count for the next tick.
 	 * 
 	 * @param tick
 	 *            Current tick.
 	 */
 	public void systemTick(Time tick) {
 		if (tick.getTick() != this.currentTick.getTick()) {
-			this.lastTickMaximumActivation.setValue(this.curentTickMaximumActivation.getValue());
-			this.lastTickMiniumActivation.setValue(this.curentTickMiniumActivation.getValue());
-			this.curentTickMaximumActivation.setValue(Activation.MIN);
-			this.curentTickMiniumActivation.setValue(Activation.MAX);
-
-			this.lastNumberOfProcessableElementsSubmitted = this.numberOfProcessableElementsSubmitted;
-			this.lastNumberOfTotalProcessableElementsSubmitted = this.numberOfTotalProcessableElementsSubmitted;
-
-			if (this.numberOfProcessableElementsSubmitted > 0) {
-				this.lastTickAverageActivation
-						.setValue((int) (this.sumTickActivation / this.numberOfProcessableElementsSubmitted));
-			} else {
-				this.lastTickAverageActivation.setValue(Activation.MIN);
-			}
-			if (this.numberOfTotalProcessableElementsSubmitted > 0) {
-				this.lastTickTotalAverageActivation
-						.setValue((int) (this.sumTickTotalActivation / this.numberOfTotalProcessableElementsSubmitted));
-			} else {
-				this.lastTickTotalAverageActivation.setValue(Activation.MIN);
-			}
-
-			this.sumTickActivation = 0;
-			this.sumTickTotalActivation = 0;
-			this.numberOfProcessableElementsSubmitted = 0;
-			this.numberOfTotalProcessableElementsSubmitted = 0;
+			TickStatistics statistics = this.tickStatistics.getAndSet(new TickStatistics());
+			statistics.retire();
+			this.lastTickMaximumActivation.setValue(statistics.getMaximumActivation());
+			this.lastTickMiniumActivation.setValue(statistics.getMinimumActivation());
+			this.lastNumberOfProcessableElementsSubmitted = statistics.getSubmitted();
+			this.lastNumberOfTotalProcessableElementsSubmitted = statistics.getTotalSubmitted();
+			this.lastTickAverageActivation.setValue(statistics.getAverageActivation());
+			this.lastTickTotalAverageActivation.setValue(statistics.getTotalAverageActivation());
+			this.updateActivationThreshold(tick);
+			this.enforceCpuBudget();
 		}
 		this.currentTick.update(tick);
 	}
 
+	/**
+	 * Measures the CPU time used by the processors during the last tick and,
+	 * if it is over the budget, sheds the queued elements with the lowest
+	 * sorting value. The fraction of the queues shed is the fraction of the CPU
+	 * time over the budget.
+	 */
+	private void enforceCpuBudget() {
+		long cpuNanoTime = this.getCpuNanoTime();
+		long used = cpuNanoTime - this.lastCpuNanoTime;
+		this.lastCpuNanoTime = cpuNanoTime;
+		this.lastTickCpuNanoTime = used;
+		long budget = this.cpuBudget;
+		int shed = 0;
+		if (budget > 0 && used > budget) {
+			shed = this.shedQueued((float) (used - budget) / used);
+			this.totalShed.addAndGet(shed);
+		}
+		this.lastTickShed = shed;
+	}
+
+	/**
+	 * Adjusts the activation threshold with the controller, if there is one.
+	 * Called when a new tick starts, before the current tick is updated.
+	 * 
+	 * @param tick
+	 *            The new tick.
+	 */
+	private void updateActivationThreshold(Time tick) {
+		long processingNanoTime = this.getProcessingNanoTime();
+		long lastTickNanoTime = (tick.getMilliseconds() - this.currentTick.getMilliseconds()) * 1000000L;
+		ActivationThresholdController controller = this.activationThresholdController;
+		if (controller != null && this.currentTick.getTick() != 0) {
+			int threshold = this.activationThreshold.getValue();
+			this.activationThreshold.setValue(controller.nextThreshold(this, threshold, processingNanoTime
+					- this.lastProcessingNanoTime, lastTickNanoTime, this.getQueueDepth()));
+		}
+		this.lastProcessingNanoTime = processingNanoTime;
+	}
+
+	/**
+	 * Returns the number of elements waiting in the queues of the processors of
+	 * the layer. Used to measure the load of the layer.
+	 * 
+	 * @return The number of elements, 0 by default.
+	 */
+	protected int getQueueDepth() {
+		return 0;
+	}
+
+	/**
+	 * Returns the nanoseconds spent by the processors of the layer since they
+	 * were created. Used to measure the load of the layer.
+	 * 
+	 * @return The nanoseconds, 0 by default.
+	 */
+	protected long getProcessingNanoTime() {
+		return 0;
+	}
+
+	/**
+	 * Returns the CPU time spent by the processors of the layer since they
+	 * were created. Used to check the CPU budget of the layer.
+	 * 
+	 * @return The nanoseconds, 0 by default.
+	 * @see Processor#getTotalCpuNanoTime()
+	 */
+	protected long getCpuNanoTime() {
+		return 0;
+	}
+
+	/**
+	 * Returns the processors of the layer which are executed by its pool of
+	 * threads.
+	 * 
+	 * @return A new list with the processors, empty by default.
+	 */
+	public List<Processor> getProcessors() {
+		return new ArrayList<Processor>();
+	}
+
+	/**
+	 * Checks if the layer has no work: its mailbox is empty and is not
+	 * submitting a batch, no implicit processing is running in the executor
+	 * and none of its processors has elements waiting or is being executed.
+	 * 
+	 * @return true if the layer is idle.
+	 * @see Core#isIdle()
+	 */
+	public boolean isIdle() {
+		LayerMailbox box = this.mailbox;
+		return (box == null || box.getDepth() == 0) && this.implicitProcessesRunning.get() == 0
+				&& !this.isProcessing();
+	}
+
+	/**
+	 * Submits to the processors the elements waiting in the mailbox of the
+	 * layer, in the caller thread.
+	 * 
+	 * @see Core#shutdown(long)
+	 */
+	public void flush() {
+		LayerMailbox box = this.mailbox;
+		if (box != null) {
+			box.flush();
+		}
+	}
+
+	/**
+	 * Stops the threads of the layer: the mailbox is removed and stopped, the
+	 * elements waiting in it are submitted to the processors before this
+	 * method returns. The results are routed in the caller threads from then
+	 * on.
+	 * 
+	 * @see Core#shutdown(long)
+	 */
+	public void stopThreads() {
+		if (this.mailbox != null) {
+			this.setMailbox(null);
+		}
+	}
+
+	/**
+	 * Checks if any processor of the layer has elements waiting or is being
+	 * executed.
+	 * 
+	 * @return true if there is work in the processors, false by default.
+	 * @see Processor#isProcessing()
+	 */
+	protected boolean isProcessing() {
+		return false;
+	}
+
+	/**
+	 * Sheds a fraction of the elements waiting in the queues of the processors
+	 * of the layer, the ones with the lowest sorting value.
+	 * 
+	 * @param fraction
+	 *            Fraction of each queue to shed, between 0 and 1.
+	 * @return The number of elements shed, 0 by default.
+	 * @see Processor#shedLowest(int)
+	 */
+	protected int shedQueued(float fraction) {
+		return 0;
+	}
+
 	/**
 	 * Submits a processable element to the layer.
 	 * 
@@ -301,6 +610,19 @@ public abstract class Layer implements Statistics {
 	 */
 	protected abstract void layerSubmitProcessable(Processable processable);
 
+	/**
+	 * Submits several processable elements to the layer. By default each
+	 * element is submitted with layerSubmitProcessable(Processable).
+	 * 
+	 * @param processables
+	 *            The processable elements.
+	 */
+	protected void layerSubmitProcessables(Processable[] processables) {
+		for (Processable processable : processables) {
+			layerSubmitProcessable(processable);
+		}
+	}
+
 	/**
 	 * Manages the results of a processor, send it first to the cognitive
 	 * function for an implicit processing and them to the current layer which
@@ -309,35 +631,295 @@ public abstract class Layer implements Statistics {
 	 * @param processable
 	 */
 	protected void manageResult(Processable processable) {
-		long t1 = 0;
-		long nanoTime = 0;
+		if (this.isImplicitProcessingAsynchronous()) {
+			this.manageResults(new Processable[] { processable }, false);
+			return;
+		}
 		for (CognitiveFunction function : this.cognitiveFunctions) {
-			t1 = System.nanoTime();
-			function.implicitProcess(processable);
-			if (StatisticsManager.isRecording()) {
-				nanoTime = System.nanoTime() - t1;
-				processable.getId().addProcessingTime(function.getId(), nanoTime);
-				function.getId().addProcessingTime(processable.getId(), nanoTime);
-			}
+			implicitProcess(function, processable);
 		}
-		t1 = System.nanoTime();
+		long t1 = System.nanoTime();
 		this.layerManageResult(processable);
 		if (StatisticsManager.isRecording()) {
-			nanoTime = System.nanoTime() - t1;
-			processable.getId().addProcessingTime(this.id, nanoTime);
-			this.id.addProcessingTime(processable.getId(), nanoTime);
+			this.addManageTime(processable, System.nanoTime() - t1);
 		}
 	}
 
+	/**
+	 * Checks if the results are sent to the cognitive functions through the
+	 * executor of the layer.
+	 * 
+	 * @return true if the implicit processing is not executed by the caller.
+	 */
+	private boolean isImplicitProcessingAsynchronous() {
+		return this.implicitProcessing != ImplicitProcessing.SERIAL && this.implicitProcessingExecutor != null
+				&& !this.cognitiveFunctions.isEmpty();
+	}
+
+	/**
+	 * Records the time spent by the layer managing a result.
+	 * 
+	 * @param processable
+	 *            The result.
+	 * @param nanoTime
+	 *            The time in nanoseconds.
+	 */
+	private void addManageTime(Processable processable, long nanoTime) {
+		processable.getId().addProcessingTime(this.id, nanoTime);
+		this.id.addProcessingTime(processable.getId(), nanoTime);
+	}
+
+	/**
+	 * Manages several results of a processor generated in the same execution.
+	 * All of them are sent to the cognitive functions and then to the current
+	 * layer together.
+	 * 
+	 * @param processables
+	 *            The results.
+	 * @see Layer#manageResult(Processable)
+	 */
+	protected void manageResults(Processable[] processables) {
+		this.manageResults(processables, true);
+	}
+
+	/**
+	 * Sends the results to the cognitive functions as set in the implicit
+	 * processing mode and routes them.
+	 * 
+	 * @param processables
+	 *            The results.
+	 * @param batch
+	 *            true to route them with layerManageResults(Processable[]),
+	 *            false to route the only result with
+	 *            layerManageResult(Processable).
+	 */
+	private void manageResults(Processable[] processables, boolean batch) {
+		ImplicitProcessing mode = this.implicitProcessing;
+		ExecutorService executor = this.implicitProcessingExecutor;
+		List<Future<?>> pending = null;
+		if (mode == ImplicitProcessing.SERIAL || executor == null || this.cognitiveFunctions.isEmpty()) {
+			for (CognitiveFunction function : this.cognitiveFunctions) {
+				implicitProcess(function, processables);
+			}
+		} else {
+			pending = new ArrayList<Future<?>>(this.cognitiveFunctions.size());
+			// the caller may reuse its array while the processes are running
+			Processable[] submitted = processables.clone();
+			for (CognitiveFunction function : this.cognitiveFunctions) {
+				// each implicit process holds the results until it ends
+				this.implicitProcessesRunning.incrementAndGet();
+				for (Processable processable : submitted) {
+					Processor.retain(processable);
+				}
+				try {
+					pending.add(executor.submit(new ImplicitProcess(function, submitted, this.core,
+							this.implicitProcessesRunning)));
+				} catch (RuntimeException e) {
+					for (Processable processable : submitted) {
+						Processor.release(processable);
+					}
+					this.implicitProcessesRunning.decrementAndGet();
+					throw e;
+				}
+			}
+			if (mode == ImplicitProcessing.PARALLEL) {
+				this.waitImplicitProcessing(pending);
+			}
+		}
+		long t1 = System.nanoTime();
+		if (batch) {
+			this.layerManageResults(processables);
+		} else {
+			this.layerManageResult(processables[0]);
+		}
+		if (StatisticsManager.isRecording()) {
+			long nanoTime = (System.nanoTime() - t1) / processables.length;
+			for (Processable processable : processables) {
+				this.addManageTime(processable, nanoTime);
+			}
+		}
+		if (mode == ImplicitProcessing.CONCURRENT && pending != null) {
+			this.waitImplicitProcessing(pending);
+		}
+	}
+
+	/**
+	 * Waits until the cognitive functions finish the implicit processing and
+	 * records the time waited.
+	 * 
+	 * @param pending
+	 *            The implicit processing being executed.
+	 */
+	private void waitImplicitProcessing(List<Future<?>> pending) {
+		long t1 = System.nanoTime();
+		for (Future<?> future : pending) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw new CeraException("Implicit processing failed: " + e.getCause(), this);
+			}
+		}
+		this.implicitProcessingWaitNanoTime.addAndGet(System.nanoTime() - t1);
+		this.implicitProcessingWaits.incrementAndGet();
+	}
+
+	/**
+	 * Sends results to a cognitive function for an implicit processing.
+	 * 
+	 * @param function
+	 *            The cognitive function.
+	 * @param processables
+	 *            The results.
+	 */
+	private static void implicitProcess(CognitiveFunction function, Processable[] processables) {
+		for (Processable processable : processables) {
+			implicitProcess(function, processable);
+		}
+	}
+
+	/**
+	 * Sends a result to a cognitive function for an implicit processing.
+	 * 
+	 * @param function
+	 *            The cognitive function.
+	 * @param processable
+	 *            The result.
+	 */
+	private static void implicitProcess(CognitiveFunction function, Processable processable) {
+		long t1 = System.nanoTime();
+		function.implicitProcess(processable);
+		if (StatisticsManager.isRecording()) {
+			long nanoTime = System.nanoTime() - t1;
+			processable.getId().addProcessingTime(function.getId(), nanoTime);
+			function.getId().addProcessingTime(processable.getId(), nanoTime);
+		}
+	}
+
+	/**
+	 * The implicit processing of some results by a cognitive function,
+	 * executed by the executor of the layer. The results are retained when
+	 * the process is submitted and released when it ends. The array of results
+	 * is a copy owned by the processes of the same batch, never modified.
+	 * 
+	 * @author Jorge Muñoz
+	 * @author Raúl Arrabales
+	 */
+	private static class ImplicitProcess implements Runnable {
+
+		/**
+		 * The cognitive function.
+		 */
+		private CognitiveFunction function;
+
+		/**
+		 * The results.
+		 */
+		private Processable[] processables;
+
+		/**
+		 * The core of the layer, bound to the thread of the executor while
+		 * the process runs.
+		 */
+		private Core core;
+
+		/**
+		 * Number of implicit processes of the layer not finished yet.
+		 */
+		private AtomicInteger running;
+
+		/**
+		 * Default constructor.
+		 * 
+		 * @param function
+		 *            The cognitive function.
+		 * @param processables
+		 *            The results.
+		 * @param core
+		 *            The core of the layer.
+		 * @param running
+		 *            Number of implicit processes of the layer not finished
+		 *            yet, decreased when this one ends.
+		 */
+		public ImplicitProcess(CognitiveFunction function, Processable[] processables, Core core,
+				AtomicInteger running) {
+			this.function = function;
+			this.processables = processables;
+			this.core = core;
+			this.running = running;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run() {
+			Core.setCurrent(this.core);
+			try {
+				implicitProcess(this.function, this.processables);
+			} finally {
+				for (Processable processable : this.processables) {
+					Processor.release(processable);
+				}
+				this.running.decrementAndGet();
+				Core.setCurrent(null);
+			}
+		}
+
+	}
+
 	/**
 	 * Manages the results of a processor, send it to the current layer and the
 	 * proper higher or lower layer depending on the type of processable elment
 	 * generated. Actions go always to current and lower layers and percepts to
-	 * current and upper layers.
+	 * current and upper layers. By default the targets are looked up in the
+	 * routes of the Core.
+	 * 
+	 * @param processable
+	 * @see Core#setRoutingTable(RoutingTable)
+	 */
+	protected void layerManageResult(Processable processable) {
+		Layer[] targets = this.getRoute(processable);
+		for (Layer target : targets) {
+			target.postProcessable(processable, this);
+		}
+	}
+
+	/**
+	 * Manages several results of a processor. By default each result is
+	 * managed with layerManageResult(Processable).
+	 * 
+	 * @param processables
+	 *            The results.
+	 */
+	protected void layerManageResults(Processable[] processables) {
+		for (Processable processable : processables) {
+			layerManageResult(processable);
+		}
+	}
+
+	/**
+	 * Returns the layers which receive a result of this layer.
 	 * 
 	 * @param processable
+	 *            The result.
+	 * @return The target layers.
 	 */
-	protected abstract void layerManageResult(Processable processable);
+	Layer[] getRoute(Processable processable) {
+		Layer[] targets = this.core.getRoute(this.getLayerType(), processable.getKind());
+		if (targets == null) {
+			throw new CeraException("No route for the results of kind " + processable.getKind() + " ("
+					+ processable.getClass().getName() + ").", this);
+		}
+		return targets;
+	}
 
 	/**
 	 * Resets the layer. Remove current information and send the reset command
@@ -347,19 +929,13 @@ public abstract class Layer implements Statistics {
 	public void reset() {
 		this.lastTickMaximumActivation = new Activation(Activation.MIN);
 		this.lastTickMiniumActivation = new Activation(Activation.MAX);
-		this.curentTickMaximumActivation = new Activation(Activation.MIN);
-		this.curentTickMiniumActivation = new Activation(Activation.MAX);
+		this.tickStatistics.set(new TickStatistics());
 		this.activationThreshold = new Activation(Activation.MIN);
 
 		this.lastTickAverageActivation = new Activation(Activation.MIN);
 		this.lastTickTotalAverageActivation = new Activation(Activation.MIN);
 		this.lastNumberOfProcessableElementsSubmitted = 0;
 		this.lastNumberOfTotalProcessableElementsSubmitted = 0;
-
-		this.sumTickActivation = 0;
-		this.sumTickTotalActivation = 0;
-		this.numberOfProcessableElementsSubmitted = 0;
-		this.numberOfTotalProcessableElementsSubmitted = 0;
 	}
 
 	/**
@@ -468,6 +1044,141 @@ public abstract class Layer implements Statistics {
 		this.activationThreshold.setValue(activationThreshold.getValue());
 	}
 
+	/**
+	 * @return the implicitProcessing
+	 */
+	public ImplicitProcessing getImplicitProcessing() {
+		return this.implicitProcessing;
+	}
+
+	/**
+	 * Sets how the results are sent to the cognitive functions for an implicit
+	 * processing.
+	 * 
+	 * @param implicitProcessing
+	 *            The mode, cannot be null.
+	 * @param executor
+	 *            Executor of the cognitive functions, only used and required
+	 *            if the mode is not SERIAL.
+	 */
+	public void setImplicitProcessing(ImplicitProcessing implicitProcessing, ExecutorService executor) {
+		if (implicitProcessing == null) {
+			throw new IllegalArgumentException("The implicit processing cannot be null.");
+		}
+		if (implicitProcessing != ImplicitProcessing.SERIAL && executor == null) {
+			throw new IllegalArgumentException("An executor is required for the implicit processing mode: "
+					+ implicitProcessing);
+		}
+		this.implicitProcessingExecutor = executor;
+		this.implicitProcessing = implicitProcessing;
+	}
+
+	/**
+	 * @return the nanoseconds the results waited for the implicit processing.
+	 */
+	public long getImplicitProcessingWaitNanoTime() {
+		return this.implicitProcessingWaitNanoTime.get();
+	}
+
+	/**
+	 * @return the number of times the results waited for the implicit
+	 *         processing.
+	 */
+	public long getImplicitProcessingWaits() {
+		return this.implicitProcessingWaits.get();
+	}
+
+	/**
+	 * @return the mailbox
+	 */
+	public LayerMailbox getMailbox() {
+		return this.mailbox;
+	}
+
+	/**
+	 * Sets the inbound mailbox of the layer and starts its thread. The previous
+	 * mailbox, if any, is stopped and its elements are submitted to the layer.
+	 * 
+	 * @param mailbox
+	 *            The mailbox, null to submit the elements synchronously.
+	 */
+	public synchronized void setMailbox(LayerMailbox mailbox) {
+		LayerMailbox previous = this.mailbox;
+		if (mailbox != null) {
+			mailbox.start(this);
+		}
+		this.mailbox = mailbox;
+		if (previous != null) {
+			previous.stop();
+		}
+	}
+
+	/**
+	 * @return the activationThresholdController
+	 */
+	public ActivationThresholdController getActivationThresholdController() {
+		return this.activationThresholdController;
+	}
+
+	/**
+	 * Sets a controller that adjusts the activation threshold in each tick
+	 * depending on the load of the layer. The threshold set with
+	 * setActivationThreshold(Activation) is the initial one.
+	 * 
+	 * @param activationThresholdController
+	 *            The controller, null to keep the threshold fixed.
+	 */
+	public void setActivationThresholdController(ActivationThresholdController activationThresholdController) {
+		this.activationThresholdController = activationThresholdController;
+	}
+
+	/**
+	 * @return the CPU time in nanoseconds the processors of the layer can use
+	 *         in each tick, 0 if there is no budget.
+	 */
+	public long getCpuBudget() {
+		return this.cpuBudget;
+	}
+
+	/**
+	 * Sets the CPU time the processors of the layer can use in each tick. When
+	 * a tick ends over the budget the elements with the lowest sorting value
+	 * waiting in the queues are shed, so a flood of elements in this layer
+	 * does not starve the other layers.
+	 * 
+	 * @param cpuBudget
+	 *            The nanoseconds of CPU time per tick, 0 to not limit it.
+	 */
+	public void setCpuBudget(long cpuBudget) {
+		if (cpuBudget < 0) {
+			throw new IllegalArgumentException("The CPU budget cannot be negative.");
+		}
+		this.cpuBudget = cpuBudget;
+	}
+
+	/**
+	 * @return the CPU time in nanoseconds used by the processors of the layer
+	 *         during the last tick.
+	 */
+	public long getLastTickCpuNanoTime() {
+		return this.lastTickCpuNanoTime;
+	}
+
+	/**
+	 * @return the number of queued elements shed because the last tick was
+	 *         over the CPU budget.
+	 */
+	public int getLastTickShed() {
+		return this.lastTickShed;
+	}
+
+	/**
+	 * @return the number of queued elements shed since the layer was created.
+	 */
+	public long getTotalShed() {
+		return this.totalShed.get();
+	}
+
 	/**
 	 * Returns the maximum activation of the processable elements during the
 	 * last tick, it includes the discarded elements.
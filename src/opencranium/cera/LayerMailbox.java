@@ -0,0 +1,549 @@
+package opencranium.cera;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import opencranium.Core;
+import opencranium.cranium.Processable;
+import opencranium.cranium.Processor;
+import opencranium.util.StatisticsManager;
+import opencranium.util.log.Logger;
+
+/**
+ * A bounded inbound mailbox of a layer. The results that other layers send to
+ * the layer are posted into the mailbox and a thread of the mailbox submits
+ * them to the layer, so the processor that generated them does not wait for
+ * the dispatch in the layer. When the mailbox is full the backpressure policy
+ * decides what happens with a new element. The mailbox keeps the metrics of
+ * each edge, i.e. of the elements posted by each source layer.
+ * 
+ * @see Layer#setMailbox(LayerMailbox)
+ * @see Layer#postProcessable(Processable, Layer)
+ * 
+ * @author Jorge Muñoz
+ * @author Raúl Arrabales
+ */
+public class LayerMailbox implements Runnable {
+
+	/**
+	 * What to do with a new element when the mailbox is full.
+	 * 
+	 * @author Jorge Muñoz
+	 * @author Raúl Arrabales
+	 */
+	public enum Backpressure {
+
+		/**
+		 * The producer waits until there is space in the mailbox.
+		 */
+		BLOCK,
+
+		/**
+		 * The element with the lowest activation, the new one included, is
+		 * dropped.
+		 */
+		DROP_LOWEST,
+
+		/**
+		 * A new element which is an update of an element waiting in the mailbox
+		 * replaces it, even if the mailbox is not full. If there is no element
+		 * to update and the mailbox is full the lowest one is dropped.
+		 * 
+		 * @see Processable#isAnUpdatedProcessable(Processable)
+		 */
+		COALESCE
+	}
+
+	/**
+	 * Maximum number of elements waiting in the mailbox.
+	 */
+	private int capacity;
+
+	/**
+	 * Backpressure policy.
+	 */
+	private Backpressure backpressure;
+
+	/**
+	 * Elements waiting in the mailbox.
+	 */
+	private List<Processable> elements;
+
+	/**
+	 * Type of the source layer of each element waiting.
+	 */
+	private List<Layer.Type> sources;
+
+	/**
+	 * Elements waiting from each source layer.
+	 */
+	private int[] depth;
+
+	/**
+	 * Maximum number of elements waiting from each source layer.
+	 */
+	private int[] maximumDepth;
+
+	/**
+	 * Elements taken from the mailbox whose submission to the layer has not
+	 * finished yet.
+	 */
+	private int inFlight;
+
+	/**
+	 * Elements posted by each source layer.
+	 */
+	private long[] posted;
+
+	/**
+	 * Elements posted by each source layer dropped by the backpressure.
+	 */
+	private long[] dropped;
+
+	/**
+	 * Elements posted by each source layer that replaced another one.
+	 */
+	private long[] coalesced;
+
+	/**
+	 * Lock of the mailbox.
+	 */
+	private Lock lock;
+
+	/**
+	 * Condition to wait for elements.
+	 */
+	private Condition notEmpty;
+
+	/**
+	 * Condition to wait for space.
+	 */
+	private Condition notFull;
+
+	/**
+	 * Layer that owns the mailbox, null if the mailbox is not started.
+	 */
+	private volatile Layer layer;
+
+	/**
+	 * Thread that submits the elements to the layer.
+	 */
+	private Thread thread;
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param capacity
+	 *            Maximum number of elements waiting in the mailbox, at least
+	 *            1.
+	 * @param backpressure
+	 *            What to do with a new element when the mailbox is full.
+	 */
+	public LayerMailbox(int capacity, Backpressure backpressure) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("The capacity must be at least 1.");
+		}
+		if (backpressure == null) {
+			throw new IllegalArgumentException("The backpressure cannot be null.");
+		}
+		this.capacity = capacity;
+		this.backpressure = backpressure;
+		this.elements = new ArrayList<Processable>(capacity);
+		this.sources = new ArrayList<Layer.Type>(capacity);
+		int edges = Layer.Type.values().length;
+		this.depth = new int[edges];
+		this.maximumDepth = new int[edges];
+		this.posted = new long[edges];
+		this.dropped = new long[edges];
+		this.coalesced = new long[edges];
+		this.lock = new ReentrantLock();
+		this.notEmpty = this.lock.newCondition();
+		this.notFull = this.lock.newCondition();
+	}
+
+	/**
+	 * Posts an element into the mailbox.
+	 * 
+	 * @param processable
+	 *            The element.
+	 * @param source
+	 *            The layer that generated the element.
+	 * @return true if the element was queued or dropped, false if the mailbox
+	 *         is not running and the element must be submitted directly to
+	 *         the layer.
+	 */
+	public boolean post(Processable processable, Layer source) {
+		int edge = source.getLayerType().ordinal();
+		try {
+			this.lock.lock();
+			if (this.layer == null) {
+				return false;
+			}
+			this.posted[edge]++;
+			if (this.backpressure == Backpressure.COALESCE) {
+				for (int i = 0; i < this.elements.size(); i++) {
+					if (processable.isAnUpdatedProcessable(this.elements.get(i))) {
+						this.remove(i);
+						this.add(processable, source.getLayerType());
+						this.coalesced[edge]++;
+						return true;
+					}
+				}
+			}
+			while (this.elements.size() >= this.capacity) {
+				if (this.backpressure == Backpressure.BLOCK) {
+					this.notFull.awaitUninterruptibly();
+					if (this.layer == null) {
+						this.posted[edge]--;
+						return false;
+					}
+				} else {
+					int lowest = this.getLowest();
+					if (processable.getActivation().getValue() <= this.elements.get(lowest).getActivation().getValue()) {
+						this.discard(processable, edge);
+						return true;
+					}
+					Processable removed = this.elements.get(lowest);
+					Layer.Type removedSource = this.remove(lowest);
+					this.discard(removed, removedSource.ordinal());
+				}
+			}
+			this.add(processable, source.getLayerType());
+			return true;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Adds an element at the end of the mailbox. Must be called with the lock
+	 * held.
+	 * 
+	 * @param processable
+	 *            The element.
+	 * @param source
+	 *            Type of the source layer.
+	 */
+	private void add(Processable processable, Layer.Type source) {
+		int edge = source.ordinal();
+		this.elements.add(processable);
+		Processor.retain(processable);
+		this.sources.add(source);
+		this.depth[edge]++;
+		if (this.depth[edge] > this.maximumDepth[edge]) {
+			this.maximumDepth[edge] = this.depth[edge];
+		}
+		this.notEmpty.signal();
+	}
+
+	/**
+	 * Removes an element of the mailbox. Must be called with the lock held.
+	 * 
+	 * @param index
+	 *            Index of the element.
+	 * @return Type of the source layer of the element.
+	 */
+	private Layer.Type remove(int index) {
+		Processor.release(this.elements.remove(index));
+		Layer.Type source = this.sources.remove(index);
+		this.depth[source.ordinal()]--;
+		return source;
+	}
+
+	/**
+	 * Returns the index of the element with the lowest activation. Must be
+	 * called with the lock held.
+	 * 
+	 * @return The index.
+	 */
+	private int getLowest() {
+		int lowest = 0;
+		for (int i = 1; i < this.elements.size(); i++) {
+			if (this.elements.get(i).getActivation().getValue() < this.elements.get(lowest).getActivation()
+					.getValue()) {
+				lowest = i;
+			}
+		}
+		return lowest;
+	}
+
+	/**
+	 * Records an element dropped by the backpressure.
+	 * 
+	 * @param processable
+	 *            The element.
+	 * @param edge
+	 *            Ordinal of the type of its source layer.
+	 */
+	private void discard(Processable processable, int edge) {
+		this.dropped[edge]++;
+		Layer target = this.layer;
+		if (target != null && StatisticsManager.isRecording()) {
+			processable.getId().addDiscarded(target.getId());
+		}
+	}
+
+	/**
+	 * Starts the thread that submits the elements of the mailbox to a layer.
+	 * 
+	 * @param target
+	 *            The layer owner of the mailbox.
+	 */
+	synchronized void start(Layer target) {
+		if (this.thread != null) {
+			throw new CeraException("The mailbox has already been started.", target);
+		}
+		this.layer = target;
+		this.thread = new Thread(this, "Mailbox of " + target.getLayerType());
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Stops the thread of the mailbox. The elements still in the mailbox are
+	 * submitted to the layer before this method returns.
+	 */
+	synchronized void stop() {
+		Thread mailboxThread = this.thread;
+		Layer target = this.layer;
+		if (mailboxThread == null) {
+			return;
+		}
+		try {
+			this.lock.lock();
+			this.layer = null;
+			this.notFull.signalAll();
+			this.notEmpty.signalAll();
+		} finally {
+			this.lock.unlock();
+		}
+		this.thread = null;
+		mailboxThread.interrupt();
+		try {
+			mailboxThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		Processable[] remaining = this.takeAll(false);
+		if (remaining != null) {
+			try {
+				target.submitProcessables(remaining);
+			} finally {
+				release(remaining);
+			}
+		}
+	}
+
+	/**
+	 * Submits in the caller thread the elements in the mailbox to its layer.
+	 * The thread of the mailbox keeps running.
+	 */
+	void flush() {
+		Layer target = this.layer;
+		if (target == null) {
+			return;
+		}
+		Processable[] remaining = this.takeAll(false);
+		if (remaining != null) {
+			try {
+				target.submitProcessables(remaining);
+			} finally {
+				release(remaining);
+			}
+		}
+	}
+
+	/**
+	 * Releases the references of the mailbox to some elements taken, once
+	 * they were submitted to the layer, and stops counting them as in flight.
+	 * 
+	 * @param taken
+	 *            The elements.
+	 */
+	private void release(Processable[] taken) {
+		for (Processable processable : taken) {
+			Processor.release(processable);
+		}
+		try {
+			this.lock.lock();
+			this.inFlight -= taken.length;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Takes all the elements of the mailbox. They are counted as in flight
+	 * until they are released.
+	 * 
+	 * @param wait
+	 *            true to wait until there are elements.
+	 * @return The elements, null if there are none.
+	 */
+	private Processable[] takeAll(boolean wait) {
+		try {
+			this.lock.lock();
+			if (wait) {
+				while (this.elements.isEmpty() && this.layer != null) {
+					this.notEmpty.await();
+				}
+			}
+			if (this.elements.isEmpty()) {
+				return null;
+			}
+			Processable[] taken = this.elements.toArray(new Processable[this.elements.size()]);
+			this.inFlight += taken.length;
+			this.elements.clear();
+			this.sources.clear();
+			for (int i = 0; i < this.depth.length; i++) {
+				this.depth[i] = 0;
+			}
+			this.notFull.signalAll();
+			return taken;
+		} catch (InterruptedException e) {
+			return null;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		Layer target = this.layer;
+		if (target != null) {
+			Core.setCurrent(target.core);
+		}
+		while (this.layer == target && target != null) {
+			Processable[] taken = this.takeAll(true);
+			if (taken != null) {
+				try {
+					target.submitProcessables(taken);
+				} catch (RuntimeException e) {
+					Logger.exception(e);
+				} finally {
+					release(taken);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the number of elements waiting in the mailbox plus the number of
+	 *         elements taken whose submission to the layer is in progress.
+	 */
+	public int getDepth() {
+		try {
+			this.lock.lock();
+			return this.elements.size() + this.inFlight;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of elements waiting in the mailbox posted by a type of
+	 * layer.
+	 * 
+	 * @param source
+	 *            The type of the source layer.
+	 * @return The number of elements.
+	 */
+	public int getDepth(Layer.Type source) {
+		try {
+			this.lock.lock();
+			return this.depth[source.ordinal()];
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the maximum number of elements that were waiting in the mailbox
+	 * posted by a type of layer.
+	 * 
+	 * @param source
+	 *            The type of the source layer.
+	 * @return The number of elements.
+	 */
+	public int getMaximumDepth(Layer.Type source) {
+		try {
+			this.lock.lock();
+			return this.maximumDepth[source.ordinal()];
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of elements posted by a type of layer.
+	 * 
+	 * @param source
+	 *            The type of the source layer.
+	 * @return The number of elements.
+	 */
+	public long getPosted(Layer.Type source) {
+		try {
+			this.lock.lock();
+			return this.posted[source.ordinal()];
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of elements posted by a type of layer dropped by the
+	 * backpressure.
+	 * 
+	 * @param source
+	 *            The type of the source layer.
+	 * @return The number of elements.
+	 */
+	public long getDropped(Layer.Type source) {
+		try {
+			this.lock.lock();
+			return this.dropped[source.ordinal()];
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of elements posted by a type of layer that replaced
+	 * an element waiting in the mailbox.
+	 * 
+	 * @param source
+	 *            The type of the source layer.
+	 * @return The number of elements.
+	 */
+	public long getCoalesced(Layer.Type source) {
+		try {
+			this.lock.lock();
+			return this.coalesced[source.ordinal()];
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * @return the backpressure
+	 */
+	public Backpressure getBackpressure() {
+		return this.backpressure;
+	}
+
+}
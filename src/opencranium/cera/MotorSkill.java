@@ -105,4 +105,20 @@ public abstract class MotorSkill extends CeraWorkspaceProcessor implements Agent
 		return memory;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * opencranium.cranium.WorkspaceProcessor#setSortTermMemory(opencranium.
+	 * cranium.Processable[])
+	 */
+	@Override
+	public final void setSortTermMemory(Processable[] memory) {
+		if (memory != null && memory.length > 0 && memory[0] instanceof Action) {
+			this.lastActionExecuted = (Action) memory[0];
+		} else {
+			this.lastActionExecuted = null;
+		}
+	}
+
 }
\ No newline at end of file
@@ -39,31 +39,7 @@ public class PhysicalLayer extends WorkspaceLayer {
 	 */
 	@Override
 	public void layerManageResult(Processable processable) {
-		if (processable.isAction()) {
-			if (processable.isSimpleAction()) {
-				this.core.getPhysicalLayer().submitProcessable(processable);
-				this.core.getSensoryMotorLayer().submitProcessable(processable);
-			} else if (processable.isComplexAction()) {
-				throw new CeraException("Physical layer cannot generate Complex Actions.", this);
-			} else {
-				throw new CeraException("Processable is an Action but the type is unknown.", this);
-			}
-		} else if (processable.isPercept()) {
-			if (processable.isSinglePercept()) {
-				throw new CeraException("Physical layer cannot generate Single Percepts.", this);
-			} else if (processable.isComplexPercept()) {
-				this.core.getPhysicalLayer().submitProcessable(processable);
-				this.core.getMissionLayer().submitProcessable(processable);
-			} else if (processable.isMissionPercept()) {
-				this.core.getPhysicalLayer().submitProcessable(processable);
-				this.core.getMissionLayer().submitProcessable(processable);
-			} else {
-				throw new CeraException("Processable is a Percept but the type is unknown.", this);
-			}
-		} else {
-			throw new CeraException("Type of the result not exptected: " + processable.getClass().getName(), this);
-		}
-
+		super.layerManageResult(processable);
 	}
 
 }
\ No newline at end of file
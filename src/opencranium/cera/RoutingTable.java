@@ -0,0 +1,155 @@
+package opencranium.cera;
+
+import opencranium.cranium.Processable;
+import opencranium.cranium.Processable.Kind;
+
+/**
+ * The routes of the results of the layers. For each type of source layer and
+ * kind of processable element the table contains the types of the layers
+ * which receive the results, in order. A combination without route is an
+ * error of the processors of the source layer. The table is validated and
+ * compiled into a matrix of layers when it is set in the Core, so routing a
+ * result is a single lookup in the matrix.
+ * 
+ * @see opencranium.Core#setRoutingTable(RoutingTable)
+ * @see Layer#layerManageResult(Processable)
+ * 
+ * @author Jorge Muñoz
+ * @author Raúl Arrabales
+ */
+public class RoutingTable {
+
+	/**
+	 * Types of the target layers, indexed by the ordinal of the source layer
+	 * type and by the ordinal of the kind. null if there is no route.
+	 */
+	private Layer.Type[][][] routes;
+
+	/**
+	 * Default constructor. The table has no routes.
+	 */
+	public RoutingTable() {
+		this.routes = new Layer.Type[Layer.Type.values().length][Kind.values().length][];
+	}
+
+	/**
+	 * Creates a table with the routes of the CERA: actions go to the current
+	 * and lower layers and percepts to the current and upper layers.
+	 * 
+	 * @return A new table with the default routes.
+	 */
+	public static RoutingTable createDefault() {
+		RoutingTable table = new RoutingTable();
+		table.setRoute(Layer.Type.SENSORY_MOTOR_LAYER, Kind.SINGLE_PERCEPT, Layer.Type.PHYSICAL_LAYER);
+		table.setRoute(Layer.Type.SENSORY_MOTOR_LAYER, Kind.COMPLEX_PERCEPT, Layer.Type.PHYSICAL_LAYER);
+		table.setRoute(Layer.Type.SENSORY_MOTOR_LAYER, Kind.MISSION_PERCEPT, Layer.Type.PHYSICAL_LAYER,
+				Layer.Type.MISSION_LAYER);
+		table.setRoute(Layer.Type.PHYSICAL_LAYER, Kind.SIMPLE_ACTION, Layer.Type.PHYSICAL_LAYER,
+				Layer.Type.SENSORY_MOTOR_LAYER);
+		table.setRoute(Layer.Type.PHYSICAL_LAYER, Kind.COMPLEX_PERCEPT, Layer.Type.PHYSICAL_LAYER,
+				Layer.Type.MISSION_LAYER);
+		table.setRoute(Layer.Type.PHYSICAL_LAYER, Kind.MISSION_PERCEPT, Layer.Type.PHYSICAL_LAYER,
+				Layer.Type.MISSION_LAYER);
+		table.setRoute(Layer.Type.MISSION_LAYER, Kind.COMPLEX_ACTION, Layer.Type.MISSION_LAYER,
+				Layer.Type.CORE_LAYER, Layer.Type.PHYSICAL_LAYER);
+		table.setRoute(Layer.Type.MISSION_LAYER, Kind.MISSION_PERCEPT, Layer.Type.MISSION_LAYER,
+				Layer.Type.CORE_LAYER);
+		return table;
+	}
+
+	/**
+	 * Sets the route of a kind of results of a type of layer. The changes in
+	 * a table already set in the Core have no effect until it is set again.
+	 * 
+	 * @param source
+	 *            Type of the layer which generates the results.
+	 * @param kind
+	 *            Kind of the results.
+	 * @param targets
+	 *            Types of the layers which receive the results, in order. An
+	 *            empty array means the results are ignored.
+	 */
+	public void setRoute(Layer.Type source, Kind kind, Layer.Type... targets) {
+		if (source == null || kind == null) {
+			throw new IllegalArgumentException("The source and the kind cannot be null.");
+		}
+		if (targets == null) {
+			throw new IllegalArgumentException("The targets cannot be null, use removeRoute.");
+		}
+		for (int i = 0; i < targets.length; i++) {
+			if (targets[i] == null) {
+				throw new IllegalArgumentException("The targets cannot contain null.");
+			}
+			for (int j = 0; j < i; j++) {
+				if (targets[i] == targets[j]) {
+					throw new IllegalArgumentException("Repeated target " + targets[i] + " in the route of "
+							+ kind + " from " + source + ".");
+				}
+			}
+		}
+		this.routes[source.ordinal()][kind.ordinal()] = targets.clone();
+	}
+
+	/**
+	 * Removes the route of a kind of results of a type of layer, so the
+	 * results of that kind are an error.
+	 * 
+	 * @param source
+	 *            Type of the layer which generates the results.
+	 * @param kind
+	 *            Kind of the results.
+	 */
+	public void removeRoute(Layer.Type source, Kind kind) {
+		this.routes[source.ordinal()][kind.ordinal()] = null;
+	}
+
+	/**
+	 * Returns the route of a kind of results of a type of layer.
+	 * 
+	 * @param source
+	 *            Type of the layer which generates the results.
+	 * @param kind
+	 *            Kind of the results.
+	 * @return A copy of the types of the target layers, null if there is no
+	 *         route.
+	 */
+	public Layer.Type[] getRoute(Layer.Type source, Kind kind) {
+		Layer.Type[] targets = this.routes[source.ordinal()][kind.ordinal()];
+		return targets == null ? null : targets.clone();
+	}
+
+	/**
+	 * Validates the table and compiles it into a matrix of layers.
+	 * 
+	 * @param layers
+	 *            The layers, indexed by the ordinal of their type.
+	 * @return The layers which receive the results, indexed by the ordinal of
+	 *         the source layer type and by the ordinal of the kind. null if
+	 *         there is no route.
+	 */
+	public Layer[][][] compile(Layer[] layers) {
+		if (layers == null || layers.length != Layer.Type.values().length) {
+			throw new IllegalArgumentException("There must be a layer of each type.");
+		}
+		for (Layer.Type type : Layer.Type.values()) {
+			if (layers[type.ordinal()] == null || layers[type.ordinal()].getLayerType() != type) {
+				throw new IllegalArgumentException("The layer of type " + type + " is not valid.");
+			}
+		}
+		Layer[][][] compiled = new Layer[this.routes.length][][];
+		for (int source = 0; source < this.routes.length; source++) {
+			compiled[source] = new Layer[this.routes[source].length][];
+			for (int kind = 0; kind < this.routes[source].length; kind++) {
+				Layer.Type[] targets = this.routes[source][kind];
+				if (targets != null) {
+					compiled[source][kind] = new Layer[targets.length];
+					for (int i = 0; i < targets.length; i++) {
+						compiled[source][kind][i] = layers[targets[i].ordinal()];
+					}
+				}
+			}
+		}
+		return compiled;
+	}
+
+}
@@ -34,11 +34,14 @@ public abstract class SensorSkill extends CeraWorkspaceProcessor implements Agen
 	}
 
 	/**
-	 * Senses the environment or the agent internal state.
+	 * Senses the environment or the agent internal state. The skill keeps a
+	 * reference to the recyclable percepts sensed until the next sense, so a
+	 * percept returned in two senses must be retained again.
 	 * 
 	 * @param tick
 	 *            Current tick.
 	 * @return An array with the sensed percepts.
+	 * @see opencranium.data.PerceptPool
 	 */
 	protected abstract Percept[] sense(Time tick);
 
@@ -70,8 +73,14 @@ public abstract class SensorSkill extends CeraWorkspaceProcessor implements Agen
 	public Processable[] execute(long milliseconds) {
 		Processable[] result = this.lastSense;
 		if (isSenseUpdated(this.getCurrentTick())) {
+			Percept[] previous = this.lastSense;
 			this.lastSense = sense(this.getCurrentTick());
 			result = this.lastSense;
+			if (previous != null) {
+				for (Percept percept : previous) {
+					release(percept);
+				}
+			}
 		}
 		return result;
 	}
@@ -134,4 +143,16 @@ public abstract class SensorSkill extends CeraWorkspaceProcessor implements Agen
 		throw new CeraException("Sensor Skills do not support input types.", this);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * opencranium.cranium.WorkspaceProcessor#addProcessables(opencranium.cranium
+	 * .Processable[])
+	 */
+	@Override
+	public final int addProcessables(Processable[] data) {
+		throw new CeraException("Sensor Skills do not support input types.", this);
+	}
+
 }
\ No newline at end of file
@@ -4,7 +4,6 @@ import java.util.ArrayList;
 import java.util.List;
 
 import opencranium.Core;
-import opencranium.cranium.Processable;
 import opencranium.cranium.ProcessorThreadPool;
 import opencranium.util.Id;
 import opencranium.util.IdManager;
@@ -69,29 +68,4 @@ public class SensoryMotorLayer extends WorkspaceLayer {
 				this);
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see opencranium.cera.Layer#manageResult(opencranium.cranium.Processable)
-	 */
-	@Override
-	protected void layerManageResult(Processable processable) {
-		if (processable.isAction()) {
-			throw new CeraException("Processable should not be an action.", this);
-		} else if (processable.isPercept()) {
-			if (processable.isSinglePercept()) {
-				this.core.getPhysicalLayer().submitProcessable(processable);
-			} else if (processable.isComplexPercept()) {
-				this.core.getPhysicalLayer().submitProcessable(processable);
-			} else if (processable.isMissionPercept()) {
-				this.core.getPhysicalLayer().submitProcessable(processable);
-				this.core.getMissionLayer().submitProcessable(processable);
-			} else {
-				throw new CeraException("Processable is a Percept but the type is unknown.", this);
-			}
-		} else {
-			throw new CeraException("Type of the result not exptected: " + processable.getClass().getName(), this);
-		}
-	}
-
 }
\ No newline at end of file
@@ -0,0 +1,223 @@
+package opencranium.cera;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import opencranium.cranium.Activation;
+
+/**
+ * Statistics of the processable elements submitted to a layer during a tick.
+ * The values are accumulated in striped atomic cells, one stripe per group of
+ * threads, so the threads submitting elements at the same time neither lose
+ * updates nor write in the same cache line. The stripes are only aggregated
+ * when the values are read, once per tick.
+ * 
+ * @see Layer#systemTick(opencranium.util.Time)
+ * 
+ * @author Jorge Muñoz
+ * @author Raúl Arrabales
+ */
+class TickStatistics {
+
+	/**
+	 * Number of longs of each stripe, a stripe fills a cache line.
+	 */
+	private static final int STRIDE = 8;
+
+	/**
+	 * Position of the number of accepted elements in a stripe.
+	 */
+	private static final int SUBMITTED = 0;
+
+	/**
+	 * Position of the number of elements, including the discarded ones, in a
+	 * stripe.
+	 */
+	private static final int TOTAL_SUBMITTED = 1;
+
+	/**
+	 * Position of the sum of activations of the accepted elements in a stripe.
+	 */
+	private static final int SUM = 2;
+
+	/**
+	 * Position of the sum of activations of all the elements in a stripe.
+	 */
+	private static final int TOTAL_SUM = 3;
+
+	/**
+	 * Position of the maximum activation in a stripe.
+	 */
+	private static final int MAXIMUM = 4;
+
+	/**
+	 * Position of the minimum activation in a stripe.
+	 */
+	private static final int MINIMUM = 5;
+
+	/**
+	 * Position of the number of threads adding an element in a stripe.
+	 */
+	private static final int WRITERS = 6;
+
+	/**
+	 * Number of stripes, a power of 2 not less than the number of processors.
+	 */
+	private static final int STRIPES = Integer.highestOneBit(Math.max(1,
+			Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+	/**
+	 * The striped cells.
+	 */
+	private final AtomicLongArray cells;
+
+	/**
+	 * true once the statistics are replaced, the elements are not added
+	 * anymore.
+	 */
+	private volatile boolean retired;
+
+	/**
+	 * Default constructor.
+	 */
+	TickStatistics() {
+		this.cells = new AtomicLongArray(STRIPES * STRIDE);
+		for (int i = 0; i < STRIPES; i++) {
+			this.cells.set(i * STRIDE + MAXIMUM, Activation.MIN);
+			this.cells.set(i * STRIDE + MINIMUM, Activation.MAX);
+		}
+	}
+
+	/**
+	 * Adds a processable element submitted to the layer.
+	 * 
+	 * @param activation
+	 *            The activation of the element.
+	 * @param accepted
+	 *            true if the element was accepted by the layer.
+	 * @return false if the statistics were retired and the element was not
+	 *         added, it must be added to the statistics that replaced them.
+	 */
+	boolean add(int activation, boolean accepted) {
+		int base = (int) (Thread.currentThread().getId() & (STRIPES - 1)) * STRIDE;
+		this.cells.incrementAndGet(base + WRITERS);
+		try {
+			if (this.retired) {
+				return false;
+			}
+			this.record(base, activation, accepted);
+			return true;
+		} finally {
+			this.cells.decrementAndGet(base + WRITERS);
+		}
+	}
+
+	/**
+	 * Stops adding elements and waits until the threads adding an element
+	 * finish, so the values can be aggregated without losing any update.
+	 */
+	void retire() {
+		this.retired = true;
+		for (int i = 0; i < STRIPES; i++) {
+			while (this.cells.get(i * STRIDE + WRITERS) > 0) {
+				Thread.yield();
+			}
+		}
+	}
+
+	/**
+	 * Records an element in a stripe.
+	 * 
+	 * @param base
+	 *            Position of the stripe.
+	 * @param activation
+	 *            The activation of the element.
+	 * @param accepted
+	 *            true if the element was accepted by the layer.
+	 */
+	private void record(int base, int activation, boolean accepted) {
+		this.cells.incrementAndGet(base + TOTAL_SUBMITTED);
+		this.cells.addAndGet(base + TOTAL_SUM, activation);
+		if (accepted) {
+			this.cells.incrementAndGet(base + SUBMITTED);
+			this.cells.addAndGet(base + SUM, activation);
+		}
+		long maximum = this.cells.get(base + MAXIMUM);
+		while (activation > maximum && !this.cells.compareAndSet(base + MAXIMUM, maximum, activation)) {
+			maximum = this.cells.get(base + MAXIMUM);
+		}
+		long minimum = this.cells.get(base + MINIMUM);
+		while (activation < minimum && !this.cells.compareAndSet(base + MINIMUM, minimum, activation)) {
+			minimum = this.cells.get(base + MINIMUM);
+		}
+	}
+
+	/**
+	 * Sums a value of all the stripes.
+	 * 
+	 * @param position
+	 *            Position of the value in the stripe.
+	 * @return The sum.
+	 */
+	private long sum(int position) {
+		long sum = 0;
+		for (int i = 0; i < STRIPES; i++) {
+			sum += this.cells.get(i * STRIDE + position);
+		}
+		return sum;
+	}
+
+	/**
+	 * @return the number of elements accepted.
+	 */
+	int getSubmitted() {
+		return (int) this.sum(SUBMITTED);
+	}
+
+	/**
+	 * @return the number of elements submitted, including the discarded ones.
+	 */
+	int getTotalSubmitted() {
+		return (int) this.sum(TOTAL_SUBMITTED);
+	}
+
+	/**
+	 * @return the average activation of the elements accepted, or
+	 *         Activation.MIN if there are none.
+	 */
+	int getAverageActivation() {
+		long submitted = this.sum(SUBMITTED);
+		return submitted > 0 ? (int) (this.sum(SUM) / submitted) : Activation.MIN;
+	}
+
+	/**
+	 * @return the average activation of all the elements submitted, or
+	 *         Activation.MIN if there are none.
+	 */
+	int getTotalAverageActivation() {
+		long submitted = this.sum(TOTAL_SUBMITTED);
+		return submitted > 0 ? (int) (this.sum(TOTAL_SUM) / submitted) : Activation.MIN;
+	}
+
+	/**
+	 * @return the maximum activation, Activation.MIN if there are no elements.
+	 */
+	int getMaximumActivation() {
+		long maximum = Activation.MIN;
+		for (int i = 0; i < STRIPES; i++) {
+			maximum = Math.max(maximum, this.cells.get(i * STRIDE + MAXIMUM));
+		}
+		return (int) maximum;
+	}
+
+	/**
+	 * @return the minimum activation, Activation.MAX if there are no elements.
+	 */
+	int getMinimumActivation() {
+		long minimum = Activation.MAX;
+		for (int i = 0; i < STRIPES; i++) {
+			minimum = Math.min(minimum, this.cells.get(i * STRIDE + MINIMUM));
+		}
+		return (int) minimum;
+	}
+
+}
@@ -2,6 +2,7 @@ package opencranium.cera;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import opencranium.Core;
 import opencranium.command.Action;
@@ -27,7 +28,8 @@ public abstract class WorkspaceLayer extends Layer {
 	private Workspace workspace;
 
 	/**
-	 * List of CeraWorkspaceProcessors that this layer contains.
+	 * List of CeraWorkspaceProcessors that this layer contains. Copy on write,
+	 * it is iterated from the tick thread while processors are registered.
 	 */
 	private List<CeraWorkspaceProcessor> processorsSet;
 
@@ -46,9 +48,45 @@ public abstract class WorkspaceLayer extends Layer {
 	 *            The core of the layers
 	 */
 	protected WorkspaceLayer(Id id, Type layerType, ProcessorThreadPool processorThreadPool, Core core) {
+		this(id, layerType, processorThreadPool, core, 1);
+	}
+
+	/**
+	 * 
+	 * Constructor with the number of shards of the workspace.
+	 * 
+	 * @param id
+	 *            Id of the layer
+	 * @param layerType
+	 *            The type of the layer
+	 * @param processorThreadPool
+	 *            The ThreadPool used in the workspace to execute the
+	 *            processors.
+	 * @param core
+	 *            The core of the layers
+	 * @param workspaceShards
+	 *            Number of shards of the workspace.
+	 * @see Workspace#Workspace(ProcessorThreadPool, int)
+	 */
+	protected WorkspaceLayer(Id id, Type layerType, ProcessorThreadPool processorThreadPool, Core core,
+			int workspaceShards) {
 		super(id, layerType, core);
-		this.workspace = new Workspace(processorThreadPool);
-		this.processorsSet = new ArrayList<CeraWorkspaceProcessor>();
+		this.workspace = new Workspace(processorThreadPool, workspaceShards);
+		this.processorsSet = new CopyOnWriteArrayList<CeraWorkspaceProcessor>();
+	}
+
+	/**
+	 * Checks if the batches of results are routed one by one with
+	 * layerManageResult(Processable) instead of with the routing table. A
+	 * subclass that customises layerManageResult(Processable) returns true so
+	 * the batches go through its routing too. By default false.
+	 * 
+	 * @return true to route each result of a batch with
+	 *         layerManageResult(Processable).
+	 * @see WorkspaceLayer#layerManageResults(Processable[])
+	 */
+	protected boolean isPerResultRouting() {
+		return false;
 	}
 
 	@Override
@@ -97,6 +135,176 @@ public abstract class WorkspaceLayer extends Layer {
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * opencranium.cera.Layer#layerSubmitProcessables(opencranium.cranium.Processable
+	 * [])
+	 */
+	@Override
+	protected void layerSubmitProcessables(Processable[] processables) {
+		for (Processable processable : processables) {
+			if (!(processable instanceof Action || processable instanceof Percept)) {
+				throw new CeraException("CERA only support Processable of types Action and Percept", this);
+			}
+		}
+		this.workspace.submitProcessables(processables);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * opencranium.cera.Layer#layerManageResults(opencranium.cranium.Processable
+	 * [])
+	 */
+	@Override
+	protected void layerManageResults(Processable[] processables) {
+		if (this.isPerResultRouting()) {
+			// the routing of each result is customised by the subclass
+			for (Processable processable : processables) {
+				this.layerManageResult(processable);
+			}
+			return;
+		}
+		// routed as with layerManageResult, each target receives one batch
+		Layer[][] routes = new Layer[processables.length][];
+		Layer[] targets = new Layer[Type.values().length];
+		int[] counts = new int[targets.length];
+		for (int i = 0; i < processables.length; i++) {
+			routes[i] = this.getRoute(processables[i]);
+			for (Layer target : routes[i]) {
+				targets[target.getLayerType().ordinal()] = target;
+				counts[target.getLayerType().ordinal()]++;
+			}
+		}
+		for (int t = 0; t < targets.length; t++) {
+			if (counts[t] == processables.length) {
+				targets[t].postProcessables(processables, this);
+			} else if (counts[t] > 0) {
+				Processable[] batch = new Processable[counts[t]];
+				int size = 0;
+				for (int i = 0; i < processables.length; i++) {
+					for (Layer target : routes[i]) {
+						if (target == targets[t]) {
+							batch[size++] = processables[i];
+						}
+					}
+				}
+				targets[t].postProcessables(batch, this);
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see opencranium.cera.Layer#getQueueDepth()
+	 */
+	@Override
+	protected int getQueueDepth() {
+		int depth = 0;
+		for (CeraWorkspaceProcessor processor : this.processorsSet) {
+			depth += processor.getQueueSize();
+		}
+		return depth;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see opencranium.cera.Layer#getProcessingNanoTime()
+	 */
+	@Override
+	protected long getProcessingNanoTime() {
+		long nanoTime = 0;
+		for (CeraWorkspaceProcessor processor : this.processorsSet) {
+			nanoTime += processor.getTotalProcessingNanoTime();
+		}
+		return nanoTime;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see opencranium.cera.Layer#getCpuNanoTime()
+	 */
+	@Override
+	protected long getCpuNanoTime() {
+		long nanoTime = 0;
+		for (CeraWorkspaceProcessor processor : this.processorsSet) {
+			nanoTime += processor.getTotalCpuNanoTime();
+		}
+		return nanoTime;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see opencranium.cera.Layer#getProcessors()
+	 */
+	@Override
+	public List<Processor> getProcessors() {
+		return new ArrayList<Processor>(this.processorsSet);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see opencranium.cera.Layer#flush()
+	 */
+	@Override
+	public void flush() {
+		super.flush();
+		this.workspace.flushDispatches();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see opencranium.cera.Layer#stopThreads()
+	 */
+	@Override
+	public void stopThreads() {
+		super.stopThreads();
+		if (this.workspace.isDispatchThreadsRunning()) {
+			this.workspace.stopDispatchThreads();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see opencranium.cera.Layer#isProcessing()
+	 */
+	@Override
+	protected boolean isProcessing() {
+		if (this.workspace.getPendingDispatches() > 0) {
+			return true;
+		}
+		for (CeraWorkspaceProcessor processor : this.processorsSet) {
+			if (processor.isSomethingToProcess() || processor.isProcessing()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see opencranium.cera.Layer#shedQueued(float)
+	 */
+	@Override
+	protected int shedQueued(float fraction) {
+		int shed = 0;
+		for (CeraWorkspaceProcessor processor : this.processorsSet) {
+			shed += processor.shedLowest((int) Math.ceil(processor.getQueueSize() * fraction));
+		}
+		return shed;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
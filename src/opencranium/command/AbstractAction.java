@@ -2,6 +2,7 @@ package opencranium.command;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 
 import opencranium.Core;
 import opencranium.cranium.Activation;
@@ -28,9 +29,14 @@ public abstract class AbstractAction implements Action {
 	private Time executionTime;
 
 	/**
-	 * When this action was created.
+	 * Tick when this action was created.
 	 */
-	private Time creationTime;
+	private int creationTick;
+
+	/**
+	 * Milliseconds of the tick when this action was created.
+	 */
+	private long creationMilliseconds;
 
 	/**
 	 * Priority of this action.
@@ -57,6 +63,11 @@ public abstract class AbstractAction implements Action {
 	 */
 	private Type type;
 
+	/**
+	 * Kind of the action, derived from its type.
+	 */
+	private Kind kind;
+
 	/**
 	 * Modification for highest priority
 	 */
@@ -82,6 +93,49 @@ public abstract class AbstractAction implements Action {
 	 */
 	private static double MODIFICATION_LOWEST = 0.7;
 
+	/**
+	 * Sorting values indexed by the ordinal of the priority and the value of
+	 * the activation. It is computed again when the modifications change.
+	 */
+	private static volatile int[][] SORTING_VALUES = createSortingValues();
+
+	/**
+	 * Computes the sorting values of all the priorities and the activations
+	 * with the current modifications.
+	 * 
+	 * @return The sorting values indexed by the ordinal of the priority and
+	 *         the value of the activation.
+	 */
+	private static int[][] createSortingValues() {
+		Priority[] priorities = Priority.values();
+		int[][] sortingValues = new int[priorities.length][Activation.MAX - Activation.MIN + 1];
+		for (Priority priority : priorities) {
+			double modification;
+			switch (priority) {
+			case HIGHEST:
+				modification = MODIFICATION_HIGHEST;
+				break;
+			case HIGH:
+				modification = MODIFICATION_HIGH;
+				break;
+			case LOW:
+				modification = MODIFICATION_LOW;
+				break;
+			case LOWEST:
+				modification = MODIFICATION_LOWEST;
+				break;
+			default:
+				modification = MODIFICATION_MED;
+			}
+			int[] values = sortingValues[priority.ordinal()];
+			for (int i = 0; i < values.length; i++) {
+				int value = (int) ((Activation.MIN + i) * modification);
+				values[i] = Math.max(Activation.MIN, Math.min(Activation.MAX, value));
+			}
+		}
+		return sortingValues;
+	}
+
 	/**
 	 * Load the modifications for the priorities from a properties object.
 	 * 
@@ -127,6 +181,7 @@ public abstract class AbstractAction implements Action {
 			Logger.verbose("Property " + "" + " not loaded due to: " + e.getMessage());
 			loaded = false;
 		}
+		SORTING_VALUES = createSortingValues();
 		return loaded;
 	}
 
@@ -152,6 +207,7 @@ public abstract class AbstractAction implements Action {
 		if (this.type == null) {
 			throw new IllegalArgumentException("The type can not be null.");
 		}
+		this.kind = this.type == Type.SIMPLE ? Kind.SIMPLE_ACTION : Kind.COMPLEX_ACTION;
 		this.executionTime = null;
 		this.priority = priority;
 		if (this.priority == null) {
@@ -160,9 +216,12 @@ public abstract class AbstractAction implements Action {
 		this.activation = new Activation(Activation.MIN);
 		this.generatedBy = generatedBy;
 		if (this.generatedBy == null) {
-			this.generatedBy = new ArrayList<Processable>();
+			this.generatedBy = Collections.emptyList();
 		}
-		this.creationTime = new Time(Core.instance().getCurrentTick().getTick(), System.currentTimeMillis());
+		Core core = Core.current();
+		Time tick = core.getCurrentTick();
+		this.creationTick = tick.getTick();
+		this.creationMilliseconds = tick.getMilliseconds();
 	}
 
 	/**
@@ -295,7 +354,17 @@ public abstract class AbstractAction implements Action {
 	 */
 	@Override
 	public final Time getCreationTime() {
-		return this.creationTime;
+		return new Time(this.creationTick, this.creationMilliseconds);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see opencranium.cranium.Processable#getCreationTick()
+	 */
+	@Override
+	public final int getCreationTick() {
+		return this.creationTick;
 	}
 
 	/*
@@ -372,28 +441,17 @@ public abstract class AbstractAction implements Action {
 	 */
 	@Override
 	public final int getSortingValue() {
-		double modification = 1;
-		switch (this.priority) {
-		case HIGHEST:
-			modification = MODIFICATION_HIGHEST;
-			break;
-		case HIGH:
-			modification = MODIFICATION_HIGH;
-			break;
-		case MED:
-			modification = MODIFICATION_MED;
-			break;
-		case LOW:
-			modification = MODIFICATION_LOW;
-			break;
-		case LOWEST:
-			modification = MODIFICATION_LOWEST;
-			break;
-		default:
-			throw new RuntimeException();
-		}
-		Activation a = new Activation((int) (this.activation.getValue() * modification));
-		return a.getValue();
+		return SORTING_VALUES[this.priority.ordinal()][this.activation.getValue() - Activation.MIN];
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see opencranium.cranium.Processable#getKind()
+	 */
+	@Override
+	public final Kind getKind() {
+		return this.kind;
 	}
 
 	/*
@@ -480,7 +538,7 @@ public abstract class AbstractAction implements Action {
 		sb.append(" (").append(this.getActionType().toString()).append(')');
 		sb.append(" a: ").append(this.getActivation().getValue());
 		sb.append(" p: ").append(this.getPriority().name());
-		sb.append(" ct: ").append(this.getCreationTime().toString());
+		sb.append(" ct: ").append(this.creationTick).append(' ').append(this.creationMilliseconds);
 		if (this.getExecutionTime() != null) {
 			sb.append(" et: ").append(this.getExecutionTime().toString());
 		} else {
@@ -44,18 +44,19 @@ public class Activation {
 
 	/**
 	 * Sets the value. If it is out of the bounds the value is set to the
-	 * closest one.
+	 * closest one. The field is written once, so a concurrent reader never
+	 * sees a value out of the bounds.
 	 * 
 	 * @param value
 	 *            the value to set
 	 */
 	public void setValue(int value) {
-		this.value = value;
-		if (this.value > MAX) {
-			this.value = MAX;
-		} else if (this.value < MIN) {
-			this.value = MIN;
+		if (value > MAX) {
+			value = MAX;
+		} else if (value < MIN) {
+			value = MIN;
 		}
+		this.value = value;
 	}
 
 }
\ No newline at end of file
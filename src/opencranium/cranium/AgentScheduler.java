@@ -0,0 +1,802 @@
+package opencranium.cranium;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+import opencranium.Core;
+import opencranium.util.log.Logger;
+
+/**
+ * A pool of threads shared by several agents. Each agent is a core created
+ * with its own pool of this scheduler, so the processors of all the agents
+ * are executed by the same threads. The scheduler serves the agents in round
+ * robin, one processor of each agent with something to process, and it skips
+ * the agents that used their quota of CPU time in the current period. The
+ * threads are bound to the core of the agent while they execute its
+ * processors.
+ * 
+ * <pre>
+ * AgentScheduler scheduler = new AgentScheduler(8);
+ * Core agent = new Core(scheduler.createAgent());
+ * </pre>
+ * 
+ * @see Core#Core(ProcessorThreadPool)
+ * 
+ * @author Jorge Muñoz
+ * @author Raúl Arrabales
+ */
+public class AgentScheduler extends ProcessorThreadPool {
+
+	/**
+	 * The pool of threads of an agent. Its processors are executed by the
+	 * threads of the scheduler, the methods to start, stop and execute the
+	 * pool only enable or disable the agent in the scheduler.
+	 */
+	public static class Agent extends ProcessorThreadPool {
+
+		/**
+		 * The scheduler.
+		 */
+		private final AgentScheduler scheduler;
+
+		/**
+		 * The processors of the agent.
+		 */
+		private final List<Processor> processors;
+
+		/**
+		 * Time in nanoseconds when each processor finished its last
+		 * execution, or when it was added.
+		 */
+		private final Map<Processor, Long> lastExecution;
+
+		/**
+		 * Position of the next processor to execute.
+		 */
+		private int nextProcessor;
+
+		/**
+		 * If the agent is executed by the scheduler.
+		 */
+		private volatile boolean enabled;
+
+		/**
+		 * CPU time in nanoseconds the agent can use per period, 0 if it is
+		 * unlimited.
+		 */
+		private volatile long cpuQuota;
+
+		/**
+		 * CPU time in nanoseconds used in the current period.
+		 */
+		private long periodCpuNanoTime;
+
+		/**
+		 * Time in nanoseconds when the agent was created.
+		 */
+		private final long creationTime;
+
+		/**
+		 * Number of executions of the processors.
+		 */
+		private long executions;
+
+		/**
+		 * Total wall time in nanoseconds of the executions.
+		 */
+		private long processingNanoTime;
+
+		/**
+		 * Total CPU time in nanoseconds of the executions.
+		 */
+		private long cpuNanoTime;
+
+		/**
+		 * Total time in nanoseconds between the executions of each processor.
+		 */
+		private long interval;
+
+		/**
+		 * Maximum time in nanoseconds between two executions of a processor.
+		 */
+		private long maximumInterval;
+
+		/**
+		 * Default constructor.
+		 * 
+		 * @param scheduler
+		 *            The scheduler.
+		 */
+		private Agent(AgentScheduler scheduler) {
+			super(1);
+			this.scheduler = scheduler;
+			this.processors = new ArrayList<Processor>();
+			this.lastExecution = new IdentityHashMap<Processor, Long>();
+			this.creationTime = System.nanoTime();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see opencranium.cranium.ProcessorThreadPool#getNumberOfThreads()
+		 */
+		@Override
+		public int getNumberOfThreads() {
+			return this.scheduler.getNumberOfThreads();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * opencranium.cranium.ProcessorThreadPool#addProcessor(opencranium.cranium
+		 * .Processor)
+		 */
+		@Override
+		public boolean addProcessor(Processor processor) {
+			return this.scheduler.add(this, processor);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * opencranium.cranium.ProcessorThreadPool#removeProcessor(opencranium.
+		 * cranium.Processor)
+		 */
+		@Override
+		public boolean removeProcessor(Processor processor) {
+			return this.scheduler.remove(this, processor);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see opencranium.cranium.ProcessorThreadPool#startAll()
+		 */
+		@Override
+		public void startAll() {
+			this.enabled = false;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see opencranium.cranium.ProcessorThreadPool#stopAll()
+		 */
+		@Override
+		public void stopAll() {
+			this.enabled = false;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see opencranium.cranium.ProcessorThreadPool#pauseAll()
+		 */
+		@Override
+		public void pauseAll() {
+			this.enabled = false;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see opencranium.cranium.ProcessorThreadPool#resumeAll()
+		 */
+		@Override
+		public void resumeAll() {
+			this.enabled = true;
+			this.scheduler.wakeUp();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see opencranium.cranium.ProcessorThreadPool#getProcessors()
+		 */
+		@Override
+		protected Processor[] getProcessors() {
+			synchronized (this.scheduler.agents) {
+				return this.processors.toArray(new Processor[this.processors.size()]);
+			}
+		}
+
+		/**
+		 * Disables the agent and waits until the threads of the scheduler
+		 * finish its processors. The threads are not stopped, they are shared
+		 * with the other agents.
+		 * 
+		 * @param timeout
+		 *            Maximum time in milliseconds to wait, greater than 0.
+		 * @return true if no processor of the agent is being executed.
+		 */
+		@Override
+		protected boolean stopThreads(long timeout) {
+			this.enabled = false;
+			Processor[] agentProcessors = this.getProcessors();
+			long deadline = System.nanoTime() + timeout * 1000000L;
+			boolean processing = true;
+			while (processing && deadline - System.nanoTime() > 0) {
+				processing = false;
+				for (Processor processor : agentProcessors) {
+					processing |= processor.isProcessing();
+				}
+				if (processing) {
+					LockSupport.parkNanos(1000000L);
+				}
+			}
+			return !processing;
+		}
+
+		/**
+		 * Enables the agent in the scheduler during the given time in
+		 * milliseconds. This is not an asynchronous method, it returns after
+		 * the time specified.
+		 * 
+		 * @param milliseconds
+		 *            Milliseconds of execution.
+		 */
+		@Override
+		public void executeDuring(long milliseconds) {
+			if (milliseconds < 0) {
+				throw new CraniumException("Time cannot be negative.", this);
+			}
+			this.resumeAll();
+			try {
+				Thread.sleep(milliseconds);
+			} catch (InterruptedException e) {
+				Logger.warning("AgentScheduler.Agent.executeDuring(long milliseconds)", e.getMessage());
+			}
+			this.enabled = false;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see opencranium.cranium.ProcessorThreadPool#getNextProcessor()
+		 */
+		@Override
+		protected Processor getNextProcessor() {
+			return null;
+		}
+
+		/**
+		 * @return if the agent is executed by the scheduler.
+		 */
+		public boolean isEnabled() {
+			return this.enabled;
+		}
+
+		/**
+		 * @return the CPU time in nanoseconds the agent can use per period, 0
+		 *         if it is unlimited.
+		 */
+		public long getCpuQuota() {
+			return this.cpuQuota;
+		}
+
+		/**
+		 * Sets the CPU time the agent can use per period of the scheduler.
+		 * The processor which exceeds the quota finishes its execution, but
+		 * the agent is not executed again until the next period.
+		 * 
+		 * @param cpuQuota
+		 *            CPU time in nanoseconds, 0 if it is unlimited.
+		 * @see AgentScheduler#setQuotaPeriod(long)
+		 */
+		public void setCpuQuota(long cpuQuota) {
+			if (cpuQuota < 0) {
+				throw new IllegalArgumentException("The quota cannot be negative.");
+			}
+			this.cpuQuota = cpuQuota;
+		}
+
+		/**
+		 * @return the number of executions of the processors of the agent.
+		 */
+		public synchronized long getExecutions() {
+			return this.executions;
+		}
+
+		/**
+		 * @return the number of executions per second since the agent was
+		 *         created.
+		 */
+		public synchronized double getThroughput() {
+			long elapsed = System.nanoTime() - this.creationTime;
+			return elapsed > 0 ? this.executions * 1000000000.0 / elapsed : 0;
+		}
+
+		/**
+		 * @return the total wall time in nanoseconds of the executions.
+		 */
+		public synchronized long getProcessingNanoTime() {
+			return this.processingNanoTime;
+		}
+
+		/**
+		 * @return the total CPU time in nanoseconds of the executions.
+		 */
+		public synchronized long getCpuNanoTime() {
+			return this.cpuNanoTime;
+		}
+
+		/**
+		 * The interval of an execution is the time in nanoseconds since the
+		 * processor finished its previous execution, or since it was added.
+		 * It is not the time the elements waited in the queue of the
+		 * processor, which is not tracked per element.
+		 * 
+		 * @return the average interval in nanoseconds, 0 if there were no
+		 *         executions.
+		 */
+		public synchronized long getAverageExecutionInterval() {
+			return this.executions > 0 ? this.interval / this.executions : 0;
+		}
+
+		/**
+		 * @return the maximum interval in nanoseconds of an execution.
+		 * @see #getAverageExecutionInterval()
+		 */
+		public synchronized long getMaximumExecutionInterval() {
+			return this.maximumInterval;
+		}
+
+		/**
+		 * Records an execution of a processor.
+		 * 
+		 * @param interval
+		 *            Interval of the execution.
+		 * @param processingNanoTime
+		 *            Wall time of the execution.
+		 * @param cpuNanoTime
+		 *            CPU time of the execution.
+		 */
+		private synchronized void record(long interval, long processingNanoTime, long cpuNanoTime) {
+			this.executions++;
+			this.interval += interval;
+			this.maximumInterval = Math.max(this.maximumInterval, interval);
+			this.processingNanoTime += processingNanoTime;
+			this.cpuNanoTime += cpuNanoTime;
+		}
+
+		/**
+		 * @return if the agent used its quota in the current period.
+		 */
+		private boolean isOverQuota() {
+			long quota = this.cpuQuota;
+			return quota > 0 && this.periodCpuNanoTime >= quota;
+		}
+
+	}
+
+	/**
+	 * The agents.
+	 */
+	private final List<Agent> agents;
+
+	/**
+	 * Agent of each processor.
+	 */
+	private final Map<Processor, Agent> processorAgents;
+
+	/**
+	 * The processors being executed.
+	 */
+	private final Map<Processor, Agent> executing;
+
+	/**
+	 * Position of the next agent to serve.
+	 */
+	private int nextAgent;
+
+	/**
+	 * Length in nanoseconds of the periods of the quotas.
+	 */
+	private long quotaPeriod;
+
+	/**
+	 * Time in nanoseconds when the current period started.
+	 */
+	private long periodStart;
+
+	/**
+	 * If the threads have been started.
+	 */
+	private boolean started;
+
+	/**
+	 * Number of times the threads were woken up, paused or stopped. A thread
+	 * waiting for the next period of the quotas stops waiting when it
+	 * changes.
+	 */
+	private long wakeUps;
+
+	/**
+	 * Default constructor. The number of threads by default is the number of
+	 * CPU in the machine plus one.
+	 */
+	public AgentScheduler() {
+		this(Runtime.getRuntime().availableProcessors() + 1);
+	}
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param numberOfThreads
+	 *            Number of threads shared by the agents. Must be greater than
+	 *            0.
+	 */
+	public AgentScheduler(int numberOfThreads) {
+		super(numberOfThreads);
+		this.agents = new ArrayList<Agent>();
+		this.processorAgents = new IdentityHashMap<Processor, Agent>();
+		this.executing = new IdentityHashMap<Processor, Agent>();
+		this.quotaPeriod = 100000000L;
+		this.periodStart = System.nanoTime();
+	}
+
+	/**
+	 * Creates a new agent in the scheduler. The pool of the agent must be used
+	 * to create its core.
+	 * 
+	 * @return The pool of threads of the agent.
+	 * @see Core#Core(ProcessorThreadPool)
+	 */
+	public Agent createAgent() {
+		Agent agent = new Agent(this);
+		synchronized (this.agents) {
+			this.agents.add(agent);
+		}
+		return agent;
+	}
+
+	/**
+	 * Removes an agent and all its processors from the scheduler.
+	 * 
+	 * @param agent
+	 *            The agent.
+	 * @return True if the agent was removed, false otherwise.
+	 */
+	public boolean removeAgent(Agent agent) {
+		synchronized (this.agents) {
+			if (!this.agents.remove(agent)) {
+				return false;
+			}
+			for (Processor processor : agent.processors) {
+				this.processorAgents.remove(processor);
+			}
+			agent.processors.clear();
+			agent.enabled = false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the agents of the scheduler.
+	 */
+	public List<Agent> getAgents() {
+		synchronized (this.agents) {
+			return new ArrayList<Agent>(this.agents);
+		}
+	}
+
+	/**
+	 * @return the length in milliseconds of the periods of the quotas.
+	 */
+	public long getQuotaPeriod() {
+		synchronized (this.agents) {
+			return this.quotaPeriod / 1000000L;
+		}
+	}
+
+	/**
+	 * Sets the length of the periods of the CPU quotas of the agents.
+	 * 
+	 * @param milliseconds
+	 *            the length in milliseconds, greater than 0.
+	 * @see Agent#setCpuQuota(long)
+	 */
+	public void setQuotaPeriod(long milliseconds) {
+		if (milliseconds <= 0) {
+			throw new IllegalArgumentException("The period must be greater than 0.");
+		}
+		synchronized (this.agents) {
+			this.quotaPeriod = milliseconds * 1000000L;
+		}
+	}
+
+	/**
+	 * The scheduler only executes the processors of its agents.
+	 * 
+	 * @throws CraniumException
+	 *             Always, the processors must be added to an agent.
+	 * @see Agent#addProcessor(Processor)
+	 */
+	@Override
+	public boolean addProcessor(Processor processor) {
+		throw new CraniumException("The processors must be added to an agent of the scheduler.", this);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * opencranium.cranium.ProcessorThreadPool#removeProcessor(opencranium.cranium
+	 * .Processor)
+	 */
+	@Override
+	public boolean removeProcessor(Processor processor) {
+		Agent agent;
+		synchronized (this.agents) {
+			agent = this.processorAgents.get(processor);
+		}
+		return agent != null && this.remove(agent, processor);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see opencranium.cranium.ProcessorThreadPool#startAll()
+	 */
+	@Override
+	public synchronized void startAll() {
+		super.startAll();
+		this.started = true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see opencranium.cranium.ProcessorThreadPool#stopAll()
+	 */
+	@Override
+	public synchronized void stopAll() {
+		super.stopAll();
+		this.started = false;
+		this.wakeUpWaiting();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see opencranium.cranium.ProcessorThreadPool#pauseAll()
+	 */
+	@Override
+	public synchronized void pauseAll() {
+		super.pauseAll();
+		this.wakeUpWaiting();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see opencranium.cranium.ProcessorThreadPool#getProcessors()
+	 */
+	@Override
+	protected Processor[] getProcessors() {
+		synchronized (this.agents) {
+			return this.processorAgents.keySet().toArray(new Processor[this.processorAgents.size()]);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see opencranium.cranium.ProcessorThreadPool#stopThreads(long)
+	 */
+	@Override
+	protected synchronized boolean stopThreads(long timeout) {
+		this.started = false;
+		this.wakeUpWaiting();
+		return super.stopThreads(timeout);
+	}
+
+	/**
+	 * Resumes the threads if they were started, so they look for processors
+	 * to execute again.
+	 */
+	private synchronized void wakeUp() {
+		if (this.started) {
+			this.resumeAll();
+			this.wakeUpWaiting();
+		}
+	}
+
+	/**
+	 * Wakes up the threads waiting for the next period of the quotas.
+	 */
+	private void wakeUpWaiting() {
+		synchronized (this.agents) {
+			this.wakeUps++;
+			this.agents.notifyAll();
+		}
+	}
+
+	/**
+	 * Adds a processor to an agent.
+	 * 
+	 * @param agent
+	 *            The agent.
+	 * @param processor
+	 *            The processor.
+	 * @return True if the processor was added, false otherwise.
+	 */
+	private boolean add(Agent agent, Processor processor) {
+		synchronized (this.agents) {
+			if (!this.agents.contains(agent) || this.processorAgents.containsKey(processor)) {
+				return false;
+			}
+			this.processorAgents.put(processor, agent);
+			agent.processors.add(processor);
+			agent.lastExecution.put(processor, System.nanoTime());
+		}
+		return true;
+	}
+
+	/**
+	 * Removes a processor from an agent.
+	 * 
+	 * @param agent
+	 *            The agent.
+	 * @param processor
+	 *            The processor.
+	 * @return True if the processor was removed, false otherwise.
+	 */
+	private boolean remove(Agent agent, Processor processor) {
+		synchronized (this.agents) {
+			if (this.processorAgents.get(processor) != agent) {
+				return false;
+			}
+			this.processorAgents.remove(processor);
+			agent.processors.remove(processor);
+			agent.lastExecution.remove(processor);
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the next processor to be executed. The agents are served in
+	 * round robin, skipping the disabled agents and the agents over their
+	 * quota, and the processors of each agent are also selected in round
+	 * robin. If only the agents over their quota have something to process
+	 * the thread waits until the next period, or until the threads are woken
+	 * up, paused or stopped, because a paused thread would not be resumed
+	 * when the quotas are renewed.
+	 * 
+	 * @return Returns the next processor to be executed, null if there is no
+	 *         other processor to execute.
+	 */
+	@Override
+	protected Processor getNextProcessor() {
+		synchronized (this.agents) {
+			long wakeUpsBefore = this.wakeUps;
+			while (true) {
+				long now = System.nanoTime();
+				if (now - this.periodStart >= this.quotaPeriod) {
+					this.periodStart = now;
+					for (Agent agent : this.agents) {
+						agent.periodCpuNanoTime = 0;
+					}
+				}
+				boolean throttled = false;
+				int size = this.agents.size();
+				for (int i = 0; i < size; i++) {
+					int position = (this.nextAgent + i) % size;
+					Agent agent = this.agents.get(position);
+					if (!agent.enabled) {
+						continue;
+					}
+					if (agent.isOverQuota()) {
+						throttled |= this.hasSomethingToProcess(agent);
+					} else {
+						Processor next = this.getNextProcessor(agent);
+						if (next != null) {
+							this.nextAgent = (position + 1) % size;
+							this.executing.put(next, agent);
+							return next;
+						}
+					}
+				}
+				if (!throttled || this.wakeUps != wakeUpsBefore) {
+					return null;
+				}
+				long wait = this.periodStart + this.quotaPeriod - now;
+				if (wait > 0) {
+					try {
+						this.agents.wait(wait / 1000000L, (int) (wait % 1000000L));
+					} catch (InterruptedException e) {
+						return null;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks if an agent has a processor with something to process and not
+	 * being executed.
+	 * 
+	 * @param agent
+	 *            The agent.
+	 * @return true if the agent has work waiting.
+	 */
+	private boolean hasSomethingToProcess(Agent agent) {
+		for (Processor candidate : agent.processors) {
+			if (!this.executing.containsKey(candidate) && candidate.isSomethingToProcess()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the next processor of an agent with something to process and
+	 * not being executed.
+	 * 
+	 * @param agent
+	 *            The agent.
+	 * @return The next processor, null if there is none.
+	 */
+	private Processor getNextProcessor(Agent agent) {
+		int size = agent.processors.size();
+		for (int i = 0; i < size; i++) {
+			int position = (agent.nextProcessor + i) % size;
+			Processor candidate = agent.processors.get(position);
+			if (!this.executing.containsKey(candidate) && candidate.isSomethingToProcess()) {
+				agent.nextProcessor = (position + 1) % size;
+				return candidate;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Executes a processor bound to the core of its agent, and records the
+	 * time it used in the statistics and in the quota of the agent.
+	 * 
+	 * @param processor
+	 *            The processor.
+	 * @param milliseconds
+	 *            The time when the current cycle ends.
+	 */
+	@Override
+	protected void process(Processor processor, long milliseconds) {
+		Agent agent;
+		synchronized (this.agents) {
+			agent = this.executing.get(processor);
+		}
+		if (agent == null) {
+			super.process(processor, milliseconds);
+			return;
+		}
+		Core.setCurrent(agent.getCore());
+		long cpu = processor.getTotalCpuNanoTime();
+		long start = System.nanoTime();
+		try {
+			processor.process(milliseconds);
+		} finally {
+			long end = System.nanoTime();
+			cpu = processor.getTotalCpuNanoTime() - cpu;
+			long interval = 0;
+			synchronized (this.agents) {
+				this.executing.remove(processor);
+				// the threads waiting for the next period look for it again
+				this.agents.notifyAll();
+				agent.periodCpuNanoTime += cpu;
+				Long last = agent.lastExecution.get(processor);
+				if (last != null) {
+					interval = start - last;
+					agent.lastExecution.put(processor, end);
+				}
+			}
+			agent.record(interval, end - start, cpu);
+			Core.setCurrent(null);
+		}
+	}
+
+}
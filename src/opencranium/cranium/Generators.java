@@ -0,0 +1,95 @@
+package opencranium.cranium;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * An unmodifiable list with the elements that generated some processable
+ * elements, shared by all the elements generated from the same ones. Each
+ * element that holds the list as its generators has its own reference to the
+ * recyclable generators, so they are not reused while any of them can reach
+ * them: the reference is added with retainElements() when the list is set as
+ * the generators of an element, and released with releaseElements() when the
+ * element is recycled. The references of an element which is not recyclable
+ * are never released, so its recyclable generators are left to the garbage
+ * collector instead of being reused.
+ * 
+ * @see Processable#setGeneratedBy(java.util.Collection)
+ * @see Recyclable
+ * 
+ * @author Jorge Muñoz
+ * @author Raúl Arrabales
+ */
+public final class Generators extends AbstractList<Processable> implements RandomAccess {
+
+	/**
+	 * The generators.
+	 */
+	private final Processable[] elements;
+
+	/**
+	 * true if any generator is recyclable.
+	 */
+	private final boolean recyclable;
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param elements
+	 *            The generators, the array is not copied and must not be
+	 *            modified.
+	 */
+	public Generators(Processable[] elements) {
+		this.elements = elements;
+		boolean anyRecyclable = false;
+		for (Processable element : elements) {
+			anyRecyclable |= element instanceof Recyclable;
+		}
+		this.recyclable = anyRecyclable;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.AbstractList#get(int)
+	 */
+	@Override
+	public Processable get(int index) {
+		return this.elements[index];
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.AbstractCollection#size()
+	 */
+	@Override
+	public int size() {
+		return this.elements.length;
+	}
+
+	/**
+	 * Adds a reference to the recyclable generators, for an element that
+	 * holds this list as its generators.
+	 */
+	public void retainElements() {
+		if (this.recyclable) {
+			for (Processable element : this.elements) {
+				Processor.retain(element);
+			}
+		}
+	}
+
+	/**
+	 * Releases the references added by retainElements(), when the element
+	 * that held this list as its generators is recycled.
+	 */
+	public void releaseElements() {
+		if (this.recyclable) {
+			for (Processable element : this.elements) {
+				Processor.release(element);
+			}
+		}
+	}
+
+}
\ No newline at end of file
@@ -17,9 +17,50 @@ import opencranium.util.collection.SortedElement;
  */
 public interface Processable extends SortedElement {
 
+	/**
+	 * Compact code of the kind of a processable element, used to route the
+	 * results between the layers with a single lookup.
+	 * 
+	 * @author Jorge Muñoz
+	 * @author Raúl Arrabales
+	 */
+	public enum Kind {
+
+		/**
+		 * A simple action.
+		 */
+		SIMPLE_ACTION,
+
+		/**
+		 * A complex action.
+		 */
+		COMPLEX_ACTION,
+
+		/**
+		 * A single percept.
+		 */
+		SINGLE_PERCEPT,
+
+		/**
+		 * A complex percept.
+		 */
+		COMPLEX_PERCEPT,
+
+		/**
+		 * A mission percept.
+		 */
+		MISSION_PERCEPT,
+
+		/**
+		 * Any other processable element.
+		 */
+		OTHER
+	}
+
 	/**
 	 * Returns the processable elements that generated this elements, an empty
-	 * list if it was not generated in a WorkspaceProcessr.
+	 * list if it was not generated in a WorkspaceProcessr. The collection can
+	 * be shared with other elements and must not be modified.
 	 * 
 	 * @return the processable elements that generated this elements.
 	 */
@@ -54,6 +95,14 @@ public interface Processable extends SortedElement {
 	 */
 	public Time getCreationTime();
 
+	/**
+	 * Returns the tick when this processable element was created, without
+	 * creating the Time returned by getCreationTime().
+	 * 
+	 * @return the tick when this element was created, -1 if it is unknown.
+	 */
+	public int getCreationTick();
+
 	/**
 	 * Returns whether this element is a percept or not..
 	 * 
@@ -103,6 +152,14 @@ public interface Processable extends SortedElement {
 	 */
 	public boolean isComplexAction();
 
+	/**
+	 * Returns the kind of this element, consistent with the methods isPercept,
+	 * isAction, isSinglePercept, etc.
+	 * 
+	 * @return The kind of this element.
+	 */
+	public Kind getKind();
+
 	/**
 	 * Checks if the other processable is an updated version of this processable
 	 * element. Both processable have the same purpose or are incompatibles but
@@ -0,0 +1,41 @@
+package opencranium.cranium;
+
+import java.nio.ByteBuffer;
+
+import opencranium.util.Id;
+
+/**
+ * Encodes and decodes the processable elements of a type in a compact binary
+ * form, used to save them in checkpoints.
+ * 
+ * @see opencranium.Checkpoint#registerCodec(Id, ProcessableCodec)
+ * 
+ * @author Jorge Muñoz
+ * @author Raúl Arrabales
+ */
+public interface ProcessableCodec {
+
+	/**
+	 * Writes a processable element in a buffer. If the buffer has not enough
+	 * room a BufferOverflowException is thrown and the element is written
+	 * again in a bigger buffer.
+	 * 
+	 * @param processable
+	 *            The element.
+	 * @param buffer
+	 *            The buffer.
+	 */
+	public void encode(Processable processable, ByteBuffer buffer);
+
+	/**
+	 * Reads a processable element from a buffer.
+	 * 
+	 * @param id
+	 *            The id of the element.
+	 * @param buffer
+	 *            The buffer, positioned at the data written by encode.
+	 * @return The element.
+	 */
+	public Processable decode(Id id, ByteBuffer buffer);
+
+}
@@ -1,12 +1,23 @@
 package opencranium.cranium;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 import opencranium.util.ElementProcessingTime;
 import opencranium.util.Id;
 import opencranium.util.Statistics;
 import opencranium.util.StatisticsManager;
 import opencranium.util.Time;
+import opencranium.util.collection.LockedOperation;
 import opencranium.util.collection.LockedSortedList;
 
 /**
@@ -17,6 +28,17 @@ import opencranium.util.collection.LockedSortedList;
  */
 public abstract class Processor implements Statistics, Comparable<Processor> {
 
+	/**
+	 * Management interface of the threads, used to measure the CPU time.
+	 */
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	/**
+	 * Whether the CPU time of the threads can be measured. If not the wall
+	 * time is used instead.
+	 */
+	private static final boolean CPU_TIME = enableCpuTime();
+
 	/**
 	 * Current thread that is executing this processor.
 	 */
@@ -42,11 +64,59 @@ public abstract class Processor implements Statistics, Comparable<Processor> {
 	 */
 	protected LockedSortedList<Processable> processableSortedList;
 
+	/**
+	 * Nanoseconds spent processing since the processor was created, recorded
+	 * even if the statistics are not being recorded.
+	 */
+	private final AtomicLong processingNanoTime = new AtomicLong();
+
+	/**
+	 * Nanoseconds of CPU time spent processing since the processor was
+	 * created.
+	 */
+	private final AtomicLong cpuNanoTime = new AtomicLong();
+
+	/**
+	 * True while the processor is being executed.
+	 */
+	private volatile boolean processing;
+
+	/**
+	 * True if the processor does not accept new elements.
+	 */
+	private volatile boolean inputClosed;
+
+	/**
+	 * Number of elements rejected because the input was closed.
+	 */
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * True if the elements rejected because the input was closed are kept.
+	 */
+	private volatile boolean collectRejected;
+
+	/**
+	 * Elements rejected and kept because the input was closed collecting them.
+	 */
+	private final Queue<Processable> rejectedElements = new ConcurrentLinkedQueue<Processable>();
+
 	/**
 	 * An element to control the execution statistics of this processor
 	 */
 	private ElementProcessingTime statitstics;
 
+	/**
+	 * Maximum number of elements processed in each execution of the processor.
+	 * By default is 1.
+	 */
+	private int batchSize;
+
+	/**
+	 * Array reused to retrieve the elements of a batch from the queue.
+	 */
+	private Processable[] batch;
+
 	/**
 	 * Default constructor. Sets to normal the priority.
 	 * 
@@ -61,6 +131,7 @@ public abstract class Processor implements Statistics, Comparable<Processor> {
 		this.statitstics = new ElementProcessingTime(id);
 		this.processableSortedList = new LockedSortedList<Processable>();
 		this.priority = Priority.NORMAL;
+		this.batchSize = 1;
 	}
 
 	/**
@@ -78,23 +149,120 @@ public abstract class Processor implements Statistics, Comparable<Processor> {
 	 * @see WorkspaceProcessor#processNoElement(long)
 	 */
 	public final void process(long milliseconds) {
+		this.processing = true;
+		try {
+			if (this.batchSize > 1) {
+				this.processBatch(milliseconds);
+			} else {
+				this.processNext(milliseconds);
+			}
+		} finally {
+			this.processing = false;
+		}
+	}
+
+	/**
+	 * Processes the next element in the queue of this Processor, or nothing if
+	 * the queue is empty.
+	 * 
+	 * @param milliseconds
+	 *            The time when the current cycle ends, when the processor
+	 *            should has finished.
+	 */
+	private void processNext(long milliseconds) {
+		long cpu1 = currentThreadCpuTime();
 		long t1 = System.nanoTime();
 		Processable processable = null;
-		if (this.processableSortedList.isEmpty()) {
-			this.processNoElement(milliseconds);
-		} else {
-			processable = this.processableSortedList.getFirstElement();
-			this.processNextElement(processable, milliseconds);
-		}
-		long t2 = System.nanoTime();
-		long nanoTime = t2 - t1;
-		// Statistics
-		if (StatisticsManager.isRecording()) {
-			this.getElementProcessingTime().addProcessingTime(nanoTime, this.currentTick);
-			if (processable != null) {
-				processable.getId().addProcessingTime(this.id, nanoTime);
-				this.id.addProcessingTime(processable.getId(), nanoTime);
+		try {
+			if (this.processableSortedList.isEmpty()) {
+				this.processNoElement(milliseconds);
+			} else {
+				processable = this.processableSortedList.getFirstElement();
+				this.processNextElement(processable, milliseconds);
 			}
+			long t2 = System.nanoTime();
+			long nanoTime = t2 - t1;
+			this.processingNanoTime.addAndGet(nanoTime);
+			this.cpuNanoTime.addAndGet(currentThreadCpuTime() - cpu1);
+			// Statistics
+			if (StatisticsManager.isRecording()) {
+				this.getElementProcessingTime().addProcessingTime(nanoTime, this.currentTick);
+				if (processable != null) {
+					processable.getId().addProcessingTime(this.id, nanoTime);
+					this.id.addProcessingTime(processable.getId(), nanoTime);
+				}
+			}
+		} finally {
+			// the reference of the queue is released even if the processing fails
+			release(processable);
+		}
+	}
+
+	/**
+	 * Processes a batch with the next elements in the queue of this
+	 * Processor. All the elements are removed from the queue with one
+	 * operation.
+	 * 
+	 * @param milliseconds
+	 *            The time when the current cycle ends, when the processor
+	 *            should has finished.
+	 * @see Processor#processNextElements(Processable[], int, long)
+	 */
+	private void processBatch(long milliseconds) {
+		long cpu1 = currentThreadCpuTime();
+		long t1 = System.nanoTime();
+		if (this.batch == null || this.batch.length != this.batchSize) {
+			this.batch = new Processable[this.batchSize];
+		}
+		int count = this.processableSortedList.drainTo(this.batch, this.batchSize);
+		try {
+			if (count == 0) {
+				this.processNoElement(milliseconds);
+			} else {
+				this.processNextElements(this.batch, count, milliseconds);
+			}
+			long t2 = System.nanoTime();
+			this.processingNanoTime.addAndGet(t2 - t1);
+			this.cpuNanoTime.addAndGet(currentThreadCpuTime() - cpu1);
+			// Statistics
+			if (StatisticsManager.isRecording()) {
+				this.getElementProcessingTime().addProcessingTime(t2 - t1, this.currentTick);
+				if (count > 0) {
+					long nanoTime = (t2 - t1) / count;
+					for (int i = 0; i < count; i++) {
+						this.batch[i].getId().addProcessingTime(this.id, nanoTime);
+						this.id.addProcessingTime(this.batch[i].getId(), nanoTime);
+					}
+				}
+			}
+		} finally {
+			// do not keep references to the processed elements
+			for (int i = 0; i < count; i++) {
+				release(this.batch[i]);
+				this.batch[i] = null;
+			}
+		}
+	}
+
+	/**
+	 * Processes a batch of elements retrieved from the queue of this
+	 * Processor, only called when the batch size is greater than 1. By default
+	 * each element is processed with processNextElement(Processable, long).
+	 * 
+	 * @param elements
+	 *            Array with the elements to process, sorted as they were in
+	 *            the queue. The array is reused between calls and must not be
+	 *            stored.
+	 * @param count
+	 *            Number of elements in the array to process.
+	 * @param milliseconds
+	 *            The time when the current cycle ends, when the processor
+	 *            should has finished.
+	 * @see Processor#setBatchSize(int)
+	 */
+	protected void processNextElements(Processable[] elements, int count, long milliseconds) {
+		for (int i = 0; i < count; i++) {
+			this.processNextElement(elements[i], milliseconds);
 		}
 	}
 
@@ -134,20 +302,330 @@ public abstract class Processor implements Statistics, Comparable<Processor> {
 	 * @return True if the data is inserted in the queue of element to process
 	 *         correctly.
 	 */
-	public boolean addProcessable(Processable data) {
-		Iterator<Processable> iterator = this.processableSortedList.iterator(this);
-		while (iterator.hasNext()) {
-			if (data.isAnUpdatedProcessable(iterator.next())) {
-				iterator.remove();
+	public boolean addProcessable(final Processable data) {
+		if (this.inputClosed) {
+			this.reject(data);
+			return false;
+		}
+		// the scan runs over the snapshot, without blocking the other producers
+		final Processable updated = this.findUpdated(data);
+		return this.processableSortedList.execute(new LockedOperation<Processable>() {
+			@Override
+			public boolean execute(Iterator<Processable> iterator) {
+				if (updated != null) {
+					removeSame(iterator, updated);
+				}
+				return Processor.this.queue(data);
+			}
+		});
+	}
+
+	/**
+	 * Adds several processable elements to the ordered queue of elements to
+	 * process with only one lock of the queue. The elements in the queue that
+	 * are an updated version of any new element are removed, but the new
+	 * elements do not replace each other.
+	 * 
+	 * @param data
+	 *            The data to process.
+	 * @return The number of elements inserted in the queue.
+	 */
+	public int addProcessables(final Processable[] data) {
+		if (this.inputClosed) {
+			for (Processable processable : data) {
+				this.reject(processable);
+			}
+			return 0;
+		}
+		final int[] added = new int[1];
+		final List<Processable> updated = new ArrayList<Processable>();
+		for (Processable current : this.processableSortedList.snapshot()) {
+			for (Processable processable : data) {
+				if (processable.isAnUpdatedProcessable(current)) {
+					updated.add(current);
+					break;
+				}
+			}
+		}
+		this.processableSortedList.execute(new LockedOperation<Processable>() {
+			@Override
+			public boolean execute(Iterator<Processable> iterator) {
+				if (!updated.isEmpty()) {
+					Set<Processable> outdated = Collections.newSetFromMap(new IdentityHashMap<Processable, Boolean>());
+					outdated.addAll(updated);
+					while (iterator.hasNext()) {
+						Processable current = iterator.next();
+						if (outdated.contains(current)) {
+							iterator.remove();
+							release(current);
+						}
+					}
+				}
+				for (Processable processable : data) {
+					if (Processor.this.queue(processable)) {
+						added[0]++;
+					}
+				}
+				return added[0] > 0;
+			}
+		});
+		return added[0];
+	}
+
+	/**
+	 * Returns the elements waiting in the queue, in the order they would be
+	 * processed. The queue is not modified.
+	 * 
+	 * @return A new array with the elements of the queue.
+	 */
+	public Processable[] getQueued() {
+		List<Processable> queued = this.processableSortedList.snapshot();
+		return queued.toArray(new Processable[queued.size()]);
+	}
+
+	/**
+	 * Adds an element to the queue, which must be locked, and retains it. If
+	 * the queue is full and evicts its last element to add the new one, the
+	 * evicted element is released.
+	 * 
+	 * @param data
+	 *            The element.
+	 * @return true if the element was added.
+	 */
+	private boolean queue(Processable data) {
+		LockedSortedList<Processable> list = this.processableSortedList;
+		int maximum = list.getMaximumSize();
+		Processable last = maximum > 0 && list.getSize() == maximum ? list.getElement(maximum - 1) : null;
+		if (list.addElement(data)) {
+			retain(data);
+			if (last != null) {
+				release(last);
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Finds in the snapshot of the queue the first element that is outdated by
+	 * a new one. The queue is not locked, so an element added meanwhile is not
+	 * found.
+	 * 
+	 * @param data
+	 *            The new element.
+	 * @return The outdated element, null if there is none.
+	 */
+	private Processable findUpdated(Processable data) {
+		for (Processable current : this.processableSortedList.snapshot()) {
+			if (data.isAnUpdatedProcessable(current)) {
 				/*
 				 * Optimization. We supppose can not be more than one
-				 * processable that is an updated version of the new processable
+				 * processable that is an updated version of the new
+				 * processable
 				 */
-				break;
+				return current;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Removes an element from the locked queue, compared by identity, and
+	 * releases the reference of the queue to it.
+	 * 
+	 * @param iterator
+	 *            The iterator of the locked queue.
+	 * @param processable
+	 *            The element, it could have been removed meanwhile.
+	 */
+	private static void removeSame(Iterator<Processable> iterator, Processable processable) {
+		while (iterator.hasNext()) {
+			if (iterator.next() == processable) {
+				iterator.remove();
+				release(processable);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Removes all the elements waiting in the queue. The references of the
+	 * queue to the recyclable elements are transferred to the caller, which
+	 * must release them.
+	 * 
+	 * @return A new array with the elements removed, in the order they would
+	 *         be processed.
+	 * @see Recyclable
+	 */
+	public Processable[] removeQueued() {
+		final List<Processable> removed = new ArrayList<Processable>();
+		this.processableSortedList.execute(new LockedOperation<Processable>() {
+			@Override
+			public boolean execute(Iterator<Processable> iterator) {
+				while (iterator.hasNext()) {
+					removed.add(iterator.next());
+					iterator.remove();
+				}
+				return !removed.isEmpty();
+			}
+		});
+		if (StatisticsManager.isRecording()) {
+			for (Processable processable : removed) {
+				processable.getId().addDiscarded(this.id);
+			}
+		}
+		return removed.toArray(new Processable[removed.size()]);
+	}
+
+	/**
+	 * Counts an element rejected because the input was closed, and keeps it
+	 * if the input was closed collecting the rejected elements.
+	 * 
+	 * @param processable
+	 *            The element.
+	 */
+	private void reject(Processable processable) {
+		this.rejected.incrementAndGet();
+		if (this.collectRejected) {
+			retain(processable);
+			this.rejectedElements.add(processable);
+		}
+	}
+
+	/**
+	 * Closes the input of the processor, the new elements are rejected. The
+	 * elements already in the queue are still processed.
+	 * 
+	 * @see Processor#getRejected()
+	 */
+	public void closeInput() {
+		this.closeInput(false);
+	}
+
+	/**
+	 * Closes the input of the processor, the new elements are rejected. The
+	 * elements already in the queue are still processed.
+	 * 
+	 * @param collect
+	 *            true to keep the rejected elements until they are removed
+	 *            with removeRejected(), false to only count them.
+	 * @see Processor#getRejected()
+	 * @see Processor#removeRejected()
+	 */
+	public void closeInput(boolean collect) {
+		this.collectRejected = collect;
+		this.inputClosed = true;
+	}
+
+	/**
+	 * Opens the input of the processor again. The rejected elements kept are
+	 * not removed.
+	 */
+	public void openInput() {
+		this.inputClosed = false;
+		this.collectRejected = false;
+	}
+
+	/**
+	 * Removes the elements rejected and kept since the input was closed
+	 * collecting them. The references to the recyclable elements are
+	 * transferred to the caller, which must release them.
+	 * 
+	 * @return A new array with the elements, in the order they were rejected.
+	 * @see Processor#closeInput(boolean)
+	 */
+	public Processable[] removeRejected() {
+		List<Processable> removed = new ArrayList<Processable>();
+		Processable processable = this.rejectedElements.poll();
+		while (processable != null) {
+			removed.add(processable);
+			processable = this.rejectedElements.poll();
+		}
+		return removed.toArray(new Processable[removed.size()]);
+	}
+
+	/**
+	 * @return true if the input of the processor is closed.
+	 */
+	public boolean isInputClosed() {
+		return this.inputClosed;
+	}
+
+	/**
+	 * @return the number of elements rejected because the input was closed.
+	 */
+	public long getRejected() {
+		return this.rejected.get();
+	}
+
+	/**
+	 * Removes from the queue the elements ordered last, the ones with the
+	 * lowest sorting value. Among elements with the same sorting value the
+	 * last ones in the queue are removed first.
+	 * 
+	 * @param count
+	 *            Maximum number of elements to remove.
+	 * @return The number of elements removed.
+	 */
+	public int shedLowest(final int count) {
+		if (count <= 0) {
+			return 0;
+		}
+		Processable[] shed = new Processable[Math.min(count, this.processableSortedList.getSize())];
+		int removed = this.processableSortedList.drainLastTo(shed, shed.length);
+		if (StatisticsManager.isRecording()) {
+			for (int i = 0; i < removed; i++) {
+				shed[i].getId().addDiscarded(this.id);
 			}
 		}
-		this.processableSortedList.unlock(this);
-		return this.processableSortedList.addElement(data);
+		for (int i = 0; i < removed; i++) {
+			release(shed[i]);
+		}
+		return removed;
+	}
+
+	/**
+	 * Removes all the elements waiting in the queue without processing them.
+	 */
+	protected void clearQueue() {
+		this.processableSortedList.execute(new LockedOperation<Processable>() {
+			@Override
+			public boolean execute(Iterator<Processable> iterator) {
+				boolean removed = false;
+				while (iterator.hasNext()) {
+					release(iterator.next());
+					iterator.remove();
+					removed = true;
+				}
+				return removed;
+			}
+		});
+	}
+
+	/**
+	 * Adds a reference to an element if it is recyclable.
+	 * 
+	 * @param processable
+	 *            The element, can be null.
+	 * @see Recyclable#retain()
+	 */
+	public static void retain(Processable processable) {
+		if (processable instanceof Recyclable) {
+			((Recyclable) processable).retain();
+		}
+	}
+
+	/**
+	 * Releases a reference to an element if it is recyclable.
+	 * 
+	 * @param processable
+	 *            The element, can be null.
+	 * @see Recyclable#release()
+	 */
+	public static void release(Processable processable) {
+		if (processable instanceof Recyclable) {
+			((Recyclable) processable).release();
+		}
 	}
 
 	/**
@@ -169,6 +647,68 @@ public abstract class Processor implements Statistics, Comparable<Processor> {
 		return !this.processableSortedList.isEmpty();
 	}
 
+	/**
+	 * @return true if the processor is being executed.
+	 */
+	public boolean isProcessing() {
+		return this.processing;
+	}
+
+	/**
+	 * @return the number of elements waiting in the queue of this processor.
+	 */
+	public int getQueueSize() {
+		return this.processableSortedList.getSize();
+	}
+
+	/**
+	 * @return the nanoseconds spent processing since this processor was
+	 *         created.
+	 */
+	public long getTotalProcessingNanoTime() {
+		return this.processingNanoTime.get();
+	}
+
+	/**
+	 * Returns the CPU time spent processing since this processor was created.
+	 * If the JVM cannot measure the CPU time of the threads it is the wall
+	 * time.
+	 * 
+	 * @return the nanoseconds of CPU time.
+	 */
+	public long getTotalCpuNanoTime() {
+		return this.cpuNanoTime.get();
+	}
+
+	/**
+	 * Enables the measurement of the CPU time of the threads.
+	 * 
+	 * @return true if the CPU time of the current thread can be measured.
+	 */
+	private static boolean enableCpuTime() {
+		try {
+			if (!THREADS.isCurrentThreadCpuTimeSupported()) {
+				return false;
+			}
+			if (!THREADS.isThreadCpuTimeEnabled()) {
+				THREADS.setThreadCpuTimeEnabled(true);
+			}
+			return true;
+		} catch (UnsupportedOperationException e) {
+			return false;
+		} catch (SecurityException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return the CPU time of the current thread in nanoseconds, or the wall
+	 *         time if it cannot be measured.
+	 */
+	private static long currentThreadCpuTime() {
+		return CPU_TIME ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+	}
+
 	/**
 	 * @return the currentThread
 	 */
@@ -199,6 +739,32 @@ public abstract class Processor implements Statistics, Comparable<Processor> {
 		this.priority = priority;
 	}
 
+	/**
+	 * Returns the maximum number of elements processed in each execution of
+	 * the processor.
+	 * 
+	 * @return the batchSize
+	 */
+	public int getBatchSize() {
+		return this.batchSize;
+	}
+
+	/**
+	 * Sets the maximum number of elements processed in each execution of the
+	 * processor. When it is greater than 1 the elements are processed with
+	 * processNextElements(Processable[], int, long).
+	 * 
+	 * @param batchSize
+	 *            the batchSize to set, must be greater than 0.
+	 * @see Processor#processNextElements(Processable[], int, long)
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("The batch size must be greater than 0.");
+		}
+		this.batchSize = batchSize;
+	}
+
 	/**
 	 * @return the currentTick
 	 */
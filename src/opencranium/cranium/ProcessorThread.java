@@ -1,5 +1,7 @@
 package opencranium.cranium;
 
+import opencranium.Core;
+
 /**
  * A thread to process things. It has 4 states: initialized, running, paused,
  * killing. If this thread get nothing to process from the pool it keeps doing
@@ -191,6 +193,43 @@ public class ProcessorThread implements Runnable {
 		}
 	}
 
+	/**
+	 * Kills the thread and resumes it if it is paused, so it ends after the
+	 * current processor finishes without waiting for another resume.
+	 */
+	public void terminate() {
+		if (this.thread == null) {
+			throw new CraniumException("The processor was not started.", this);
+		}
+		synchronized (this) {
+			this.killing = true;
+			this.cycleEnds = 0;
+			this.paused = false;
+			this.pausing = false;
+			this.notify();
+		}
+	}
+
+	/**
+	 * Waits until the thread ends.
+	 * 
+	 * @param milliseconds
+	 *            Maximum time to wait, greater than 0.
+	 * @return true if the thread ended.
+	 */
+	public boolean join(long milliseconds) {
+		Thread current = this.thread;
+		if (current == null) {
+			return true;
+		}
+		try {
+			current.join(milliseconds);
+		} catch (InterruptedException e) {
+			// nothing to do
+		}
+		return !current.isAlive();
+	}
+
 	/**
 	 * Set the current process to execute.
 	 * 
@@ -262,6 +301,9 @@ public class ProcessorThread implements Runnable {
 		if (this.thread == null) {
 			throw new CraniumException("The processor was not started.", this);
 		}
+		if (this.processorThreads != null) {
+			Core.setCurrent(this.processorThreads.getCore());
+		}
 		while (this.thread != null) {
 			if (this.killing && this.currentProcess == null) {
 				// being killed
@@ -272,16 +314,31 @@ public class ProcessorThread implements Runnable {
 			} else if (this.currentProcess == null) {
 				this.currentProcess = this.processorThreads.getNextProcessor();
 				if (this.currentProcess != null) {
-					this.currentProcess.process(this.cycleEnds);
+					this.process(this.currentProcess);
 					this.currentProcess = null;
 				} else if (!this.pausing) {
 					this.pause();
 				}
 			} else {
-				this.currentProcess.process(this.cycleEnds);
+				this.process(this.currentProcess);
 			}
 		}
 		this.killing = false;
 		this.pausing = false;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Executes a processor, through the pool if the thread has one.
+	 * 
+	 * @param processor
+	 *            The processor.
+	 */
+	private void process(Processor processor) {
+		if (this.processorThreads != null) {
+			this.processorThreads.process(processor, this.cycleEnds);
+		} else {
+			processor.process(this.cycleEnds);
+		}
+	}
+
+}
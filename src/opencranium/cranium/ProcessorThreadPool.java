@@ -1,10 +1,15 @@
 package opencranium.cranium;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 
+import opencranium.Core;
 import opencranium.util.collection.CircularList;
 import opencranium.util.log.Logger;
 
@@ -78,6 +83,11 @@ public class ProcessorThreadPool {
 	 */
 	private boolean threadsStarted;
 
+	/**
+	 * Core that owns the pool, null if none.
+	 */
+	private volatile Core core;
+
 	/**
 	 * Default constructor. The number of threads by default is the number of
 	 * CPU in the machine plus one. It is recommended to set this number bigger.
@@ -134,6 +144,25 @@ public class ProcessorThreadPool {
 		return this.processorThreads.length;
 	}
 
+	/**
+	 * @return the core that owns the pool, null if none.
+	 */
+	public Core getCore() {
+		return this.core;
+	}
+
+	/**
+	 * Sets the core that owns the pool. The threads of the pool are bound to
+	 * the core while they execute the processors.
+	 * 
+	 * @param core
+	 *            the core that owns the pool.
+	 * @see Core#current()
+	 */
+	public void setCore(Core core) {
+		this.core = core;
+	}
+
 	/**
 	 * Starts the execution of all processors' threads without time limitation.
 	 * New threads are created, one per processor and the processors are set
@@ -355,6 +384,147 @@ public class ProcessorThreadPool {
 		return next;
 	}
 
+	/**
+	 * Executes a processor in one of the threads of the pool.
+	 * 
+	 * @param processor
+	 *            The processor.
+	 * @param milliseconds
+	 *            The time when the current cycle ends, when the processor
+	 *            should has finished.
+	 */
+	protected void process(Processor processor, long milliseconds) {
+		boolean scheduled;
+		try {
+			this.lock.lock();
+			scheduled = this.processorExecutingSet.contains(processor);
+		} finally {
+			this.lock.unlock();
+		}
+		try {
+			processor.process(milliseconds);
+		} finally {
+			if (scheduled) {
+				this.executed(processor);
+			}
+		}
+	}
+
+	/**
+	 * Returns the processors of the pool.
+	 * 
+	 * @return A new array with the processors.
+	 */
+	protected Processor[] getProcessors() {
+		try {
+			this.lock.lock();
+			return this.processorsSet.toArray(new Processor[this.processorsSet.size()]);
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Stops the pool gracefully. The input of the processors is closed, the
+	 * threads keep executing the processors until their queues are empty or
+	 * the timeout expires, and then the threads are stopped and joined. The
+	 * elements still in the queues are removed and returned, so they can be
+	 * persisted, together with the elements rejected by the closed inputs,
+	 * for example the results produced while the queues were drained.
+	 * 
+	 * @param timeout
+	 *            Maximum time in milliseconds to drain the queues and join the
+	 *            threads.
+	 * @return The elements dropped from the queues and rejected.
+	 * @throws CraniumException
+	 *             If the threads have not been started or the timeout is
+	 *             negative.
+	 * @see Processor#getRejected()
+	 */
+	public Processable[] drainAndStop(long timeout) {
+		if (timeout < 0) {
+			throw new CraniumException("Time cannot be negative.", this);
+		}
+		synchronized (this) {
+			// checked before closing the inputs, they would be closed forever
+			if (!this.threadsStarted) {
+				throw new CraniumException("Threads have not been started.", this);
+			}
+		}
+		Processor[] processors = this.getProcessors();
+		for (Processor processor : processors) {
+			processor.closeInput(true);
+		}
+		long deadline = System.nanoTime() + timeout * 1000000L;
+		this.resumeAll();
+		while (!isDrained(processors) && deadline - System.nanoTime() > 0) {
+			LockSupport.parkNanos(1000000L);
+		}
+		this.stopThreads(Math.max(1, (deadline - System.nanoTime()) / 1000000L));
+		List<Processable> dropped = new ArrayList<Processable>();
+		for (Processor processor : processors) {
+			dropped.addAll(Arrays.asList(processor.removeQueued()));
+		}
+		dropped.addAll(Arrays.asList(this.removeRejected()));
+		return dropped.toArray(new Processable[dropped.size()]);
+	}
+
+	/**
+	 * Removes the elements rejected and kept by the processors of the pool
+	 * since their inputs were closed.
+	 * 
+	 * @return The elements, the caller must release them.
+	 * @see Processor#removeRejected()
+	 */
+	public Processable[] removeRejected() {
+		List<Processable> rejected = new ArrayList<Processable>();
+		for (Processor processor : this.getProcessors()) {
+			rejected.addAll(Arrays.asList(processor.removeRejected()));
+		}
+		return rejected.toArray(new Processable[rejected.size()]);
+	}
+
+	/**
+	 * Checks if some processors have nothing to process and are not being
+	 * executed.
+	 * 
+	 * @param processors
+	 *            The processors.
+	 * @return true if all the processors are drained.
+	 */
+	protected static boolean isDrained(Processor[] processors) {
+		for (Processor processor : processors) {
+			if (processor.isSomethingToProcess() || processor.isProcessing()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Stops the threads, they finish the processors being executed, and waits
+	 * until they end.
+	 * 
+	 * @param timeout
+	 *            Maximum time in milliseconds to wait, greater than 0.
+	 * @return true if all the threads ended.
+	 */
+	protected synchronized boolean stopThreads(long timeout) {
+		if (!this.threadsStarted) {
+			throw new CraniumException("Threads have not been started.", this);
+		}
+		for (ProcessorThread processorThread : this.processorThreads) {
+			processorThread.terminate();
+		}
+		this.threadsStarted = false;
+		long deadline = System.nanoTime() + timeout * 1000000L;
+		boolean ended = true;
+		for (ProcessorThread processorThread : this.processorThreads) {
+			ended &= processorThread.join(Math.max(1, (deadline - System.nanoTime()) / 1000000L));
+		}
+		return ended;
+	}
+
 	/**
 	 * Notifies that a processor has been executed, and ended it execution.
 	 * 
@@ -0,0 +1,549 @@
+package opencranium.cranium;
+
+import java.lang.ref.WeakReference;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+
+/**
+ * A bounded store of the provenance of the processable elements. Each element
+ * registered gets a compact id and the store keeps the ids of the elements
+ * that generated it, so the generators of an element are referenced by id
+ * instead of by a chain of strong references to all its ancestors. The store
+ * keeps a strong reference to the elements registered during the last ticks
+ * and only a weak one to the older elements, and it keeps at most a fixed
+ * number of elements, the oldest are forgotten. The memory used by the
+ * provenance is therefore bounded however long the system runs.
+ * 
+ * @see #createProvenance(Processable[])
+ * @see #getLineage(Processable, int)
+ * 
+ * @author Jorge Muñoz
+ * @author Raúl Arrabales
+ */
+public class ProvenanceStore {
+
+	/**
+	 * An element registered in the store.
+	 */
+	private static class Entry {
+
+		/**
+		 * Id of the element.
+		 */
+		private final int id;
+
+		/**
+		 * Tick when the element was created.
+		 */
+		private final int tick;
+
+		/**
+		 * Ids of the elements that generated this one, shared with the other
+		 * elements generated by the same elements.
+		 */
+		private final int[] parents;
+
+		/**
+		 * Strong reference to the element while it is recent, null after.
+		 */
+		private Processable strong;
+
+		/**
+		 * Weak reference to the element.
+		 */
+		private final WeakReference<Processable> weak;
+
+		/**
+		 * Default constructor.
+		 * 
+		 * @param id
+		 *            Id of the element.
+		 * @param tick
+		 *            Tick when the element was created.
+		 * @param parents
+		 *            Ids of the elements that generated this one.
+		 * @param processable
+		 *            The element.
+		 */
+		private Entry(int id, int tick, int[] parents, Processable processable) {
+			this.id = id;
+			this.tick = tick;
+			this.parents = parents;
+			this.strong = processable;
+			this.weak = new WeakReference<Processable>(processable);
+		}
+
+		/**
+		 * @return the element, null if it was garbage collected.
+		 */
+		private Processable get() {
+			Processable processable = this.strong;
+			return processable != null ? processable : this.weak.get();
+		}
+
+	}
+
+	/**
+	 * The elements that generated a processable element, resolved in the
+	 * store while the collection is iterated. The generators forgotten by the
+	 * store or garbage collected are skipped by the iterator, but they are
+	 * still counted by size() and isEmpty(), which only read the number of
+	 * generators recorded and do not take the lock of the store.
+	 */
+	private static final class Provenance extends AbstractCollection<Processable> {
+
+		/**
+		 * The store.
+		 */
+		private final ProvenanceStore store;
+
+		/**
+		 * Ids of the generators.
+		 */
+		private final int[] ids;
+
+		/**
+		 * Default constructor.
+		 * 
+		 * @param store
+		 *            The store.
+		 * @param ids
+		 *            Ids of the generators.
+		 */
+		private Provenance(ProvenanceStore store, int[] ids) {
+			this.store = store;
+			this.ids = ids;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.AbstractCollection#iterator()
+		 */
+		@Override
+		public Iterator<Processable> iterator() {
+			return new Iterator<Processable>() {
+
+				/**
+				 * Index of the next id to resolve.
+				 */
+				private int index;
+
+				/**
+				 * The next generator still in the store, null if not
+				 * resolved yet.
+				 */
+				private Processable next;
+
+				@Override
+				public boolean hasNext() {
+					while (this.next == null && this.index < Provenance.this.ids.length) {
+						this.next = Provenance.this.store.get(Provenance.this.ids[this.index++]);
+					}
+					return this.next != null;
+				}
+
+				@Override
+				public Processable next() {
+					if (!this.hasNext()) {
+						throw new NoSuchElementException();
+					}
+					Processable processable = this.next;
+					this.next = null;
+					return processable;
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+
+			};
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.AbstractCollection#size()
+		 */
+		@Override
+		public int size() {
+			return this.ids.length;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.AbstractCollection#isEmpty()
+		 */
+		@Override
+		public boolean isEmpty() {
+			return this.ids.length == 0;
+		}
+
+	}
+
+	/**
+	 * Empty array of ids.
+	 */
+	private static final int[] NO_IDS = new int[0];
+
+	/**
+	 * The entries, indexed by their id modulo the capacity. An entry is
+	 * overwritten by the entry with its id plus the capacity.
+	 */
+	private final Entry[] entries;
+
+	/**
+	 * Ids of the elements in the store.
+	 */
+	private final WeakHashMap<Processable, Integer> ids;
+
+	/**
+	 * Number of ticks the store keeps a strong reference to an element.
+	 */
+	private final int maximumAge;
+
+	/**
+	 * Maximum number of generations returned by a lineage query.
+	 */
+	private final int maximumDepth;
+
+	/**
+	 * Id of the next element registered.
+	 */
+	private int nextId;
+
+	/**
+	 * Id of the oldest element that can still have a strong reference.
+	 */
+	private int oldestStrong;
+
+	/**
+	 * The most recent tick of the elements registered.
+	 */
+	private int lastTick;
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param capacity
+	 *            Maximum number of elements in the store, at least 1.
+	 * @param maximumAge
+	 *            Number of ticks the store keeps a strong reference to an
+	 *            element, after that the element can be garbage collected.
+	 * @param maximumDepth
+	 *            Maximum number of generations returned by a lineage query,
+	 *            at least 1.
+	 */
+	public ProvenanceStore(int capacity, int maximumAge, int maximumDepth) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("The capacity must be at least 1.");
+		}
+		if (maximumAge < 0) {
+			throw new IllegalArgumentException("The maximum age cannot be negative.");
+		}
+		if (maximumDepth < 1) {
+			throw new IllegalArgumentException("The maximum depth must be at least 1.");
+		}
+		this.entries = new Entry[capacity];
+		this.ids = new WeakHashMap<Processable, Integer>();
+		this.maximumAge = maximumAge;
+		this.maximumDepth = maximumDepth;
+	}
+
+	/**
+	 * Registers an element in the store, if it was not registered yet. Its
+	 * generators are registered too if they were not in the store, without
+	 * their own generators.
+	 * 
+	 * @param processable
+	 *            The element.
+	 * @return The id of the element.
+	 */
+	public synchronized int register(Processable processable) {
+		int id = this.getId(processable);
+		if (id < 0) {
+			id = this.add(processable, this.getParents(processable, true));
+		}
+		return id;
+	}
+
+	/**
+	 * Creates the collection of generators of the elements generated from
+	 * some elements, registering them in the store. The collection only keeps
+	 * the ids of the generators, and it can be shared by all the elements
+	 * generated from the same elements.
+	 * 
+	 * @param generators
+	 *            The generators, the null elements are ignored.
+	 * @return An unmodifiable collection with the generators.
+	 * @see Processable#setGeneratedBy(Collection)
+	 */
+	public synchronized Collection<Processable> createProvenance(Processable[] generators) {
+		int size = 0;
+		for (Processable generator : generators) {
+			if (generator != null) {
+				size++;
+			}
+		}
+		int[] parents = new int[size];
+		size = 0;
+		for (Processable generator : generators) {
+			if (generator != null) {
+				parents[size++] = this.register(generator);
+			}
+		}
+		return new Provenance(this, parents);
+	}
+
+	/**
+	 * Returns the ancestors of an element still in the store, the generators
+	 * first, then the generators of the generators and so on.
+	 * 
+	 * @param processable
+	 *            The element.
+	 * @param depth
+	 *            Number of generations, it is limited by the maximum depth of
+	 *            the store.
+	 * @return The ancestors, each one only once.
+	 */
+	public synchronized List<Processable> getLineage(Processable processable, int depth) {
+		List<Processable> lineage = new ArrayList<Processable>();
+		Set<Integer> visited = new HashSet<Integer>();
+		int[] generation = this.getParents(processable, false);
+		depth = Math.min(depth, this.maximumDepth);
+		for (int level = 0; level < depth && generation.length > 0; level++) {
+			List<Integer> next = new ArrayList<Integer>();
+			for (int id : generation) {
+				Entry entry = this.getEntry(id);
+				if (entry != null && visited.add(id)) {
+					Processable ancestor = entry.get();
+					if (ancestor != null) {
+						lineage.add(ancestor);
+					}
+					for (int parent : entry.parents) {
+						next.add(parent);
+					}
+				}
+			}
+			generation = new int[next.size()];
+			for (int i = 0; i < generation.length; i++) {
+				generation[i] = next.get(i);
+			}
+		}
+		return lineage;
+	}
+
+	/**
+	 * Returns an element of the store.
+	 * 
+	 * @param id
+	 *            The id of the element.
+	 * @return The element, null if it was forgotten or garbage collected.
+	 */
+	public synchronized Processable get(int id) {
+		Entry entry = this.getEntry(id);
+		return entry == null ? null : entry.get();
+	}
+
+	/**
+	 * Returns the id of an element.
+	 * 
+	 * @param processable
+	 *            The element.
+	 * @return The id, -1 if the element is not in the store.
+	 */
+	public synchronized int getId(Processable processable) {
+		Integer id = this.ids.get(processable);
+		return id != null && this.getEntry(id) != null ? id : -1;
+	}
+
+	/**
+	 * @return the number of elements in the store, including the ones garbage
+	 *         collected but not forgotten yet.
+	 */
+	public synchronized int size() {
+		return Math.min(this.nextId, this.entries.length);
+	}
+
+	/**
+	 * @return the maximum number of elements in the store.
+	 */
+	public int getCapacity() {
+		return this.entries.length;
+	}
+
+	/**
+	 * @return the number of ticks the store keeps a strong reference to an
+	 *         element.
+	 */
+	public int getMaximumAge() {
+		return this.maximumAge;
+	}
+
+	/**
+	 * @return the maximum number of generations returned by a lineage query.
+	 */
+	public int getMaximumDepth() {
+		return this.maximumDepth;
+	}
+
+	/**
+	 * Returns the entry of an id.
+	 * 
+	 * @param id
+	 *            The id.
+	 * @return The entry, null if it was forgotten.
+	 */
+	private Entry getEntry(int id) {
+		if (id < 0) {
+			return null;
+		}
+		Entry entry = this.entries[id % this.entries.length];
+		return entry != null && entry.id == id ? entry : null;
+	}
+
+	/**
+	 * Returns the ids of the generators of an element.
+	 * 
+	 * @param processable
+	 *            The element.
+	 * @param register
+	 *            true to register the generators not in the store.
+	 * @return The ids.
+	 */
+	private int[] getParents(Processable processable, boolean register) {
+		Collection<Processable> generatedBy = processable.getGeneratedBy();
+		if (generatedBy instanceof Provenance && ((Provenance) generatedBy).store == this) {
+			return ((Provenance) generatedBy).ids;
+		}
+		int id = this.getId(processable);
+		if (id >= 0) {
+			return this.getEntry(id).parents;
+		}
+		if (generatedBy == null || generatedBy.isEmpty()) {
+			return NO_IDS;
+		}
+		List<Integer> parents = new ArrayList<Integer>(generatedBy.size());
+		for (Processable generator : generatedBy) {
+			int parent = this.getId(generator);
+			if (parent < 0 && register) {
+				parent = this.add(generator, NO_IDS);
+			}
+			if (parent >= 0) {
+				parents.add(parent);
+			}
+		}
+		int[] array = new int[parents.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = parents.get(i);
+		}
+		return array;
+	}
+
+	/**
+	 * Adds an element to the store. The oldest element is forgotten if the
+	 * store is full, and the strong references to the elements older than
+	 * the maximum age are released.
+	 * 
+	 * @param processable
+	 *            The element.
+	 * @param parents
+	 *            Ids of its generators.
+	 * @return The id of the element.
+	 */
+	private int add(Processable processable, int[] parents) {
+		int tick = processable.getCreationTick();
+		if (tick < 0) {
+			tick = this.lastTick;
+		}
+		if (tick > this.lastTick) {
+			this.lastTick = tick;
+		}
+		int id = this.nextId++;
+		if (this.nextId < 0) {
+			// the ids are exhausted, start again
+			this.clear();
+			id = this.nextId++;
+		}
+		int slot = id % this.entries.length;
+		Entry old = this.entries[slot];
+		if (old != null) {
+			this.releaseStrong(old);
+			Processable forgotten = old.get();
+			if (forgotten != null) {
+				this.ids.remove(forgotten);
+			}
+		}
+		this.entries[slot] = new Entry(id, tick, parents, processable);
+		this.ids.put(processable, id);
+		Processor.retain(processable);
+		this.releaseOld();
+		return id;
+	}
+
+	/**
+	 * Releases the strong references to the elements older than the maximum
+	 * age.
+	 */
+	private void releaseOld() {
+		this.oldestStrong = Math.max(this.oldestStrong, this.nextId - this.entries.length);
+		while (this.oldestStrong < this.nextId) {
+			Entry entry = this.getEntry(this.oldestStrong);
+			if (entry != null && this.lastTick - entry.tick <= this.maximumAge) {
+				break;
+			}
+			if (entry != null) {
+				this.releaseStrong(entry);
+			}
+			this.oldestStrong++;
+		}
+	}
+
+	/**
+	 * Releases the strong reference to the element of an entry. A recyclable
+	 * element is also forgotten, because its instance can be reused as other
+	 * element.
+	 * 
+	 * @param entry
+	 *            The entry.
+	 * @see Recyclable
+	 */
+	private void releaseStrong(Entry entry) {
+		Processable processable = entry.strong;
+		if (processable == null) {
+			return;
+		}
+		entry.strong = null;
+		if (processable instanceof Recyclable) {
+			this.ids.remove(processable);
+			entry.weak.clear();
+			((Recyclable) processable).release();
+		}
+	}
+
+	/**
+	 * Forgets all the elements.
+	 */
+	private void clear() {
+		for (int i = 0; i < this.entries.length; i++) {
+			if (this.entries[i] != null) {
+				this.releaseStrong(this.entries[i]);
+			}
+			this.entries[i] = null;
+		}
+		this.ids.clear();
+		this.nextId = 0;
+		this.oldestStrong = 0;
+	}
+
+}
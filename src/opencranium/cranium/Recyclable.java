@@ -0,0 +1,32 @@
+package opencranium.cranium;
+
+/**
+ * A processable element whose instance is reused when nobody holds it. Each
+ * holder of the element counts its reference with retain and release, and the
+ * element is recycled when the last reference is released. The queues of the
+ * processors, the dispatch queues of the workspace, the asynchronous implicit
+ * processing of the layers, the provenance store and the results that
+ * reference their generators count their references, other holders, like the
+ * memory of a workspace processor, must retain the elements they keep.
+ * 
+ * @see Processor#addProcessable(Processable)
+ * @see ProvenanceStore#register(Processable)
+ * @see Generators
+ * 
+ * @author Jorge Muñoz
+ * @author Raúl Arrabales
+ */
+public interface Recyclable {
+
+	/**
+	 * Adds a reference to the element.
+	 */
+	public void retain();
+
+	/**
+	 * Releases a reference to the element. The element must not be used after
+	 * the release of the last reference.
+	 */
+	public void release();
+
+}
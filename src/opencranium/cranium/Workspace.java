@@ -1,12 +1,13 @@
 package opencranium.cranium;
 
-import java.util.Collection;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Vector;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 
 import opencranium.util.Id;
+import opencranium.util.StatisticsManager;
 import opencranium.util.Time;
 import opencranium.util.log.Logger;
 
@@ -16,7 +17,22 @@ import opencranium.util.log.Logger;
  * ProcessorThreads which are used to execute the WorkspaceProcessors.
  * 
  * The workspace is thread safe and processors can be added/removed at the same
- * time, even if a processable element is being submitted.
+ * time, even if a processable element is being submitted. The processors
+ * interested in each type are published in a copy-on-write dispatch table
+ * indexed by the int of the Id, so submitting a processable element neither
+ * locks nor allocates. The table is rebuilt when a processor is registered or
+ * unregistered.
+ * 
+ * The processors can also be interested in all the types of a processable
+ * class and its subclasses. These subscriptions are resolved into the dispatch
+ * table the first time a type is submitted, so the cost of the dispatch does
+ * not depend on how the processors express their interests.
+ * 
+ * The listeners can be partitioned by the Id in several shards, each one with
+ * its own lock and dispatch table, so a registration only stalls the shards of
+ * the input types of the processor. Each shard can also have its own dispatch
+ * thread, then the processable elements are submitted asynchronously and the
+ * producers do not wait for the processors' queues.
  * 
  * @see ProcessorThread
  * @see WorkspaceProcessor
@@ -38,52 +54,71 @@ public class Workspace {
 	private Time currentTick;
 
 	/**
-	 * List of listener of the events submitted.
+	 * Shards with the listeners of the types, indexed by Id.getId() modulo the
+	 * number of shards.
 	 */
-	private HashMap<Id, Collection<WorkspaceProcessor>> listeners;
+	private WorkspaceShard[] shards;
 
 	/**
-	 * A lock for concurrent operations.
+	 * Default constructor with only one shard.
+	 * 
+	 * @param processorThreadPool
+	 *            Pool of threads to execute the processors. Cannot be not null.
+	 * 
 	 */
-	private Lock lock;
+	public Workspace(ProcessorThreadPool processorThreadPool) {
+		this(processorThreadPool, 1);
+	}
 
 	/**
-	 * Default constructor.
+	 * Constructor with the number of shards.
 	 * 
 	 * @param processorThreadPool
 	 *            Pool of threads to execute the processors. Cannot be not null.
-	 * 
+	 * @param shards
+	 *            Number of shards of the listeners, at least 1.
 	 */
-	public Workspace(ProcessorThreadPool processorThreadPool) {
+	public Workspace(ProcessorThreadPool processorThreadPool, int shards) {
 		if (processorThreadPool == null) {
 			throw new CraniumException("Pool of threads cannot be null", this);
 		}
+		if (shards < 1) {
+			throw new CraniumException("The number of shards must be at least 1", this);
+		}
 		this.processorPool = processorThreadPool;
-		this.lock = new ReentrantLock();
-		this.listeners = new HashMap<Id, Collection<WorkspaceProcessor>>();
+		this.shards = new WorkspaceShard[shards];
+		for (int i = 0; i < shards; i++) {
+			this.shards[i] = new WorkspaceShard(this, i, shards);
+		}
 	}
 
 	/**
 	 * Submits a processable element into the workspace. The processable element
-	 * is notified to all the WorspaceProcessors interested.
+	 * is notified to all the WorspaceProcessors interested whose input filters
+	 * accept it. If the shard of its type has a dispatch thread the element is
+	 * notified by that thread.
 	 * 
 	 * @param processable
 	 *            A processable element as a result of an operation.
 	 */
 	public void submitProcessable(Processable processable) {
-		WorkspaceProcessor[] processors = null;
-		try {
-			this.lock.lock();
-			Collection<WorkspaceProcessor> collection = this.listeners.get(processable.getId());
-			if (collection != null && collection.size() > 0) {
-				processors = new WorkspaceProcessor[collection.size()];
-				processors = collection.toArray(processors);
-			}
-		} finally {
-			this.lock.unlock();
+		WorkspaceShard shard = this.getShard(processable.getId());
+		if (!shard.enqueue(processable)) {
+			this.dispatch(processable, shard.getProcessors(processable.getId()));
 		}
-		if (processors != null) {
-			for (WorkspaceProcessor processor : processors) {
+	}
+
+	/**
+	 * Notifies a processable element to the processors.
+	 * 
+	 * @param processable
+	 *            The processable element.
+	 * @param processors
+	 *            The processors interested in its type.
+	 */
+	void dispatch(Processable processable, WorkspaceProcessor[] processors) {
+		for (WorkspaceProcessor processor : processors) {
+			if (this.isAccepted(processor, processable)) {
 				try {
 					processor.addProcessable(processable);
 				} catch (CraniumException exception) {
@@ -93,9 +128,121 @@ public class Workspace {
 		}
 	}
 
+	/**
+	 * Submits several processable elements into the workspace. The elements are
+	 * grouped by the WorkspaceProcessors interested in them, and each
+	 * processor receives its group with only one lock of its queue. The
+	 * elements of types whose shard has a dispatch thread are submitted to
+	 * that thread instead.
+	 * 
+	 * @param processables
+	 *            The processable elements as a result of an operation.
+	 */
+	public void submitProcessables(Processable[] processables) {
+		if (processables.length == 1) {
+			this.submitProcessable(processables[0]);
+			return;
+		}
+		Map<WorkspaceProcessor, List<Processable>> groups = new HashMap<WorkspaceProcessor, List<Processable>>();
+		for (Processable processable : processables) {
+			WorkspaceShard shard = this.getShard(processable.getId());
+			if (shard.enqueue(processable)) {
+				continue;
+			}
+			for (WorkspaceProcessor processor : shard.getProcessors(processable.getId())) {
+				if (!this.isAccepted(processor, processable)) {
+					continue;
+				}
+				List<Processable> group = groups.get(processor);
+				if (group == null) {
+					group = new ArrayList<Processable>(processables.length);
+					groups.put(processor, group);
+				}
+				group.add(processable);
+			}
+		}
+		for (Entry<WorkspaceProcessor, List<Processable>> entry : groups.entrySet()) {
+			List<Processable> group = entry.getValue();
+			try {
+				entry.getKey().addProcessables(group.toArray(new Processable[group.size()]));
+			} catch (CraniumException exception) {
+				Logger.exception(exception);
+			}
+		}
+	}
+
+	/**
+	 * Checks if the input filters of a processor accept a processable element.
+	 * The discarded elements are recorded in the statistics.
+	 * 
+	 * @param processor
+	 *            The processor.
+	 * @param processable
+	 *            The processable element.
+	 * @return true if the element is accepted.
+	 */
+	private boolean isAccepted(WorkspaceProcessor processor, Processable processable) {
+		boolean accepted = processor.isAcceptedInput(processable);
+		if (!accepted && StatisticsManager.isRecording()) {
+			processable.getId().addDiscarded(processor.getId());
+		}
+		return accepted;
+	}
+
+	/**
+	 * Returns the processors registered as listeners of a type. The array must
+	 * not be modified.
+	 * 
+	 * @param id
+	 *            The type.
+	 * @return The processors interested in the type, an empty array if there
+	 *         is none.
+	 */
+	protected WorkspaceProcessor[] getProcessors(Id id) {
+		return this.getShard(id).getProcessors(id);
+	}
+
+	/**
+	 * Returns the shard of a type.
+	 * 
+	 * @param id
+	 *            The type.
+	 * @return The shard with the listeners of the type.
+	 */
+	private WorkspaceShard getShard(Id id) {
+		int index = id.getId() % this.shards.length;
+		if (index < 0) {
+			index += this.shards.length;
+		}
+		return this.shards[index];
+	}
+
+	/**
+	 * Groups the input types of a processor by shard.
+	 * 
+	 * @param processor
+	 *            The processor.
+	 * @return A list of input types for each shard.
+	 */
+	private List<List<Id>> getInputTypesByShard(WorkspaceProcessor processor) {
+		List<List<Id>> types = new ArrayList<List<Id>>(this.shards.length);
+		for (int i = 0; i < this.shards.length; i++) {
+			types.add(new ArrayList<Id>());
+		}
+		for (Id id : processor.getInputTypes()) {
+			int index = id.getId() % this.shards.length;
+			if (index < 0) {
+				index += this.shards.length;
+			}
+			types.get(index).add(id);
+		}
+		return types;
+	}
+
 	/**
 	 * Register a WorkspaceProcessor as a listener of its inputs types in this
-	 * workspace.
+	 * workspace. Only the shards of its input types are locked, unless the
+	 * processor has input classes.
 	 * 
 	 * @param processor
 	 *            The processor to be registered.
@@ -103,22 +250,14 @@ public class Workspace {
 	public boolean registerProcessor(WorkspaceProcessor processor) {
 		boolean added = false;
 		if (this.processorPool.addProcessor(processor)) {
-			try {
-				this.lock.lock();
-				for (Id id : processor.getInputTypes()) {
-					Collection<WorkspaceProcessor> collection = null;
-					if (this.listeners.containsKey(id)) {
-						collection = this.listeners.get(id);
-					} else {
-						collection = new Vector<WorkspaceProcessor>();
-						this.listeners.put(id, collection);
-					}
-					collection.add(processor);
+			boolean allShards = !processor.getInputClasses().isEmpty();
+			List<List<Id>> types = this.getInputTypesByShard(processor);
+			for (int i = 0; i < this.shards.length; i++) {
+				if (allShards || !types.get(i).isEmpty()) {
+					this.shards[i].registerProcessor(processor, types.get(i));
 				}
-				added = true;
-			} finally {
-				this.lock.unlock();
 			}
+			added = true;
 		}
 		return added;
 	}
@@ -133,23 +272,78 @@ public class Workspace {
 	public boolean unregisterProcessor(WorkspaceProcessor processor) {
 		boolean removed = false;
 		if (this.processorPool.removeProcessor(processor)) {
-			try {
-				this.lock.lock();
-				for (Id id : processor.getInputTypes()) {
-					Collection<WorkspaceProcessor> collection = this.listeners.get(id);
-					collection.remove(processor);
-					if (collection.isEmpty()) {
-						this.listeners.remove(id);
-					}
+			boolean allShards = !processor.getInputClasses().isEmpty();
+			List<List<Id>> types = this.getInputTypesByShard(processor);
+			for (int i = 0; i < this.shards.length; i++) {
+				if (allShards || !types.get(i).isEmpty()) {
+					this.shards[i].unregisterProcessor(processor, types.get(i));
 				}
-				removed = true;
-			} finally {
-				this.lock.unlock();
 			}
+			removed = true;
 		}
 		return removed;
 	}
 
+	/**
+	 * Starts a dispatch thread for each shard. Since then the processable
+	 * elements are submitted asynchronously.
+	 * 
+	 * @see Workspace#stopDispatchThreads()
+	 */
+	public void startDispatchThreads() {
+		for (WorkspaceShard shard : this.shards) {
+			shard.startDispatchThread();
+		}
+	}
+
+	/**
+	 * Stops the dispatch threads of the shards. The processable elements not
+	 * dispatched yet are dispatched before this method returns.
+	 * 
+	 * @see Workspace#startDispatchThreads()
+	 */
+	public void stopDispatchThreads() {
+		for (WorkspaceShard shard : this.shards) {
+			shard.stopDispatchThread();
+		}
+	}
+
+	/**
+	 * Dispatches in the caller thread the processable elements waiting for the
+	 * dispatch threads, which keep running.
+	 */
+	public void flushDispatches() {
+		for (WorkspaceShard shard : this.shards) {
+			shard.flush();
+		}
+	}
+
+	/**
+	 * @return true if the shards have dispatch threads running.
+	 */
+	public boolean isDispatchThreadsRunning() {
+		return this.shards[0].isDispatchThreadRunning();
+	}
+
+	/**
+	 * @return the number of processable elements submitted and waiting for a
+	 *         dispatch thread or being dispatched.
+	 */
+	public int getPendingDispatches() {
+		int pending = 0;
+		for (WorkspaceShard shard : this.shards) {
+			pending += shard.getQueueSize();
+		}
+		return pending;
+	}
+
+	/**
+	 * @return the number of shards of this workspace.
+	 */
+	public int getNumberOfShards() {
+		return this.shards.length;
+	}
+
 	/**
 	 * @return the currentTick
 	 */
@@ -1,10 +1,13 @@
 package opencranium.cranium;
 
+import java.util.BitSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
 import opencranium.util.Id;
+import opencranium.util.collection.ElementFilter;
 
 /**
  * Abstract class that implements some operations of a Processor and defines
@@ -20,6 +23,25 @@ public abstract class WorkspaceProcessor extends Processor {
 	 */
 	private SortedSet<Id> inputTypes;
 
+	/**
+	 * Input types indexed by Id.getId(), for fast lookups, with the types
+	 * accepted by their class once they are resolved. The set is never
+	 * modified once published, it is replaced by a new one.
+	 */
+	private volatile BitSet inputIds;
+
+	/**
+	 * Types rejected by their class, indexed by Id.getId(). The set is never
+	 * modified once published, it is replaced by a new one.
+	 */
+	private volatile BitSet rejectedIds;
+
+	/**
+	 * Classes of the input types allowed by this WorkspaceProcessor. Any type
+	 * which processable class is one of them or a subclass is allowed.
+	 */
+	private Set<Class<?>> inputClasses;
+
 	/**
 	 * Output types allowed by this WorkspaceProcessor.
 	 */
@@ -43,6 +65,12 @@ public abstract class WorkspaceProcessor extends Processor {
 	 */
 	private boolean inputEnabled;
 
+	/**
+	 * Filters that the processable elements must accept to be dispatched to
+	 * this processor by the workspace. The array is replaced, never modified.
+	 */
+	private volatile ElementFilter<Processable>[] inputFilters;
+
 	/**
 	 * Default constructor with id, inputTypes and outputTypes.
 	 * 
@@ -56,9 +84,11 @@ public abstract class WorkspaceProcessor extends Processor {
 	public WorkspaceProcessor(Id id, Set<Id> inputTypes, Set<Id> outputTypes) {
 		super(id);
 		this.setInputTypes(inputTypes);
+		this.setInputClasses(null);
 		this.setOutputTypes(outputTypes);
 		this.inputEnabled = true;
 		this.outputEnabled = true;
+		this.inputFilters = newFilterArray(0);
 	}
 
 	/**
@@ -79,6 +109,43 @@ public abstract class WorkspaceProcessor extends Processor {
 	 */
 	protected void setInputTypes(Set<Id> inputTypes) {
 		this.inputTypes = this.parseInputOutputTypes(inputTypes);
+		this.resetInputIds();
+	}
+
+	/**
+	 * Indexes the input types and forgets the types resolved against the input
+	 * classes.
+	 */
+	private synchronized void resetInputIds() {
+		BitSet ids = new BitSet();
+		for (Id id : this.inputTypes) {
+			ids.set(id.getId());
+		}
+		this.inputIds = ids;
+		this.rejectedIds = new BitSet();
+	}
+
+	/**
+	 * Sets the classes of the input types of this workspace processor. All the
+	 * types which processable class is one of these classes or a subclass of
+	 * them are valid inputs, including the types created after the processor
+	 * is registered in a workspace. The classes must be set before the
+	 * processor is registered.
+	 * 
+	 * @param inputClasses
+	 *            The classes of the input types.
+	 * @see Id#getProcessableClass()
+	 */
+	protected void setInputClasses(Set<Class<?>> inputClasses) {
+		Set<Class<?>> classes = new LinkedHashSet<Class<?>>();
+		if (inputClasses != null) {
+			classes.addAll(inputClasses);
+		}
+		this.inputClasses = classes;
+		// the types resolved with the previous classes are resolved again
+		if (this.inputTypes != null) {
+			this.resetInputIds();
+		}
 	}
 
 	/**
@@ -115,7 +182,7 @@ public abstract class WorkspaceProcessor extends Processor {
 	 */
 	public void purgeProcessableList(int finalSize) {
 		while (this.processableSortedList.getSize() > finalSize) {
-			this.processableSortedList.removeLastElement();
+			release(this.processableSortedList.removeLastElement());
 		}
 	}
 
@@ -131,6 +198,32 @@ public abstract class WorkspaceProcessor extends Processor {
 	 */
 	protected abstract Processable[] execute(Processable processable, long milliseconds);
 
+	/**
+	 * Process a batch of processable elements, only called when the batch size
+	 * of the processor is greater than 1. Subclasses that process the batch as
+	 * a whole should override this method and return all the elements
+	 * generated. By default each element is executed with
+	 * execute(Processable, long) and its results are managed before the next
+	 * one is executed, returning null.
+	 * 
+	 * @param processables
+	 *            Array with the processable elements. The array is reused
+	 *            between calls and must not be stored.
+	 * @param count
+	 *            Number of elements in the array to process.
+	 * @param milliseconds
+	 *            The time when the current cycle ends, when the processor
+	 *            should has finished.
+	 * @return An array with the processable elements generated.
+	 * @see Processor#setBatchSize(int)
+	 */
+	protected Processable[] execute(Processable[] processables, int count, long milliseconds) {
+		for (int i = 0; i < count; i++) {
+			processResults(execute(processables[i], milliseconds));
+		}
+		return null;
+	}
+
 	/**
 	 * Process nothing but returns a processable elements generated. This method
 	 * is only called for sensory-motor processors.
@@ -149,19 +242,149 @@ public abstract class WorkspaceProcessor extends Processor {
 	 * Resets this workspace processor, removes all elements in the queue.
 	 */
 	public void reset() {
-		this.processableSortedList.clear();
+		this.clearQueue();
 		this.cleanMemory();
 	}
 
 	/**
-	 * Checks if an input Id is a valid input.
+	 * Checks if an input Id is a valid input. The types checked against the
+	 * input classes are cached, so each type is only resolved once.
 	 * 
 	 * @param id
 	 *            The input Id.
 	 * @return true if it is a valid input.
 	 */
 	public boolean isValidInput(Id id) {
-		return id != null && this.inputTypes.contains(id);
+		if (id == null) {
+			return false;
+		}
+		int number = id.getId();
+		if (number < 0) {
+			return this.isValidInputClass(id.getProcessableClass());
+		}
+		if (this.inputIds.get(number)) {
+			return true;
+		}
+		if (this.rejectedIds.get(number)) {
+			return false;
+		}
+		boolean valid = this.isValidInputClass(id.getProcessableClass());
+		this.cacheResolution(number, valid);
+		return valid;
+	}
+
+	/**
+	 * Stores the resolution of a type against the input classes.
+	 * 
+	 * @param number
+	 *            Id.getId() of the type.
+	 * @param valid
+	 *            true if the type is a valid input.
+	 */
+	private synchronized void cacheResolution(int number, boolean valid) {
+		BitSet ids = (BitSet) (valid ? this.inputIds : this.rejectedIds).clone();
+		ids.set(number);
+		if (valid) {
+			this.inputIds = ids;
+		} else {
+			this.rejectedIds = ids;
+		}
+	}
+
+	/**
+	 * Checks if the types of a processable class are valid inputs.
+	 * 
+	 * @param processableClass
+	 *            The processable class.
+	 * @return true if the class is one of the input classes or a subclass of
+	 *         them.
+	 * @see WorkspaceProcessor#setInputClasses(Set)
+	 */
+	public boolean isValidInputClass(Class<?> processableClass) {
+		for (Class<?> inputClass : this.inputClasses) {
+			if (inputClass.isAssignableFrom(processableClass)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds a filter of the input elements. The workspace only dispatches to
+	 * this processor the elements accepted by all its filters, the rest of
+	 * them are discarded before they are added into the queue.
+	 * 
+	 * @param filter
+	 *            The filter, cannot be null.
+	 * @return true if the filter was added, false if it was added before.
+	 * @see Workspace#submitProcessable(Processable)
+	 */
+	public synchronized boolean addInputFilter(ElementFilter<Processable> filter) {
+		if (filter == null) {
+			throw new IllegalArgumentException("The filter can not be null.");
+		}
+		ElementFilter<Processable>[] filters = this.inputFilters;
+		for (ElementFilter<Processable> current : filters) {
+			if (current == filter) {
+				return false;
+			}
+		}
+		ElementFilter<Processable>[] newFilters = newFilterArray(filters.length + 1);
+		System.arraycopy(filters, 0, newFilters, 0, filters.length);
+		newFilters[filters.length] = filter;
+		this.inputFilters = newFilters;
+		return true;
+	}
+
+	/**
+	 * Removes a filter of the input elements.
+	 * 
+	 * @param filter
+	 *            The filter.
+	 * @return true if the filter was removed, false otherwise.
+	 */
+	public synchronized boolean removeInputFilter(ElementFilter<Processable> filter) {
+		ElementFilter<Processable>[] filters = this.inputFilters;
+		for (int i = 0; i < filters.length; i++) {
+			if (filters[i] == filter) {
+				ElementFilter<Processable>[] newFilters = newFilterArray(filters.length - 1);
+				System.arraycopy(filters, 0, newFilters, 0, i);
+				System.arraycopy(filters, i + 1, newFilters, i, filters.length - i - 1);
+				this.inputFilters = newFilters;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks if a processable element is accepted by all the input filters of
+	 * this processor.
+	 * 
+	 * @param processable
+	 *            The processable element.
+	 * @return true if all the filters accept the element.
+	 * @see WorkspaceProcessor#addInputFilter(ElementFilter)
+	 */
+	public boolean isAcceptedInput(Processable processable) {
+		for (ElementFilter<Processable> filter : this.inputFilters) {
+			if (!filter.accept(processable)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Creates an array of filters.
+	 * 
+	 * @param length
+	 *            Length of the array.
+	 * @return The new array.
+	 */
+	@SuppressWarnings("unchecked")
+	private static ElementFilter<Processable>[] newFilterArray(int length) {
+		return (ElementFilter<Processable>[]) new ElementFilter<?>[length];
 	}
 
 	/**
@@ -196,6 +419,28 @@ public abstract class WorkspaceProcessor extends Processor {
 		return added;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * opencranium.cranium.Processor#addProcessables(opencranium.cranium.Processable
+	 * [])
+	 */
+	@Override
+	public int addProcessables(Processable[] data) {
+		int added = 0;
+		for (Processable processable : data) {
+			if (!this.isValidInput(processable.getId())) {
+				throw new CraniumException("Not valid input type: " + processable.getId()
+						+ " for workspace processor: " + this.getId(), this);
+			}
+		}
+		if (this.inputEnabled) {
+			added = super.addProcessables(data);
+		}
+		return added;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -207,6 +452,18 @@ public abstract class WorkspaceProcessor extends Processor {
 		processResults(result);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see opencranium.cranium.Processor#processNextElements(Processable[], int,
+	 * long)
+	 */
+	@Override
+	protected final void processNextElements(Processable[] elements, int count, long milliseconds) {
+		Processable[] result = execute(elements, count, milliseconds);
+		processResults(result);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -227,14 +484,17 @@ public abstract class WorkspaceProcessor extends Processor {
 	private void processResults(Processable[] result) {
 		if (result != null && result.length > 0) {
 			for (Processable processable : result) {
-				if (isValidOutput(processable.getId())) {
-					if (this.outputEnabled) {
-						manageResult(processable);
-					}
-				} else {
+				if (!isValidOutput(processable.getId())) {
 					throw new CraniumException("Not valid output type: " + processable.getId(), this);
 				}
 			}
+			if (this.outputEnabled) {
+				if (result.length == 1) {
+					manageResult(result[0]);
+				} else {
+					manageResults(result);
+				}
+			}
 		}
 	}
 
@@ -252,6 +512,13 @@ public abstract class WorkspaceProcessor extends Processor {
 		return this.inputTypes;
 	}
 
+	/**
+	 * @return the inputClasses
+	 */
+	public Set<Class<?>> getInputClasses() {
+		return this.inputClasses;
+	}
+
 	/**
 	 * @return the outputTypes
 	 */
@@ -277,12 +544,24 @@ public abstract class WorkspaceProcessor extends Processor {
 	}
 
 	/**
-	 * Returns the current short term memory.
+	 * Returns the current short term memory. The array can be reused by the
+	 * processor between calls, so it must not be stored or modified.
 	 * 
 	 * @return An array of processable with the current short term memory.
 	 */
 	public abstract Processable[] getSortTermMemory();
 
+	/**
+	 * Restores the short term memory, for example from a checkpoint. By
+	 * default the short term memory is not restored.
+	 * 
+	 * @param memory
+	 *            The short term memory, as returned by getSortTermMemory().
+	 * @see WorkspaceProcessor#getSortTermMemory()
+	 */
+	public void setSortTermMemory(Processable[] memory) {
+	}
+
 	/**
 	 * Manage a result generated by a processor. This method must be overrider
 	 * in order to know what to do with the results.
@@ -292,6 +571,21 @@ public abstract class WorkspaceProcessor extends Processor {
 	 */
 	protected abstract void manageResult(Processable result);
 
+	/**
+	 * Manage several results generated by a processor in the same execution.
+	 * By default each result is managed with manageResult(Processable), it can
+	 * be overridden to manage all the results together.
+	 * 
+	 * @param results
+	 *            The results.
+	 * @see WorkspaceProcessor#manageResult(Processable)
+	 */
+	protected void manageResults(Processable[] results) {
+		for (Processable result : results) {
+			manageResult(result);
+		}
+	}
+
 	/**
 	 * @return the outputEnabled
 	 */
@@ -321,7 +615,7 @@ public abstract class WorkspaceProcessor extends Processor {
 	public void setInputEnabled(boolean inputEnabled) {
 		this.inputEnabled = inputEnabled;
 		if (!this.inputEnabled) {
-			this.processableSortedList.clear();
+			this.clearQueue();
 		}
 	}
 
@@ -0,0 +1,408 @@
+package opencranium.cranium;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.Vector;
+import java.util.Map.Entry;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import opencranium.Core;
+import opencranium.util.Id;
+import opencranium.util.log.Logger;
+
+/**
+ * A shard of a Workspace. It contains the listeners of the types which
+ * Id.getId() modulo the number of shards is the index of the shard, with its
+ * own lock and its own dispatch table, so the registrations in a shard do not
+ * stall the dispatch in the others. Optionally it has a thread that dispatches
+ * the processable elements submitted to the shard.
+ * 
+ * @see Workspace
+ * 
+ * @author Jorge Muñoz
+ * @author Raúl Arrabales
+ */
+class WorkspaceShard implements Runnable {
+
+	/**
+	 * Empty array of processors, shared by the types without listeners.
+	 */
+	private static final WorkspaceProcessor[] NO_PROCESSORS = new WorkspaceProcessor[0];
+
+	/**
+	 * Workspace owner of this shard.
+	 */
+	private Workspace workspace;
+
+	/**
+	 * Index of this shard.
+	 */
+	private int index;
+
+	/**
+	 * Number of shards of the workspace.
+	 */
+	private int shards;
+
+	/**
+	 * List of listener of the types of this shard.
+	 */
+	private HashMap<Id, Collection<WorkspaceProcessor>> listeners;
+
+	/**
+	 * List of listener of the types by the processable class of the types.
+	 */
+	private HashMap<Class<?>, Collection<WorkspaceProcessor>> classListeners;
+
+	/**
+	 * Types submitted that were resolved against the class listeners.
+	 */
+	private HashSet<Id> resolvedTypes;
+
+	/**
+	 * Dispatch table with the listeners of each type, indexed by Id.getId()
+	 * divided by the number of shards. The table and its arrays are never
+	 * modified once published, they are replaced by new ones.
+	 */
+	private volatile WorkspaceProcessor[][] dispatchTable;
+
+	/**
+	 * Whether there are class listeners, so the types not present in the
+	 * dispatch table must be resolved.
+	 */
+	private volatile boolean hasClassListeners;
+
+	/**
+	 * A lock for concurrent registrations.
+	 */
+	private Lock lock;
+
+	/**
+	 * Queue of the processable elements waiting for the dispatch thread.
+	 */
+	private BlockingQueue<Processable> queue;
+
+	/**
+	 * Number of processable elements queued and not dispatched yet, the one
+	 * being dispatched included.
+	 */
+	private AtomicInteger pending;
+
+	/**
+	 * Dispatch thread, null if the shard has not dispatch thread.
+	 */
+	private volatile Thread thread;
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param workspace
+	 *            Workspace owner of this shard.
+	 * @param index
+	 *            Index of this shard.
+	 * @param shards
+	 *            Number of shards of the workspace.
+	 */
+	WorkspaceShard(Workspace workspace, int index, int shards) {
+		this.workspace = workspace;
+		this.index = index;
+		this.shards = shards;
+		this.lock = new ReentrantLock();
+		this.listeners = new HashMap<Id, Collection<WorkspaceProcessor>>();
+		this.classListeners = new HashMap<Class<?>, Collection<WorkspaceProcessor>>();
+		this.resolvedTypes = new HashSet<Id>();
+		this.dispatchTable = new WorkspaceProcessor[0][];
+		this.queue = new LinkedBlockingQueue<Processable>();
+		this.pending = new AtomicInteger();
+	}
+
+	/**
+	 * Returns the processors registered as listeners of a type of this shard.
+	 * The array must not be modified.
+	 * 
+	 * @param id
+	 *            The type.
+	 * @return The processors interested in the type, an empty array if there
+	 *         is none.
+	 */
+	WorkspaceProcessor[] getProcessors(Id id) {
+		WorkspaceProcessor[][] table = this.dispatchTable;
+		int position = id.getId() / this.shards;
+		if (id.getId() >= 0 && position < table.length && table[position] != null) {
+			return table[position];
+		}
+		if (id.getId() >= 0 && this.hasClassListeners) {
+			return this.resolve(id);
+		}
+		return NO_PROCESSORS;
+	}
+
+	/**
+	 * Resolves a type not present in the dispatch table against the class
+	 * listeners and adds it to the table. Only the slot of the type is
+	 * computed, the rest of the table is copied.
+	 * 
+	 * @param id
+	 *            The type.
+	 * @return The processors interested in the type.
+	 */
+	private WorkspaceProcessor[] resolve(Id id) {
+		try {
+			this.lock.lock();
+			WorkspaceProcessor[][] table = this.dispatchTable;
+			int position = id.getId() / this.shards;
+			if (position < table.length && table[position] != null) {
+				return table[position];
+			}
+			this.resolvedTypes.add(id);
+			WorkspaceProcessor[][] newTable = new WorkspaceProcessor[Math.max(table.length, position + 1)][];
+			System.arraycopy(table, 0, newTable, 0, table.length);
+			newTable[position] = this.getListeners(id);
+			this.dispatchTable = newTable;
+			return newTable[position];
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the processors registered as listeners of a type or of a class
+	 * assignable from its class. Must be called with the lock held.
+	 * 
+	 * @param id
+	 *            The type.
+	 * @return The processors interested in the type.
+	 */
+	private WorkspaceProcessor[] getListeners(Id id) {
+		Set<WorkspaceProcessor> processors = new LinkedHashSet<WorkspaceProcessor>();
+		Collection<WorkspaceProcessor> collection = this.listeners.get(id);
+		if (collection != null) {
+			processors.addAll(collection);
+		}
+		for (Entry<Class<?>, Collection<WorkspaceProcessor>> entry : this.classListeners.entrySet()) {
+			if (entry.getKey().isAssignableFrom(id.getProcessableClass())) {
+				processors.addAll(entry.getValue());
+			}
+		}
+		if (processors.isEmpty()) {
+			return NO_PROCESSORS;
+		}
+		return processors.toArray(new WorkspaceProcessor[processors.size()]);
+	}
+
+	/**
+	 * Rebuilds the dispatch table from the listeners and the types resolved
+	 * against the class listeners. Must be called with the lock held.
+	 */
+	private void rebuildDispatchTable() {
+		Set<Id> types = new HashSet<Id>(this.listeners.keySet());
+		if (!this.classListeners.isEmpty()) {
+			types.addAll(this.resolvedTypes);
+		}
+		int size = 0;
+		for (Id id : types) {
+			if (id.getId() / this.shards >= size) {
+				size = id.getId() / this.shards + 1;
+			}
+		}
+		WorkspaceProcessor[][] table = new WorkspaceProcessor[size][];
+		for (Id id : types) {
+			table[id.getId() / this.shards] = this.getListeners(id);
+		}
+		this.hasClassListeners = !this.classListeners.isEmpty();
+		this.dispatchTable = table;
+	}
+
+	/**
+	 * Register a processor as a listener of some types of this shard and of
+	 * its input classes.
+	 * 
+	 * @param processor
+	 *            The processor.
+	 * @param types
+	 *            The input types of the processor that belong to this shard.
+	 */
+	void registerProcessor(WorkspaceProcessor processor, Collection<Id> types) {
+		try {
+			this.lock.lock();
+			for (Id id : types) {
+				Collection<WorkspaceProcessor> collection = this.listeners.get(id);
+				if (collection == null) {
+					collection = new Vector<WorkspaceProcessor>();
+					this.listeners.put(id, collection);
+				}
+				collection.add(processor);
+			}
+			for (Class<?> processableClass : processor.getInputClasses()) {
+				Collection<WorkspaceProcessor> collection = this.classListeners.get(processableClass);
+				if (collection == null) {
+					collection = new Vector<WorkspaceProcessor>();
+					this.classListeners.put(processableClass, collection);
+				}
+				collection.add(processor);
+			}
+			this.rebuildDispatchTable();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Unregister a processor as a listener of some types of this shard and of
+	 * its input classes.
+	 * 
+	 * @param processor
+	 *            The processor.
+	 * @param types
+	 *            The input types of the processor that belong to this shard.
+	 */
+	void unregisterProcessor(WorkspaceProcessor processor, Collection<Id> types) {
+		try {
+			this.lock.lock();
+			for (Id id : types) {
+				Collection<WorkspaceProcessor> collection = this.listeners.get(id);
+				collection.remove(processor);
+				if (collection.isEmpty()) {
+					this.listeners.remove(id);
+				}
+			}
+			for (Class<?> processableClass : processor.getInputClasses()) {
+				Collection<WorkspaceProcessor> collection = this.classListeners.get(processableClass);
+				collection.remove(processor);
+				if (collection.isEmpty()) {
+					this.classListeners.remove(processableClass);
+				}
+			}
+			this.rebuildDispatchTable();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Submits a processable element to the dispatch thread of this shard.
+	 * 
+	 * @param processable
+	 *            The processable element.
+	 * @return true if the element was queued, false if the shard has not a
+	 *         dispatch thread running.
+	 */
+	boolean enqueue(Processable processable) {
+		if (this.thread == null) {
+			return false;
+		}
+		this.pending.incrementAndGet();
+		Processor.retain(processable);
+		this.queue.offer(processable);
+		if (this.thread == null && this.queue.remove(processable)) {
+			// stopped meanwhile, nobody will take it from the queue
+			Processor.release(processable);
+			this.pending.decrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Dispatches a processable element taken from the queue and releases the
+	 * reference of the queue to it.
+	 * 
+	 * @param processable
+	 *            The processable element.
+	 */
+	private void dispatch(Processable processable) {
+		try {
+			this.workspace.dispatch(processable, this.getProcessors(processable.getId()));
+		} finally {
+			Processor.release(processable);
+			this.pending.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Starts the dispatch thread of this shard.
+	 */
+	synchronized void startDispatchThread() {
+		if (this.thread != null) {
+			throw new CraniumException("The dispatch thread has already been started.", this.workspace);
+		}
+		Thread dispatchThread = new Thread(this, "Workspace shard " + this.index);
+		dispatchThread.setDaemon(true);
+		this.thread = dispatchThread;
+		dispatchThread.start();
+	}
+
+	/**
+	 * Stops the dispatch thread of this shard and waits until it ends. The
+	 * processable elements still in the queue are dispatched by the caller.
+	 */
+	synchronized void stopDispatchThread() {
+		Thread dispatchThread = this.thread;
+		if (dispatchThread == null) {
+			throw new CraniumException("The dispatch thread has not been started.", this.workspace);
+		}
+		this.thread = null;
+		dispatchThread.interrupt();
+		try {
+			dispatchThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		this.flush();
+	}
+
+	/**
+	 * Dispatches in the caller thread the processable elements waiting in the
+	 * queue.
+	 */
+	void flush() {
+		Processable processable = this.queue.poll();
+		while (processable != null) {
+			this.dispatch(processable);
+			processable = this.queue.poll();
+		}
+	}
+
+	/**
+	 * @return true if the dispatch thread of this shard is running.
+	 */
+	boolean isDispatchThreadRunning() {
+		return this.thread != null;
+	}
+
+	/**
+	 * @return the number of processable elements waiting for the dispatch
+	 *         thread or being dispatched.
+	 */
+	int getQueueSize() {
+		return this.pending.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		Core.setCurrent(this.workspace.getProcessorPool().getCore());
+		Thread current = Thread.currentThread();
+		while (this.thread == current) {
+			try {
+				this.dispatch(this.queue.take());
+			} catch (InterruptedException e) {
+				// stopped
+			} catch (RuntimeException e) {
+				Logger.exception(e);
+			}
+		}
+	}
+
+}
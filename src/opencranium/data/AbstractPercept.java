@@ -2,9 +2,12 @@ package opencranium.data;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import opencranium.Core;
 import opencranium.cognitive.attention.Context;
@@ -23,59 +26,127 @@ import opencranium.util.collection.SortedElement;
 public abstract class AbstractPercept implements Percept {
 
 	/**
-	 * Activation of the percept.
+	 * Number of bits of each enumeration packed in the metadata.
 	 */
-	private Activation activation;
+	private static final int BITS = 4;
 
 	/**
-	 * When this percept was created.
+	 * Mask of the bits of each enumeration packed in the metadata.
 	 */
-	private Time creationTime;
+	private static final int MASK = (1 << BITS) - 1;
 
 	/**
-	 * The collection of Processable that generates this Percept.
+	 * Position of the type in the metadata.
 	 */
-	private Collection<Processable> generatedBy;
+	private static final int TYPE_SHIFT = 0;
 
 	/**
-	 * Context of this Percept.
+	 * Position of the nature in the metadata.
 	 */
-	private Collection<Context> context;
+	private static final int NATURE_SHIFT = TYPE_SHIFT + BITS;
 
 	/**
-	 * Confidence of the percept.
+	 * Position of the source in the metadata.
 	 */
-	private Confidence confidence;
+	private static final int SOURCE_SHIFT = NATURE_SHIFT + BITS;
 
 	/**
-	 * The nature type of the percept.
+	 * Position of the memory type in the metadata.
 	 */
-	private Nature nature;
+	private static final int MEMORY_TYPE_SHIFT = SOURCE_SHIFT + BITS;
 
 	/**
-	 * The source type of the percept.
+	 * Position of the appraisal type in the metadata.
 	 */
-	private Source source;
+	private static final int APPRAISAL_TYPE_SHIFT = MEMORY_TYPE_SHIFT + BITS;
 
 	/**
-	 * The memory type of the percept.
+	 * Values of the types, values() returns a new array in each call.
 	 */
-	private MemoryType memoryType;
+	private static final Type[] TYPES = Type.values();
 
 	/**
-	 * The appraisal type of the percept.
+	 * Values of the natures.
 	 */
-	private AppraisalType appraisalType;
+	private static final Nature[] NATURES = Nature.values();
 
 	/**
-	 * Id of the percept.
+	 * Values of the sources.
 	 */
-	private Id id;
+	private static final Source[] SOURCES = Source.values();
+
+	/**
+	 * Values of the memory types.
+	 */
+	private static final MemoryType[] MEMORY_TYPES = MemoryType.values();
+
+	/**
+	 * Values of the appraisal types.
+	 */
+	private static final AppraisalType[] APPRAISAL_TYPES = AppraisalType.values();
 
 	/**
-	 * Type of the percept.
+	 * Updater of the confidence, so only the first caller of getConfidence()
+	 * sets it when it was not set yet.
+	 */
+	private static final AtomicReferenceFieldUpdater<AbstractPercept, Confidence> CONFIDENCE = AtomicReferenceFieldUpdater
+			.newUpdater(AbstractPercept.class, Confidence.class, "confidence");
+
+	/**
+	 * Updater of the context, so only the first caller of getContext() sets
+	 * it when it was not set yet.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static final AtomicReferenceFieldUpdater<AbstractPercept, Collection<Context>> CONTEXT = (AtomicReferenceFieldUpdater) AtomicReferenceFieldUpdater
+			.newUpdater(AbstractPercept.class, Collection.class, "context");
+
+	/**
+	 * Updater of the metadata, so the enumerations packed in it can be set
+	 * concurrently without losing any of them.
+	 */
+	private static final AtomicIntegerFieldUpdater<AbstractPercept> METADATA = AtomicIntegerFieldUpdater
+			.newUpdater(AbstractPercept.class, "metadata");
+
+	/**
+	 * Activation of the percept.
+	 */
+	private Activation activation;
+
+	/**
+	 * Tick when this percept was created.
+	 */
+	private int creationTick;
+
+	/**
+	 * Milliseconds of the tick when this percept was created.
+	 */
+	private long creationMilliseconds;
+
+	/**
+	 * The collection of Processable that generates this Percept.
+	 */
+	private Collection<Processable> generatedBy;
+
+	/**
+	 * Context of this Percept, created when it is requested the first time.
+	 */
+	private volatile Collection<Context> context;
+
+	/**
+	 * Confidence of the percept, created when it is requested the first time.
+	 */
+	private volatile Confidence confidence;
+
+	/**
+	 * Ordinals of the type, the nature, the source, the memory type and the
+	 * appraisal type of the percept packed in one value.
+	 */
+	private volatile int metadata;
+
+	/**
+	 * Id of the percept.
 	 */
-	private Type type;
+	private Id id;
 
 	/**
 	 * 
@@ -98,28 +169,69 @@ public abstract class AbstractPercept implements Percept {
 		if (this.id == null) {
 			throw new IllegalArgumentException("The id can not be null.");
 		}
-		this.type = type;
-		if (this.type == null) {
+		if (type == null) {
 			throw new IllegalArgumentException("The type can not be null.");
 		}
+		// the other enumerations are UNKNOWN, the ordinal 0
+		this.metadata = type.ordinal() << TYPE_SHIFT;
 		this.activation = new Activation(Activation.MIN);
-		this.creationTime = new Time(Core.instance().getCurrentTick().getTick(), System.currentTimeMillis());
+		this.stamp();
 		this.generatedBy = generatedBy;
 		if (this.generatedBy == null) {
-			this.generatedBy = new ArrayList<Processable>();
+			this.generatedBy = Collections.emptyList();
 		}
 		this.confidence = confidence;
-		if (this.confidence == null) {
-			this.confidence = new Confidence(Confidence.MIN);
-		}
 		this.context = context;
-		if (this.context == null) {
-			this.context = new ArrayList<Context>();
-		}
-		this.nature = Nature.UNKNOWN;
-		this.source = Source.UNKNOWN;
-		this.memoryType = MemoryType.UNKNOWN;
-		this.appraisalType = AppraisalType.UNKNOWN;
+	}
+
+	/**
+	 * Sets the creation time of the percept to the current tick of the core
+	 * bound to the thread.
+	 */
+	final void stamp() {
+		Time tick = Core.current().getCurrentTick();
+		this.creationTick = tick.getTick();
+		this.creationMilliseconds = tick.getMilliseconds();
+	}
+
+	/**
+	 * Restores the default values of the percept, except its id, its type and
+	 * its creation time, so the instance can be reused.
+	 * 
+	 * @see PooledPercept
+	 */
+	final void renew() {
+		this.activation = new Activation(Activation.MIN);
+		this.generatedBy = Collections.emptyList();
+		this.context = null;
+		this.confidence = null;
+		this.metadata = this.getOrdinal(TYPE_SHIFT) << TYPE_SHIFT;
+	}
+
+	/**
+	 * Returns the ordinal of an enumeration packed in the metadata.
+	 * 
+	 * @param shift
+	 *            Position of the enumeration.
+	 * @return The ordinal.
+	 */
+	private int getOrdinal(int shift) {
+		return (this.metadata >>> shift) & MASK;
+	}
+
+	/**
+	 * Packs the ordinal of an enumeration in the metadata.
+	 * 
+	 * @param shift
+	 *            Position of the enumeration.
+	 * @param ordinal
+	 *            The ordinal.
+	 */
+	private void setOrdinal(int shift, int ordinal) {
+		int current;
+		do {
+			current = this.metadata;
+		} while (!METADATA.compareAndSet(this, current, (current & ~(MASK << shift)) | (ordinal << shift)));
 	}
 
 	/**
@@ -174,7 +286,7 @@ public abstract class AbstractPercept implements Percept {
 	 */
 	@Override
 	public final Type getType() {
-		return this.type;
+		return TYPES[this.getOrdinal(TYPE_SHIFT)];
 	}
 
 	/*
@@ -247,7 +359,17 @@ public abstract class AbstractPercept implements Percept {
 	 */
 	@Override
 	public final Time getCreationTime() {
-		return this.creationTime;
+		return new Time(this.creationTick, this.creationMilliseconds);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see opencranium.cranium.Processable#getCreationTick()
+	 */
+	@Override
+	public final int getCreationTick() {
+		return this.creationTick;
 	}
 
 	/*
@@ -270,6 +392,23 @@ public abstract class AbstractPercept implements Percept {
 		return false;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see opencranium.cranium.Processable#getKind()
+	 */
+	@Override
+	public final Kind getKind() {
+		switch (this.getType()) {
+		case SINGLE_PERCEPT:
+			return Kind.SINGLE_PERCEPT;
+		case COMPLEX_PERCEPT:
+			return Kind.COMPLEX_PERCEPT;
+		default:
+			return Kind.MISSION_PERCEPT;
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -375,7 +514,13 @@ public abstract class AbstractPercept implements Percept {
 	 */
 	@Override
 	public final Confidence getConfidence() {
-		return this.confidence;
+		Confidence current = this.confidence;
+		if (current == null) {
+			// the first thread that sets it wins, so all the callers share it
+			CONFIDENCE.compareAndSet(this, null, new Confidence(Confidence.MIN));
+			current = this.confidence;
+		}
+		return current;
 	}
 
 	/*
@@ -385,7 +530,7 @@ public abstract class AbstractPercept implements Percept {
 	 */
 	@Override
 	public final Nature getNature() {
-		return this.nature;
+		return NATURES[this.getOrdinal(NATURE_SHIFT)];
 	}
 
 	/*
@@ -395,10 +540,10 @@ public abstract class AbstractPercept implements Percept {
 	 */
 	@Override
 	public final void setNature(Nature nature) throws IllegalAccessError {
-		if (this.nature != Nature.UNKNOWN || nature == null) {
+		if (this.getNature() != Nature.UNKNOWN || nature == null) {
 			throw new IllegalAccessError();
 		}
-		this.nature = nature;
+		this.setOrdinal(NATURE_SHIFT, nature.ordinal());
 	}
 
 	/*
@@ -408,7 +553,7 @@ public abstract class AbstractPercept implements Percept {
 	 */
 	@Override
 	public final Source getSource() {
-		return this.source;
+		return SOURCES[this.getOrdinal(SOURCE_SHIFT)];
 	}
 
 	/*
@@ -418,10 +563,10 @@ public abstract class AbstractPercept implements Percept {
 	 */
 	@Override
 	public final void setSource(Source source) throws IllegalAccessError {
-		if (this.source != Source.UNKNOWN || source == null) {
+		if (this.getSource() != Source.UNKNOWN || source == null) {
 			throw new IllegalAccessError();
 		}
-		this.source = source;
+		this.setOrdinal(SOURCE_SHIFT, source.ordinal());
 	}
 
 	/*
@@ -431,7 +576,7 @@ public abstract class AbstractPercept implements Percept {
 	 */
 	@Override
 	public final MemoryType getMemoryType() {
-		return this.memoryType;
+		return MEMORY_TYPES[this.getOrdinal(MEMORY_TYPE_SHIFT)];
 	}
 
 	/*
@@ -443,10 +588,10 @@ public abstract class AbstractPercept implements Percept {
 	 */
 	@Override
 	public final void setMemoryType(MemoryType memoryType) throws IllegalAccessError {
-		if (this.memoryType != MemoryType.UNKNOWN || memoryType == null) {
+		if (this.getMemoryType() != MemoryType.UNKNOWN || memoryType == null) {
 			throw new IllegalAccessError();
 		}
-		this.memoryType = memoryType;
+		this.setOrdinal(MEMORY_TYPE_SHIFT, memoryType.ordinal());
 	}
 
 	/*
@@ -456,7 +601,7 @@ public abstract class AbstractPercept implements Percept {
 	 */
 	@Override
 	public final AppraisalType getAppraisalType() {
-		return this.appraisalType;
+		return APPRAISAL_TYPES[this.getOrdinal(APPRAISAL_TYPE_SHIFT)];
 	}
 
 	/*
@@ -467,10 +612,21 @@ public abstract class AbstractPercept implements Percept {
 	 */
 	@Override
 	public final void setAppraisalType(AppraisalType appraisalType) throws IllegalAccessError {
-		if (this.appraisalType != AppraisalType.UNKNOWN || appraisalType == null) {
+		if (this.getAppraisalType() != AppraisalType.UNKNOWN || appraisalType == null) {
 			throw new IllegalAccessError();
 		}
-		this.appraisalType = appraisalType;
+		this.setOrdinal(APPRAISAL_TYPE_SHIFT, appraisalType.ordinal());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see opencranium.data.Percept#hasContext()
+	 */
+	@Override
+	public final boolean hasContext() {
+		Collection<Context> current = this.context;
+		return current != null && !current.isEmpty();
 	}
 
 	/*
@@ -480,7 +636,12 @@ public abstract class AbstractPercept implements Percept {
 	 */
 	@Override
 	public final Collection<Context> getContext() {
-		return this.context;
+		Collection<Context> current = this.context;
+		if (current == null) {
+			CONTEXT.compareAndSet(this, null, new ArrayList<Context>());
+			current = this.context;
+		}
+		return current;
 	}
 
 	/*
@@ -515,7 +676,7 @@ public abstract class AbstractPercept implements Percept {
 		sb.append(" (").append(this.getType().toString()).append(')');
 		sb.append(" a: ").append(this.getActivation().getValue());
 		sb.append(" c: ").append(this.getConfidence().getValue());
-		sb.append(" ct: ").append(this.getCreationTime().toString());
+		sb.append(" ct: ").append(this.creationTick).append(' ').append(this.creationMilliseconds);
 		sb.append(" nature: ").append(this.getNature().toString());
 		sb.append(" source: ").append(this.getSource().toString());
 		sb.append(" memory: ").append(this.getMemoryType().toString());
@@ -301,6 +301,14 @@ public interface Percept extends Processable {
 	 */
 	public Collection<Context> getContext();
 
+	/**
+	 * Checks if the percept has any context without creating the collection
+	 * of the context when it does not exist yet.
+	 * 
+	 * @return true if the context of the percept is not empty.
+	 */
+	public boolean hasContext();
+
 	/**
 	 * @return The percet's description.
 	 */
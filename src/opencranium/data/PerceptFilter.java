@@ -0,0 +1,216 @@
+package opencranium.data;
+
+import java.util.Collection;
+
+import opencranium.cognitive.attention.Context;
+import opencranium.cranium.Activation;
+import opencranium.cranium.Processable;
+import opencranium.data.Percept.Nature;
+import opencranium.data.Percept.Source;
+import opencranium.data.Percept.Type;
+import opencranium.util.collection.ElementFilter;
+
+/**
+ * A filter of processable elements by their content, used by the
+ * WorkspaceProcessors to select the elements they receive. The filter accepts
+ * the elements with an activation in a range and, for percepts, with a given
+ * type, a given source, a given nature or a context close to a reference
+ * context. The conditions are stored as int values and bit masks over the
+ * enums' ordinals, so the evaluation is cheap. The filter must be configured
+ * before it is registered in a processor.
+ * 
+ * @see opencranium.cranium.WorkspaceProcessor#addInputFilter(ElementFilter)
+ * 
+ * @author Jorge Muñoz
+ * @author Raúl Arrabales
+ */
+public class PerceptFilter implements ElementFilter<Processable> {
+
+	/**
+	 * Mask with all the values of an enum.
+	 */
+	private static final int ALL = -1;
+
+	/**
+	 * Minimum activation accepted.
+	 */
+	private int minimumActivation;
+
+	/**
+	 * Maximum activation accepted.
+	 */
+	private int maximumActivation;
+
+	/**
+	 * Bit mask with the ordinals of the types accepted.
+	 */
+	private int typeMask;
+
+	/**
+	 * Bit mask with the ordinals of the sources accepted.
+	 */
+	private int sourceMask;
+
+	/**
+	 * Bit mask with the ordinals of the natures accepted.
+	 */
+	private int natureMask;
+
+	/**
+	 * Reference context, null if the context is not filtered.
+	 */
+	private Context context;
+
+	/**
+	 * Maximum distance to the reference context.
+	 */
+	private float maximumContextDistance;
+
+	/**
+	 * Default constructor. The filter accepts all the elements.
+	 */
+	public PerceptFilter() {
+		this.minimumActivation = Activation.MIN;
+		this.maximumActivation = Activation.MAX;
+		this.typeMask = ALL;
+		this.sourceMask = ALL;
+		this.natureMask = ALL;
+		this.context = null;
+		this.maximumContextDistance = 0;
+	}
+
+	/**
+	 * Sets the range of activations accepted, both included. Applies to
+	 * actions and percepts.
+	 * 
+	 * @param minimum
+	 *            Minimum activation accepted.
+	 * @param maximum
+	 *            Maximum activation accepted.
+	 */
+	public void setActivationRange(int minimum, int maximum) {
+		if (minimum > maximum) {
+			throw new IllegalArgumentException("The minimum activation cannot be greater than the maximum.");
+		}
+		this.minimumActivation = minimum;
+		this.maximumActivation = maximum;
+	}
+
+	/**
+	 * Sets the types of the percepts accepted. Together with the input classes
+	 * of a processor it allows to subscribe to all the percepts of a type,
+	 * whatever their ids are.
+	 * 
+	 * @param types
+	 *            The types accepted, at least one.
+	 * @see opencranium.cranium.WorkspaceProcessor#isValidInputClass(Class)
+	 */
+	public void setTypes(Type... types) {
+		if (types == null || types.length == 0) {
+			throw new IllegalArgumentException("At least one type must be accepted.");
+		}
+		int mask = 0;
+		for (Type type : types) {
+			mask |= 1 << type.ordinal();
+		}
+		this.typeMask = mask;
+	}
+
+	/**
+	 * Sets the sources of the percepts accepted.
+	 * 
+	 * @param sources
+	 *            The sources accepted, at least one.
+	 */
+	public void setSources(Source... sources) {
+		if (sources == null || sources.length == 0) {
+			throw new IllegalArgumentException("At least one source must be accepted.");
+		}
+		int mask = 0;
+		for (Source source : sources) {
+			mask |= 1 << source.ordinal();
+		}
+		this.sourceMask = mask;
+	}
+
+	/**
+	 * Sets the natures of the percepts accepted.
+	 * 
+	 * @param natures
+	 *            The natures accepted, at least one.
+	 */
+	public void setNatures(Nature... natures) {
+		if (natures == null || natures.length == 0) {
+			throw new IllegalArgumentException("At least one nature must be accepted.");
+		}
+		int mask = 0;
+		for (Nature nature : natures) {
+			mask |= 1 << nature.ordinal();
+		}
+		this.natureMask = mask;
+	}
+
+	/**
+	 * Sets a reference context. Only the percepts with a compatible context
+	 * which distance to the reference context is not greater than the maximum
+	 * distance are accepted.
+	 * 
+	 * @param context
+	 *            The reference context, null to not filter by context.
+	 * @param maximumDistance
+	 *            The maximum distance to the reference context.
+	 * @see Context#distance(Context)
+	 */
+	public void setContext(Context context, float maximumDistance) {
+		this.context = context;
+		this.maximumContextDistance = maximumDistance;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see opencranium.util.collection.ElementFilter#accept(java.lang.Object)
+	 */
+	@Override
+	public boolean accept(Processable element) {
+		int activation = element.getActivation().getValue();
+		if (activation < this.minimumActivation || activation > this.maximumActivation) {
+			return false;
+		}
+		if (element.isPercept()) {
+			Percept percept = (Percept) element;
+			if ((this.typeMask & (1 << percept.getType().ordinal())) == 0) {
+				return false;
+			}
+			if ((this.sourceMask & (1 << percept.getSource().ordinal())) == 0) {
+				return false;
+			}
+			if ((this.natureMask & (1 << percept.getNature().ordinal())) == 0) {
+				return false;
+			}
+			if (this.context != null && (!percept.hasContext() || !this.isCloseContext(percept.getContext()))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks if any of the contexts is close to the reference context.
+	 * 
+	 * @param contexts
+	 *            The contexts of a percept.
+	 * @return true if any context is compatible and close to the reference
+	 *         context.
+	 */
+	private boolean isCloseContext(Collection<Context> contexts) {
+		for (Context other : contexts) {
+			float distance = this.context.distance(other);
+			if (distance >= 0 && distance <= this.maximumContextDistance) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
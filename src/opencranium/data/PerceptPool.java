@@ -0,0 +1,133 @@
+package opencranium.data;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of percepts of the same class, used to reuse the percepts created at
+ * a high rate, like the ones of the sensor skills, instead of allocating new
+ * ones. The free percepts are kept in a bounded queue shared by all the
+ * threads, without locks, so a percept acquired by a sensor thread and
+ * released by a processor thread is reused by the sensor. A percept released
+ * when the queue is full is left to the garbage collector.
+ * 
+ * @see PooledPercept
+ * @see opencranium.cranium.Recyclable
+ * 
+ * @author Jorge Muñoz
+ * @author Raúl Arrabales
+ */
+public abstract class PerceptPool<T extends PooledPercept> {
+
+	/**
+	 * Maximum number of percepts in the free queue.
+	 */
+	private final int capacity;
+
+	/**
+	 * Queue of the free percepts.
+	 */
+	private final ConcurrentLinkedQueue<T> free;
+
+	/**
+	 * Number of percepts in the free queue, or about to be added to it.
+	 */
+	private final AtomicInteger freeSize;
+
+	/**
+	 * Number of percepts created.
+	 */
+	private final AtomicLong created;
+
+	/**
+	 * Number of percepts reused.
+	 */
+	private final AtomicLong reused;
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param capacity
+	 *            Maximum number of percepts in the free queue, greater than
+	 *            0.
+	 */
+	public PerceptPool(final int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("The capacity must be greater than 0.");
+		}
+		this.capacity = capacity;
+		this.free = new ConcurrentLinkedQueue<T>();
+		this.freeSize = new AtomicInteger();
+		this.created = new AtomicLong();
+		this.reused = new AtomicLong();
+	}
+
+	/**
+	 * Creates a new percept of the pool.
+	 * 
+	 * @return The percept, created with this pool.
+	 */
+	protected abstract T create();
+
+	/**
+	 * Returns a percept with one reference and the default values, reused
+	 * from the free queue or created if the queue is empty. The
+	 * creation time of the percept is the current tick.
+	 * 
+	 * @return The percept.
+	 */
+	public T acquire() {
+		T percept = this.free.poll();
+		if (percept == null) {
+			percept = this.create();
+			if (percept.getPool() != this) {
+				throw new PerceptException("The percept was not created with this pool.", percept);
+			}
+			this.created.incrementAndGet();
+		} else {
+			this.freeSize.decrementAndGet();
+			this.reused.incrementAndGet();
+		}
+		percept.acquired();
+		return percept;
+	}
+
+	/**
+	 * Returns a percept released to the free queue, from any thread.
+	 * 
+	 * @param percept
+	 *            The percept, created with this pool.
+	 */
+	@SuppressWarnings("unchecked")
+	void recycle(PooledPercept percept) {
+		// the slot is reserved first, so the queue never exceeds the capacity
+		if (this.freeSize.incrementAndGet() <= this.capacity) {
+			this.free.offer((T) percept);
+		} else {
+			this.freeSize.decrementAndGet();
+		}
+	}
+
+	/**
+	 * @return the maximum number of percepts in the free queue.
+	 */
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * @return the number of percepts created.
+	 */
+	public long getCreated() {
+		return this.created.get();
+	}
+
+	/**
+	 * @return the number of percepts reused.
+	 */
+	public long getReused() {
+		return this.reused.get();
+	}
+
+}
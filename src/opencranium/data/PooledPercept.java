@@ -0,0 +1,124 @@
+package opencranium.data;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import opencranium.cranium.Generators;
+import opencranium.cranium.Processable;
+import opencranium.cranium.Recyclable;
+import opencranium.util.Id;
+
+/**
+ * A percept whose instance is reused by a pool when its last reference is
+ * released. The subclasses must clear their own data in clearData, and set
+ * it again after the percept is acquired from the pool. When it is recycled
+ * the percept releases its references to its generators.
+ * 
+ * @see PerceptPool#acquire()
+ * 
+ * @author Jorge Muñoz
+ * @author Raúl Arrabales
+ */
+public abstract class PooledPercept extends AbstractPercept implements Recyclable {
+
+	/**
+	 * Updater of the references to the percepts.
+	 */
+	private static final AtomicIntegerFieldUpdater<PooledPercept> REFERENCES = AtomicIntegerFieldUpdater
+			.newUpdater(PooledPercept.class, "references");
+
+	/**
+	 * The pool of the percept.
+	 */
+	private final PerceptPool<?> pool;
+
+	/**
+	 * Number of references to the percept, 0 while it is in the pool.
+	 */
+	private volatile int references;
+
+	/**
+	 * Default constructor, only called by the pool. The percepts are obtained
+	 * with the method acquire of the pool.
+	 * 
+	 * @param pool
+	 *            The pool of the percept, cannot be null.
+	 * @param id
+	 *            Id of the percept, cannot be null.
+	 * @param type
+	 *            Type of the percept, cannot be null.
+	 */
+	public PooledPercept(PerceptPool<?> pool, Id id, Type type) {
+		super(id, type);
+		if (pool == null) {
+			throw new IllegalArgumentException("The pool can not be null.");
+		}
+		this.pool = pool;
+	}
+
+	/**
+	 * Clears the data of the subclass when the percept returns to the pool,
+	 * so it does not keep references to other objects.
+	 */
+	protected abstract void clearData();
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see opencranium.cranium.Recyclable#retain()
+	 */
+	@Override
+	public final void retain() {
+		if (REFERENCES.getAndIncrement(this) <= 0) {
+			REFERENCES.decrementAndGet(this);
+			throw new PerceptException("The percept is in the pool.", this);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see opencranium.cranium.Recyclable#release()
+	 */
+	@Override
+	public final void release() {
+		int left = REFERENCES.decrementAndGet(this);
+		if (left < 0) {
+			REFERENCES.incrementAndGet(this);
+			throw new PerceptException("The percept is in the pool.", this);
+		}
+		if (left == 0) {
+			Collection<Processable> generatedBy = this.getGeneratedBy();
+			if (generatedBy instanceof Generators) {
+				((Generators) generatedBy).releaseElements();
+			}
+			this.renew();
+			this.clearData();
+			this.pool.recycle(this);
+		}
+	}
+
+	/**
+	 * Marks the percept as acquired from the pool, with one reference.
+	 */
+	final void acquired() {
+		this.stamp();
+		this.references = 1;
+	}
+
+	/**
+	 * @return the number of references to the percept, 0 while it is in the
+	 *         pool.
+	 */
+	public final int getReferences() {
+		return this.references;
+	}
+
+	/**
+	 * @return the pool of the percept.
+	 */
+	public final PerceptPool<?> getPool() {
+		return this.pool;
+	}
+
+}
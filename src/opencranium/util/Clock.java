@@ -0,0 +1,45 @@
+package opencranium.util;
+
+/**
+ * A source of time. The system clock follows the real time, other clocks can
+ * follow a virtual time to simulate the execution faster than the real time.
+ * 
+ * @see VirtualClock
+ * @see opencranium.Core#setClock(Clock)
+ * 
+ * @author Jorge Muñoz
+ * @author Raúl Arrabales
+ */
+public interface Clock {
+
+	/**
+	 * The clock of the system.
+	 */
+	public static final Clock SYSTEM = new Clock() {
+
+		@Override
+		public long currentTimeMillis() {
+			return System.currentTimeMillis();
+		}
+
+		@Override
+		public long nanoTime() {
+			return System.nanoTime();
+		}
+
+	};
+
+	/**
+	 * @return the current time in milliseconds since the epoch.
+	 * @see System#currentTimeMillis()
+	 */
+	public long currentTimeMillis();
+
+	/**
+	 * @return the current value of a time source in nanoseconds, only valid to
+	 *         measure elapsed time.
+	 * @see System#nanoTime()
+	 */
+	public long nanoTime();
+
+}
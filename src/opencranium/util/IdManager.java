@@ -6,9 +6,12 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 
 import javax.management.OperationsException;
 
@@ -127,6 +130,17 @@ public class IdManager {
 		return identifier;
 	}
 
+	/**
+	 * Returns all the ids of the data base.
+	 * 
+	 * @return A new list with the ids, sorted by their number.
+	 */
+	public List<Id> getIds() {
+		List<Id> ids = new ArrayList<Id>(this.idDBid);
+		Collections.sort(ids);
+		return ids;
+	}
+
 	/**
 	 * Save the ids into a file. A record in the log is stored if the ids are
 	 * not correctly saved.
@@ -0,0 +1,77 @@
+package opencranium.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A clock with a virtual time, it only advances when it is told so. Used to
+ * simulate the execution of the architecture faster than the real time.
+ * 
+ * @see opencranium.Core#simulate(int, long)
+ * 
+ * @author Jorge Muñoz
+ * @author Raúl Arrabales
+ */
+public class VirtualClock implements Clock {
+
+	/**
+	 * Time in milliseconds since the epoch when the clock started.
+	 */
+	private final long origin;
+
+	/**
+	 * Nanoseconds elapsed since the clock started.
+	 */
+	private final AtomicLong elapsed;
+
+	/**
+	 * Default constructor. The clock starts at the current time of the system.
+	 */
+	public VirtualClock() {
+		this(System.currentTimeMillis());
+	}
+
+	/**
+	 * Default constructor.
+	 * 
+	 * @param origin
+	 *            Time in milliseconds since the epoch when the clock starts.
+	 */
+	public VirtualClock(long origin) {
+		this.origin = origin;
+		this.elapsed = new AtomicLong();
+	}
+
+	/**
+	 * Advances the time of the clock.
+	 * 
+	 * @param milliseconds
+	 *            The milliseconds to advance, cannot be negative.
+	 */
+	public void advance(long milliseconds) {
+		if (milliseconds < 0) {
+			throw new IllegalArgumentException("The time cannot go backwards.");
+		}
+		this.elapsed.addAndGet(milliseconds * 1000000L);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see opencranium.util.Clock#currentTimeMillis()
+	 */
+	@Override
+	public long currentTimeMillis() {
+		return this.origin + this.elapsed.get() / 1000000L;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see opencranium.util.Clock#nanoTime()
+	 */
+	@Override
+	public long nanoTime() {
+		return this.elapsed.get();
+	}
+
+}
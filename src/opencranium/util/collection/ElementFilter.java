@@ -0,0 +1,23 @@
+package opencranium.util.collection;
+
+/**
+ * A filter to select elements of a collection.
+ * 
+ * @author Jorge Muñoz
+ * @author Raúl Arrabales
+ * 
+ * @param <E>
+ *            Type of the elements filtered.
+ */
+public interface ElementFilter<E> {
+
+	/**
+	 * Returns whether the element is accepted by the filter.
+	 * 
+	 * @param element
+	 *            The element.
+	 * @return true if the element is accepted, false otherwise.
+	 */
+	public boolean accept(E element);
+
+}
@@ -0,0 +1,30 @@
+package opencranium.util.collection;
+
+import java.util.Iterator;
+
+/**
+ * An operation executed over a locked sorted list while the list is locked. The
+ * list is locked before the operation starts and unlocked when it finishes,
+ * even if the operation throws an exception, so the operation never has to
+ * unlock the list itself.
+ * 
+ * @author Jorge Muñoz
+ * @author Raúl Arrabales
+ * 
+ * @param <E>
+ *            Type of the elements in the list.
+ * @see LockedSortedList#execute(LockedOperation)
+ */
+public interface LockedOperation<E extends SortedElement> {
+
+	/**
+	 * Executes the operation. The iterator is only valid inside this method
+	 * and it is allowed to remove elements of the list.
+	 * 
+	 * @param iterator
+	 *            Iterator of the locked list.
+	 * @return The result of the operation.
+	 */
+	public boolean execute(Iterator<E> iterator);
+
+}
@@ -1,11 +1,16 @@
 package opencranium.util.collection;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * A sorted list with a lock to be thread safe.
+ * A sorted list with a lock to be thread safe. Every modification of the list
+ * increases its version, which is used to create snapshots of the list that can
+ * be iterated without blocking the threads that are adding elements.
  * 
  * @author Jorge Muñoz
  * @author Raúl Arrabales
@@ -25,6 +30,111 @@ public class LockedSortedList<E extends SortedElement> extends SortedList<E> {
 	 */
 	private Object objectLock;
 
+	/**
+	 * Version of the list, increased with every modification.
+	 */
+	private volatile long version;
+
+	/**
+	 * Last snapshot created of the list.
+	 */
+	private volatile Snapshot<E> snapshot;
+
+	/**
+	 * An immutable copy of the list elements in a given version.
+	 * 
+	 * @param <E>
+	 *            Type of the elements in the list.
+	 */
+	private static class Snapshot<E> {
+
+		/**
+		 * Version of the list when the snapshot was created.
+		 */
+		private final long version;
+
+		/**
+		 * Unmodifiable copy of the elements.
+		 */
+		private final List<E> elements;
+
+		/**
+		 * Default constructor.
+		 * 
+		 * @param version
+		 *            Version of the list.
+		 * @param elements
+		 *            Unmodifiable copy of the elements.
+		 */
+		private Snapshot(long version, List<E> elements) {
+			this.version = version;
+			this.elements = elements;
+		}
+
+	}
+
+	/**
+	 * An iterator of the list that records if an element was removed with it,
+	 * so the version is only changed by the operations that modify the list.
+	 * 
+	 * @param <E>
+	 *            Type of the elements in the list.
+	 */
+	private static class TrackingIterator<E> implements Iterator<E> {
+
+		/**
+		 * The iterator of the list.
+		 */
+		private final Iterator<E> iterator;
+
+		/**
+		 * Whether an element was removed.
+		 */
+		private boolean removed;
+
+		/**
+		 * Default constructor.
+		 * 
+		 * @param iterator
+		 *            The iterator of the list.
+		 */
+		private TrackingIterator(Iterator<E> iterator) {
+			this.iterator = iterator;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.Iterator#hasNext()
+		 */
+		@Override
+		public boolean hasNext() {
+			return this.iterator.hasNext();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.Iterator#next()
+		 */
+		@Override
+		public E next() {
+			return this.iterator.next();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.Iterator#remove()
+		 */
+		@Override
+		public void remove() {
+			this.iterator.remove();
+			this.removed = true;
+		}
+
+	}
+
 	/**
 	 * Default constructor with unlimited size.
 	 */
@@ -45,6 +155,8 @@ public class LockedSortedList<E extends SortedElement> extends SortedList<E> {
 	public LockedSortedList(int maximumSize) {
 		super(maximumSize);
 		this.lock = new ReentrantLock();
+		this.version = 0;
+		this.snapshot = new Snapshot<E>(this.version, Collections.<E> emptyList());
 	}
 
 	/*
@@ -60,6 +172,9 @@ public class LockedSortedList<E extends SortedElement> extends SortedList<E> {
 		try {
 			this.lock.lock();
 			added = super.addElement(element);
+			if (added) {
+				this.version++;
+			}
 		} finally {
 			this.lock.unlock();
 		}
@@ -79,6 +194,9 @@ public class LockedSortedList<E extends SortedElement> extends SortedList<E> {
 		try {
 			this.lock.lock();
 			removed = super.removeElement(element);
+			if (removed) {
+				this.version++;
+			}
 		} finally {
 			this.lock.unlock();
 		}
@@ -108,10 +226,12 @@ public class LockedSortedList<E extends SortedElement> extends SortedList<E> {
 	 * @see opencranium.util.collection.SortedList#removeLastElement()
 	 */
 	@Override
-	public void removeLastElement() {
+	public E removeLastElement() {
 		try {
 			this.lock.lock();
-			super.removeLastElement();
+			E element = super.removeLastElement();
+			this.version++;
+			return element;
 		} finally {
 			this.lock.unlock();
 		}
@@ -128,12 +248,75 @@ public class LockedSortedList<E extends SortedElement> extends SortedList<E> {
 		try {
 			this.lock.lock();
 			element = super.getFirstElement();
+			this.version++;
 		} finally {
 			this.lock.unlock();
 		}
 		return element;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see opencranium.util.collection.SortedList#drainTo(E[], int)
+	 */
+	@Override
+	public int drainTo(E[] array, int maximum) {
+		int count = 0;
+		try {
+			this.lock.lock();
+			count = super.drainTo(array, maximum);
+			if (count > 0) {
+				this.version++;
+			}
+		} finally {
+			this.lock.unlock();
+		}
+		return count;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see opencranium.util.collection.SortedList#drainLastTo(E[], int)
+	 */
+	@Override
+	public int drainLastTo(E[] array, int maximum) {
+		int count = 0;
+		try {
+			this.lock.lock();
+			count = super.drainLastTo(array, maximum);
+			if (count > 0) {
+				this.version++;
+			}
+		} finally {
+			this.lock.unlock();
+		}
+		return count;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * opencranium.util.collection.SortedList#drainWhile(opencranium.util.collection
+	 * .ElementFilter, E[])
+	 */
+	@Override
+	public int drainWhile(ElementFilter<? super E> filter, E[] array) {
+		int count = 0;
+		try {
+			this.lock.lock();
+			count = super.drainWhile(filter, array);
+			if (count > 0) {
+				this.version++;
+			}
+		} finally {
+			this.lock.unlock();
+		}
+		return count;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -147,12 +330,15 @@ public class LockedSortedList<E extends SortedElement> extends SortedList<E> {
 	/**
 	 * Retrieves the iterator of this list and locks the list, to unlock it the
 	 * program must call this.unlock(Object) with the same object the list was
-	 * locked.
+	 * locked. All the producers are blocked until the list is unlocked, use
+	 * snapshot() to only read the list or execute(LockedOperation) to modify it.
 	 * 
 	 * @param object
 	 *            Object used to lock the list. It is not allowed to be null.
 	 * @return Iterator of the list, null if the object is null.
 	 * @see LockedSortedList#unlock(Object)
+	 * @see LockedSortedList#snapshot()
+	 * @see LockedSortedList#execute(LockedOperation)
 	 */
 	public Iterator<E> iterator(Object object) {
 		Iterator<E> iterator = null;
@@ -177,12 +363,80 @@ public class LockedSortedList<E extends SortedElement> extends SortedList<E> {
 		boolean unlocked = false;
 		if (object != null && this.objectLock == object) {
 			this.objectLock = null;
+			// the iterator could have removed elements
+			this.version++;
 			this.lock.unlock();
 			unlocked = true;
 		}
 		return unlocked;
 	}
 
+	/**
+	 * Executes an operation over the list while it is locked. The list is
+	 * always unlocked when the operation finishes, even if it throws an
+	 * exception. The version only changes if the operation modifies the list,
+	 * so the read only operations do not invalidate the snapshot.
+	 * 
+	 * @param operation
+	 *            The operation to execute, cannot be null.
+	 * @return The result of the operation.
+	 */
+	public boolean execute(LockedOperation<E> operation) {
+		boolean result = false;
+		TrackingIterator<E> iterator = null;
+		try {
+			this.lock.lock();
+			iterator = new TrackingIterator<E>(super.iterator());
+			result = operation.execute(iterator);
+		} finally {
+			// the elements added with the list change the version themselves
+			if (iterator != null && iterator.removed) {
+				this.version++;
+			}
+			this.lock.unlock();
+		}
+		return result;
+	}
+
+	/**
+	 * Returns an unmodifiable copy of the elements of the list in its current
+	 * version. The copy is only created when the list changed since the last
+	 * snapshot, and it can be iterated without blocking the list.
+	 * 
+	 * @return An unmodifiable copy of the elements of the list.
+	 */
+	public List<E> snapshot() {
+		Snapshot<E> current = this.snapshot;
+		if (current.version != this.version) {
+			try {
+				this.lock.lock();
+				current = this.snapshot;
+				if (current.version != this.version) {
+					List<E> elements = new ArrayList<E>(super.getSize());
+					Iterator<E> iterator = super.iterator();
+					while (iterator.hasNext()) {
+						elements.add(iterator.next());
+					}
+					current = new Snapshot<E>(this.version, Collections.unmodifiableList(elements));
+					this.snapshot = current;
+				}
+			} finally {
+				this.lock.unlock();
+			}
+		}
+		return current.elements;
+	}
+
+	/**
+	 * Returns the version of the list. The version changes every time the list
+	 * is modified.
+	 * 
+	 * @return The version of the list.
+	 */
+	public long getVersion() {
+		return this.version;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -193,6 +447,7 @@ public class LockedSortedList<E extends SortedElement> extends SortedList<E> {
 		try {
 			this.lock.lock();
 			super.clear();
+			this.version++;
 		} finally {
 			this.lock.unlock();
 		}
@@ -118,9 +118,11 @@ public class SortedList<E extends SortedElement> {
 	/**
 	 * Removes the last element of the list, an exception is thrown if it is
 	 * empty.
+	 * 
+	 * @return The element removed.
 	 */
-	public void removeLastElement() {
-		this.elements.removeLast();
+	public E removeLastElement() {
+		return this.elements.removeLast();
 	}
 
 	/**
@@ -133,6 +135,68 @@ public class SortedList<E extends SortedElement> {
 		return this.elements.removeFirst();
 	}
 
+	/**
+	 * Retrieves and removes the first elements in the sorted list and stores
+	 * them in the array, in order. No more elements than the maximum or the
+	 * length of the array are removed.
+	 * 
+	 * @param array
+	 *            Array where the elements are stored.
+	 * @param maximum
+	 *            Maximum number of elements to remove.
+	 * @return The number of elements removed and stored in the array.
+	 */
+	public int drainTo(E[] array, int maximum) {
+		int limit = Math.min(maximum, array.length);
+		int count = 0;
+		while (count < limit && !this.elements.isEmpty()) {
+			array[count] = this.elements.removeFirst();
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Retrieves and removes the last elements in the sorted list and stores
+	 * them in the array, the last one first. No more elements than the maximum
+	 * or the length of the array are removed.
+	 * 
+	 * @param array
+	 *            Array where the elements are stored.
+	 * @param maximum
+	 *            Maximum number of elements to remove.
+	 * @return The number of elements removed and stored in the array.
+	 */
+	public int drainLastTo(E[] array, int maximum) {
+		int limit = Math.min(maximum, array.length);
+		int count = 0;
+		while (count < limit && !this.elements.isEmpty()) {
+			array[count] = this.elements.removeLast();
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Retrieves and removes the first elements in the sorted list while they
+	 * are accepted by the filter, and stores them in the array, in order. No
+	 * more elements than the length of the array are removed.
+	 * 
+	 * @param filter
+	 *            Filter that the first element must accept to be removed.
+	 * @param array
+	 *            Array where the elements are stored.
+	 * @return The number of elements removed and stored in the array.
+	 */
+	public int drainWhile(ElementFilter<? super E> filter, E[] array) {
+		int count = 0;
+		while (count < array.length && !this.elements.isEmpty() && filter.accept(this.elements.peekFirst())) {
+			array[count] = this.elements.removeFirst();
+			count++;
+		}
+		return count;
+	}
+
 	/**
 	 * Returns the size of the list.
 	 * 
@@ -0,0 +1,156 @@
+package test.opencranium;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+import opencranium.Checkpoint;
+import opencranium.Core;
+import opencranium.command.Action.Priority;
+import opencranium.cranium.Activation;
+import opencranium.cranium.Processable;
+import opencranium.cranium.ProcessableCodec;
+import opencranium.util.Id;
+import opencranium.util.Time;
+
+import org.junit.Test;
+
+import test.opencranium.cera.EmptyCeraWorkspaceProcessor;
+import test.opencranium.command.EmptyAction;
+import test.opencranium.data.EmptyPercept;
+
+/**
+ * @author Jorge Muñoz
+ */
+public class CheckpointTest extends TestCase {
+
+	private static class PerceptCodec implements ProcessableCodec {
+
+		@Override
+		public void encode(Processable processable, ByteBuffer buffer) {
+			buffer.putInt(processable.getActivation().getValue());
+		}
+
+		@Override
+		public Processable decode(Id id, ByteBuffer buffer) {
+			EmptyPercept percept = new EmptyPercept();
+			percept.getActivation().setValue(buffer.getInt());
+			return percept;
+		}
+
+	}
+
+	@Test
+	public void testSaveRestore() throws IOException {
+		Core core = new Core(false, 1);
+		EmptyCeraWorkspaceProcessor processor = new EmptyCeraWorkspaceProcessor(EmptyCeraWorkspaceProcessor.ID);
+		core.getPhysicalLayer().registerProcessor(processor);
+		for (int i = 0; i < 5; i++) {
+			EmptyPercept percept = new EmptyPercept();
+			percept.getActivation().setValue(100 * i);
+			processor.addProcessable(percept);
+		}
+		processor.addProcessable(new EmptyAction(Priority.MED));
+		processor.memory = new Processable[] { new EmptyPercept(), null };
+		core.getPhysicalLayer().setActivationThreshold(new Activation(321));
+		core.setCurrentTick(new Time(42, 1234));
+
+		Checkpoint checkpoint = new Checkpoint();
+		checkpoint.registerCodec(EmptyPercept.ID, new PerceptCodec());
+		File file = File.createTempFile("checkpoint", ".bin");
+		try {
+			assertTrue(checkpoint.save(core, file));
+			assertEquals(6, checkpoint.getElements());
+			// the action has no codec
+			assertEquals(1, checkpoint.getSkipped());
+
+			Core restored = new Core(false, 1);
+			EmptyCeraWorkspaceProcessor copy = new EmptyCeraWorkspaceProcessor(EmptyCeraWorkspaceProcessor.ID);
+			restored.getPhysicalLayer().registerProcessor(copy);
+			// the elements waiting are replaced by the restored ones
+			copy.addProcessable(new EmptyAction(Priority.HIGH));
+			assertTrue(checkpoint.restore(restored, file));
+			assertEquals(6, checkpoint.getElements());
+			assertEquals(42, restored.getCurrentTick().getTick());
+			assertEquals(1234, restored.getCurrentTick().getMilliseconds());
+			assertEquals(321, restored.getPhysicalLayer().getActivationThreshold().getValue());
+			Processable[] queue = copy.getQueued();
+			assertEquals(5, queue.length);
+			assertEquals(400, queue[0].getActivation().getValue());
+			assertEquals(2, copy.memory.length);
+			assertNotNull(copy.memory[0]);
+			assertNull(copy.memory[1]);
+
+			// without the processor its elements are skipped
+			assertTrue(checkpoint.restore(new Core(false, 1), file));
+			assertEquals(0, checkpoint.getElements());
+			assertEquals(6, checkpoint.getSkipped());
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testRestoreCorrupted() throws IOException {
+		Core core = new Core(false, 1);
+		EmptyCeraWorkspaceProcessor processor = new EmptyCeraWorkspaceProcessor(EmptyCeraWorkspaceProcessor.ID);
+		core.getPhysicalLayer().registerProcessor(processor);
+		for (int i = 0; i < 3; i++) {
+			processor.addProcessable(new EmptyPercept());
+		}
+		core.setCurrentTick(new Time(42, 1234));
+		Checkpoint checkpoint = new Checkpoint();
+		checkpoint.registerCodec(EmptyPercept.ID, new PerceptCodec());
+		File file = File.createTempFile("checkpoint", ".bin");
+		try {
+			assertTrue(checkpoint.save(core, file));
+			byte[] bytes = readFile(file);
+
+			// truncated in the last element, nothing is restored
+			writeFile(file, bytes, bytes.length - 2);
+			Core restored = new Core(false, 1);
+			EmptyCeraWorkspaceProcessor copy = new EmptyCeraWorkspaceProcessor(EmptyCeraWorkspaceProcessor.ID);
+			restored.getPhysicalLayer().registerProcessor(copy);
+			Time tick = restored.getCurrentTick();
+			assertFalse(checkpoint.restore(restored, file));
+			assertEquals(tick.getTick(), restored.getCurrentTick().getTick());
+			assertEquals(0, copy.getQueued().length);
+
+			// negative length of the name of the first id
+			ByteBuffer.wrap(bytes).putInt(16, -5);
+			writeFile(file, bytes, bytes.length);
+			assertFalse(checkpoint.restore(restored, file));
+			assertEquals(tick.getTick(), restored.getCurrentTick().getTick());
+			assertEquals(0, copy.getQueued().length);
+		} finally {
+			file.delete();
+		}
+	}
+
+	private static byte[] readFile(File file) throws IOException {
+		byte[] bytes = new byte[(int) file.length()];
+		FileInputStream fis = new FileInputStream(file);
+		try {
+			int read = 0;
+			while (read < bytes.length) {
+				read += fis.read(bytes, read, bytes.length - read);
+			}
+		} finally {
+			fis.close();
+		}
+		return bytes;
+	}
+
+	private static void writeFile(File file, byte[] bytes, int length) throws IOException {
+		FileOutputStream fos = new FileOutputStream(file);
+		try {
+			fos.write(bytes, 0, length);
+		} finally {
+			fos.close();
+		}
+	}
+
+}
@@ -2,9 +2,17 @@ package test.opencranium;
 
 import junit.framework.TestCase;
 import opencranium.Core;
+import opencranium.OpenCraniumException;
+import opencranium.cera.Layer;
+import opencranium.cranium.ProcessorThreadPool;
+import opencranium.cranium.Processable.Kind;
+import opencranium.util.Time;
+import opencranium.util.VirtualClock;
 
 import org.junit.Test;
 
+import test.opencranium.data.EmptyPercept;
+
 /**
  * @author Jorge Muñoz
  */
@@ -15,4 +23,86 @@ public class CoreTest extends TestCase {
 		Core.instance();
 	}
 
+	@Test
+	public void testSeveralCores() {
+		Core first = new Core(false, 1);
+		Core second = new Core(true, 1);
+		assertNotSame(first.getCoreLayer(), second.getCoreLayer());
+		assertSame(first.getCoreLayer(), first.getRoute(Layer.Type.MISSION_LAYER, Kind.COMPLEX_ACTION)[1]);
+
+		first.setCurrentTick(new Time(5, 0));
+		second.setCurrentTick(new Time(7, 0));
+		assertSame(Core.instance(), Core.current());
+		try {
+			Core.setCurrent(first);
+			assertSame(first, Core.current());
+			assertEquals(5, new EmptyPercept().getCreationTime().getTick());
+			Core.setCurrent(second);
+			assertEquals(7, new EmptyPercept().getCreationTime().getTick());
+			assertEquals(7, new EmptyPercept().getCreationTick());
+		} finally {
+			Core.setCurrent(null);
+		}
+		assertSame(Core.instance(), Core.current());
+	}
+
+	@Test
+	public void testBuilder() {
+		Core core = Core.builder().multiPool(true).threads(1).build();
+		assertNotNull(core.getCoreLayer());
+		ProcessorThreadPool pool = new ProcessorThreadPool(1);
+		core = Core.builder().threadPool(pool).build();
+		assertSame(core, pool.getCore());
+		try {
+			Core.builder().threadPool(pool).multiPool(true).build();
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@Test
+	public void testSimulate() {
+		Core core = new Core(false, 1);
+		try {
+			core.simulate(1, 10);
+			fail();
+		} catch (OpenCraniumException exception) {
+		}
+		VirtualClock clock = new VirtualClock(1000);
+		core.setClock(clock);
+		assertTrue(core.isIdle());
+		long start = System.currentTimeMillis();
+		assertEquals(1000, core.simulate(1000, 60000).getTick());
+		// a thousand minutes are simulated without waiting
+		assertTrue(System.currentTimeMillis() - start < 60000);
+		assertEquals(1000 + 60000000L, clock.currentTimeMillis());
+		assertEquals(1000 + 60000000L, core.getCurrentTick().getMilliseconds());
+		try {
+			Core.setCurrent(core);
+			assertEquals(1000 + 60000000L, new EmptyPercept().getCreationTime().getMilliseconds());
+		} finally {
+			Core.setCurrent(null);
+		}
+	}
+
+	@Test
+	public void testTickSnapshot() {
+		Core core = new Core(false, 1);
+		core.setClock(new VirtualClock(500));
+		Time previous = core.getCurrentTick();
+		Time tick = core.nextTick();
+		assertNotSame(previous, tick);
+		assertSame(tick, core.getCurrentTick());
+		assertEquals(tick.getTick() - 1, previous.getTick());
+		assertEquals(500, tick.getMilliseconds());
+		try {
+			Core.setCurrent(core);
+			Time creation = new EmptyPercept().getCreationTime();
+			assertEquals(tick.getTick(), creation.getTick());
+			assertEquals(500, creation.getMilliseconds());
+		} finally {
+			Core.setCurrent(null);
+		}
+	}
+
 }
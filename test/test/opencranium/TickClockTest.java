@@ -0,0 +1,46 @@
+package test.opencranium;
+
+import junit.framework.TestCase;
+import opencranium.Core;
+import opencranium.OpenCraniumException;
+import opencranium.TickClock;
+
+import org.junit.Test;
+
+/**
+ * @author Jorge Muñoz
+ */
+public class TickClockTest extends TestCase {
+
+	@Test
+	public void testTicks() throws InterruptedException {
+		Core core = new Core(false, 1);
+		TickClock clock = new TickClock(core, 10);
+		try {
+			clock.stop();
+			fail();
+		} catch (OpenCraniumException exception) {
+		}
+		clock.start();
+		Thread.sleep(205);
+		clock.stop();
+		assertFalse(clock.isRunning());
+
+		long ticks = clock.getTicks();
+		// the ticks do not drift, the missed ones are counted
+		assertTrue(ticks + clock.getMissedTicks() >= 19 && ticks + clock.getMissedTicks() <= 22);
+		assertEquals(ticks, core.getCurrentTick().getTick());
+		long histogram = 0;
+		for (long count : clock.getJitterHistogram()) {
+			histogram += count;
+		}
+		assertEquals(ticks - 1, histogram);
+
+		try {
+			new TickClock(core, 0);
+			fail();
+		} catch (IllegalArgumentException exception) {
+		}
+	}
+
+}
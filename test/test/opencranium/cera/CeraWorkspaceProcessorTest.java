@@ -1,6 +1,11 @@
 package test.opencranium.cera;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
 import junit.framework.TestCase;
+import opencranium.cranium.Activation;
+import opencranium.cranium.Processable;
 import opencranium.data.Percept;
 import opencranium.data.Percept.MemoryType;
 import opencranium.data.Percept.Nature;
@@ -46,4 +51,87 @@ public class CeraWorkspaceProcessorTest extends TestCase {
 		assertSame(MemoryType.SHORT_TERM, p.getMemoryType());
 	}
 
+	@Test
+	public void testSharedProvenance() {
+		EmptyCeraWorkspaceProcessor ecwp = new EmptyCeraWorkspaceProcessor();
+		EmptyPercept memory1 = new EmptyPercept();
+		memory1.setNature(Nature.REAL);
+		ecwp.memory = new Processable[] { memory1, null };
+		EmptyPercept ep1 = new EmptyPercept();
+		EmptyPercept ep2 = new EmptyPercept();
+
+		ecwp.manageAll(new Processable[] { ep1, ep2 });
+		assertSame(ep1.getGeneratedBy(), ep2.getGeneratedBy());
+		assertEquals(1, ep1.getGeneratedBy().size());
+		assertSame(memory1, ep1.getGeneratedBy().iterator().next());
+		assertSame(Nature.REAL, ep2.getNature());
+		try {
+			ep1.getGeneratedBy().clear();
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// ok
+		}
+
+		// the same memory shares the same provenance
+		EmptyPercept ep3 = new EmptyPercept();
+		ecwp.manageAll(new Processable[] { ep3 });
+		assertSame(ep1.getGeneratedBy(), ep3.getGeneratedBy());
+
+		EmptyPercept memory2 = new EmptyPercept();
+		memory2.setNature(Nature.INVENTED);
+		memory2.setActivation(new Activation(Activation.MAX));
+		ecwp.memory[1] = memory2;
+		EmptyPercept ep4 = new EmptyPercept();
+		ecwp.manageAll(new Processable[] { ep4 });
+		assertEquals(2, ep4.getGeneratedBy().size());
+		assertSame(Nature.INVENTED, ep4.getNature());
+	}
+
+	@Test
+	public void testAllocationFreeResults() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+			// the allocated bytes cannot be measured in this JVM
+			return;
+		}
+		com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+		if (!allocations.isThreadAllocatedMemorySupported() || !allocations.isThreadAllocatedMemoryEnabled()) {
+			return;
+		}
+		EmptyCeraWorkspaceProcessor ecwp = new EmptyCeraWorkspaceProcessor();
+		ecwp.memory = new Processable[3];
+		for (int i = 0; i < ecwp.memory.length; i++) {
+			EmptyPercept ep = new EmptyPercept();
+			ep.setNature(Nature.REAL);
+			ecwp.memory[i] = ep;
+		}
+		int rounds = 20;
+		int size = 1000;
+		Processable[][] warmUp = this.createResults(rounds, size);
+		for (Processable[] results : warmUp) {
+			ecwp.manageAll(results);
+		}
+		Processable[][] measured = this.createResults(rounds, size);
+		long threadId = Thread.currentThread().getId();
+		long before = allocations.getThreadAllocatedBytes(threadId);
+		for (Processable[] results : measured) {
+			ecwp.manageAll(results);
+		}
+		long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+		// only a constant allocation by batch is allowed, none by result
+		assertTrue("Allocated " + allocated + " bytes", allocated < rounds * size);
+		assertSame(Nature.REAL, ((Percept) measured[0][0]).getNature());
+		assertSame(measured[0][0].getGeneratedBy(), measured[rounds - 1][size - 1].getGeneratedBy());
+	}
+
+	private Processable[][] createResults(int rounds, int size) {
+		Processable[][] results = new Processable[rounds][size];
+		for (int i = 0; i < rounds; i++) {
+			for (int j = 0; j < size; j++) {
+				results[i][j] = new EmptyPercept();
+			}
+		}
+		return results;
+	}
+
 }
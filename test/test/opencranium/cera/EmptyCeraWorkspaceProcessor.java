@@ -24,6 +24,8 @@ public class EmptyCeraWorkspaceProcessor extends CeraWorkspaceProcessor {
 	public Processable lastPercept;
 	public Processable lastAction;
 
+	public Processable[] memory;
+
 	private int count;
 
 	public EmptyCeraWorkspaceProcessor() {
@@ -58,6 +60,10 @@ public class EmptyCeraWorkspaceProcessor extends CeraWorkspaceProcessor {
 		super.setLayer(layer);
 	}
 
+	public void manageAll(Processable[] results) {
+		super.manageResults(results);
+	}
+
 	@Override
 	protected Processable[] execute(Percept percept, long milliseconds) {
 		lastProcessable = new EmptyPercept();
@@ -77,9 +83,16 @@ public class EmptyCeraWorkspaceProcessor extends CeraWorkspaceProcessor {
 	public void cleanMemory() {
 	}
 
+	@Override
+	public void setSortTermMemory(Processable[] memory) {
+		this.memory = memory;
+	}
+
 	@Override
 	public Processable[] getSortTermMemory() {
-		if (count == 1) {
+		if (memory != null) {
+			return memory;
+		} else if (count == 1) {
 			return null;
 		} else if (count == 2) {
 			Processable[] p = new Processable[1];
@@ -16,6 +16,12 @@ public class EmptyLayer extends Layer {
 
 	public Processable lastSubmitted;
 
+	public int queueDepth;
+
+	public long cpuNanoTime;
+
+	public float shedFraction;
+
 	public static final Id ID = IdManager.instance().getId("EmptyLayer", EmptyLayer.class);
 
 	public EmptyLayer() {
@@ -31,6 +37,22 @@ public class EmptyLayer extends Layer {
 		this.lastSubmitted = processable;
 	}
 
+	@Override
+	protected int getQueueDepth() {
+		return this.queueDepth;
+	}
+
+	@Override
+	protected long getCpuNanoTime() {
+		return this.cpuNanoTime;
+	}
+
+	@Override
+	protected int shedQueued(float fraction) {
+		this.shedFraction = fraction;
+		return (int) Math.ceil(this.queueDepth * fraction);
+	}
+
 	@Override
 	public void reset() {
 		super.reset();
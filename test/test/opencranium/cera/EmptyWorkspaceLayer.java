@@ -20,4 +20,9 @@ public class EmptyWorkspaceLayer extends WorkspaceLayer {
 	protected void layerManageResult(Processable processable) {
 	}
 
+	@Override
+	protected boolean isPerResultRouting() {
+		return true;
+	}
+
 }
@@ -0,0 +1,122 @@
+package test.opencranium.cera;
+
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+import opencranium.cera.LayerMailbox;
+import opencranium.cera.LayerMailbox.Backpressure;
+import opencranium.cera.Layer.Type;
+import opencranium.cranium.Activation;
+import opencranium.cranium.Processable;
+
+import org.junit.Test;
+
+import test.opencranium.cranium.EmptyProcessable;
+
+/**
+ * @author Jorge Muñoz
+ */
+public class LayerMailboxTest extends TestCase {
+
+	@Test
+	public void testSynchronous() {
+		BlockingLayer target = new BlockingLayer();
+		EmptyLayer source = new EmptyLayer(Type.PHYSICAL_LAYER);
+		target.release.countDown();
+		Processable p1 = processable(1, 100);
+		target.postProcessable(p1, source);
+		assertEquals(1, target.submitted.size());
+		assertSame(p1, target.submitted.get(0));
+	}
+
+	@Test
+	public void testDropLowest() throws InterruptedException {
+		BlockingLayer target = new BlockingLayer();
+		EmptyLayer source = new EmptyLayer(Type.PHYSICAL_LAYER);
+		LayerMailbox mailbox = new LayerMailbox(2, Backpressure.DROP_LOWEST);
+		target.setMailbox(mailbox);
+		target.postProcessable(processable(0, 100), source);
+		target.taken.await();
+
+		Processable p1 = processable(1, 300);
+		Processable p2 = processable(2, 100);
+		Processable p3 = processable(3, 200);
+		Processable p4 = processable(4, 50);
+		target.postProcessable(p1, source);
+		target.postProcessable(p2, source);
+		target.postProcessable(p3, source);
+		target.postProcessable(p4, source);
+		// the first element is still being submitted
+		assertEquals(3, mailbox.getDepth());
+		assertEquals(2, mailbox.getDepth(Type.PHYSICAL_LAYER));
+		assertEquals(0, mailbox.getDepth(Type.MISSION_LAYER));
+		assertEquals(2, mailbox.getMaximumDepth(Type.PHYSICAL_LAYER));
+		assertEquals(5, mailbox.getPosted(Type.PHYSICAL_LAYER));
+		assertEquals(2, mailbox.getDropped(Type.PHYSICAL_LAYER));
+
+		target.release.countDown();
+		target.setMailbox(null);
+		assertNull(target.getMailbox());
+		assertEquals(0, mailbox.getDepth());
+		assertEquals(3, target.submitted.size());
+		assertSame(p1, target.submitted.get(1));
+		assertSame(p3, target.submitted.get(2));
+	}
+
+	@Test
+	public void testCoalesce() throws InterruptedException {
+		BlockingLayer target = new BlockingLayer();
+		EmptyLayer source = new EmptyLayer(Type.MISSION_LAYER);
+		LayerMailbox mailbox = new LayerMailbox(10, Backpressure.COALESCE);
+		target.setMailbox(mailbox);
+		target.postProcessable(processable(0, 100), source);
+		target.taken.await();
+
+		Processable p1 = processable(1, 300);
+		Processable p2 = processable(2, 100);
+		Processable p1b = processable(1, 400);
+		target.postProcessable(p1, source);
+		target.postProcessable(p2, source);
+		target.postProcessable(p1b, source);
+		assertEquals(3, mailbox.getDepth());
+		assertEquals(1, mailbox.getCoalesced(Type.MISSION_LAYER));
+		assertEquals(0, mailbox.getDropped(Type.MISSION_LAYER));
+
+		target.release.countDown();
+		target.setMailbox(null);
+		assertEquals(3, target.submitted.size());
+		assertSame(p2, target.submitted.get(1));
+		assertSame(p1b, target.submitted.get(2));
+	}
+
+	private static Processable processable(int value, int activation) {
+		Processable processable = new EmptyProcessable(value, value);
+		processable.setActivation(new Activation(activation));
+		return processable;
+	}
+
+	private static class BlockingLayer extends EmptyLayer {
+
+		public List<Processable> submitted = new Vector<Processable>();
+
+		public CountDownLatch taken = new CountDownLatch(1);
+
+		public CountDownLatch release = new CountDownLatch(1);
+
+		@Override
+		protected void layerSubmitProcessable(Processable processable) {
+			super.layerSubmitProcessable(processable);
+			this.submitted.add(processable);
+			this.taken.countDown();
+			try {
+				this.release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+	}
+
+}
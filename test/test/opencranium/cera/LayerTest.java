@@ -1,6 +1,12 @@
 package test.opencranium.cera;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
 import junit.framework.TestCase;
+import opencranium.cera.ActivationThresholdController;
+import opencranium.cera.Layer.ImplicitProcessing;
 import opencranium.cera.Layer.Type;
 import opencranium.command.Action.Priority;
 import opencranium.cranium.Activation;
@@ -8,6 +14,8 @@ import opencranium.cranium.Processable;
 import opencranium.data.Percept.AppraisalType;
 import opencranium.data.Percept.Source;
 import opencranium.util.ElementProcessingTime;
+import opencranium.util.Id;
+import opencranium.util.IdManager;
 import opencranium.util.StatisticsManager;
 import opencranium.util.Time;
 
@@ -170,6 +178,190 @@ public class LayerTest extends TestCase {
 		assertNull(el.lastSubmitted);
 	}
 
+	@Test
+	public void testSubmitProcessables() {
+		EmptyLayer el = new EmptyLayer();
+		el.setActivationThreshold(new Activation((Activation.MAX + Activation.MIN) / 2));
+		Processable high = new EmptyProcessable(0, 0);
+		high.setActivation(new Activation(Activation.MAX));
+		Processable low = new EmptyProcessable(1, 1);
+		low.setActivation(new Activation(Activation.MIN));
+
+		el.systemTick(new Time(1, 10));
+		el.submitProcessables(new Processable[] { high, low });
+		assertSame(high, el.lastSubmitted);
+		el.lastSubmitted = null;
+		el.submitProcessables(new Processable[] { low });
+		assertNull(el.lastSubmitted);
+		el.systemTick(new Time(2, 20));
+
+		assertEquals(1, el.getLastNumberOfProcessableElementsSubmitted());
+		assertEquals(3, el.getLastNumberOfTotalProcessableElementsSubmitted());
+		assertEquals(Activation.MAX, el.getLastTickMaximumActivation().getValue());
+		assertEquals(Activation.MIN, el.getLastTickMiniumActivation().getValue());
+	}
+
+	@Test
+	public void testConcurrentStatistics() throws InterruptedException {
+		final EmptyLayer el = new EmptyLayer();
+		el.setActivationThreshold(new Activation((Activation.MAX + Activation.MIN) / 2));
+		final int threads = 4;
+		final int submissions = 5000;
+		el.systemTick(new Time(1, 10));
+		Thread[] submitters = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			submitters[i] = new Thread() {
+				@Override
+				public void run() {
+					Processable high = new EmptyProcessable(0, 0);
+					high.setActivation(new Activation(Activation.MAX));
+					Processable low = new EmptyProcessable(1, 1);
+					low.setActivation(new Activation(Activation.MIN));
+					for (int j = 0; j < submissions; j++) {
+						el.submitProcessable(high);
+						el.submitProcessable(low);
+					}
+				}
+			};
+			submitters[i].start();
+		}
+		for (Thread submitter : submitters) {
+			submitter.join();
+		}
+		el.systemTick(new Time(2, 20));
+
+		assertEquals(threads * submissions, el.getLastNumberOfProcessableElementsSubmitted());
+		assertEquals(threads * submissions * 2, el.getLastNumberOfTotalProcessableElementsSubmitted());
+		assertEquals(Activation.MAX, el.getLastTickAverageActivation().getValue());
+		assertEquals((Activation.MAX + Activation.MIN) / 2, el.getLastTickTotalAverageActivation().getValue());
+		assertEquals(Activation.MAX, el.getLastTickMaximumActivation().getValue());
+		assertEquals(Activation.MIN, el.getLastTickMiniumActivation().getValue());
+	}
+
+	@Test
+	public void testActivationThresholdController() {
+		EmptyLayer el = new EmptyLayer();
+		ActivationThresholdController controller = new ActivationThresholdController(0.5f, 10, 50);
+		el.setActivationThresholdController(controller);
+		el.setActivationThreshold(new Activation(100));
+		Processable high = new EmptyProcessable(0, 0);
+		high.setActivation(new Activation(600));
+
+		el.systemTick(new Time(1, 10));
+		el.submitProcessable(high);
+		el.queueDepth = 40;
+		el.systemTick(new Time(2, 20));
+		assertEquals(4f, controller.getLastLoad());
+		assertEquals(150, el.getActivationThreshold().getValue());
+
+		el.submitProcessable(high);
+		el.systemTick(new Time(3, 30));
+		assertEquals(200, el.getActivationThreshold().getValue());
+
+		// the threshold is not raised without submissions
+		el.systemTick(new Time(4, 40));
+		assertEquals(200, el.getActivationThreshold().getValue());
+
+		// nor over the average activation of the accepted elements
+		el.setActivationThreshold(new Activation(580));
+		el.submitProcessable(high);
+		el.systemTick(new Time(5, 50));
+		assertEquals(600, el.getActivationThreshold().getValue());
+		el.submitProcessable(high);
+		el.systemTick(new Time(6, 60));
+		assertEquals(600, el.getActivationThreshold().getValue());
+
+		el.queueDepth = 0;
+		el.submitProcessable(high);
+		el.systemTick(new Time(7, 70));
+		assertEquals(0f, controller.getLastLoad());
+		assertEquals(550, el.getActivationThreshold().getValue());
+	}
+
+	@Test
+	public void testCpuBudget() {
+		EmptyLayer el = new EmptyLayer();
+		try {
+			el.setCpuBudget(-1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+		el.queueDepth = 10;
+		el.cpuNanoTime = 1000;
+		el.systemTick(new Time(1, 10));
+		// no budget, nothing is shed
+		assertEquals(1000, el.getLastTickCpuNanoTime());
+		assertEquals(0, el.getLastTickShed());
+
+		el.setCpuBudget(1000);
+		el.cpuNanoTime = 5000;
+		el.systemTick(new Time(2, 20));
+		assertEquals(4000, el.getLastTickCpuNanoTime());
+		assertEquals(0.75f, el.shedFraction);
+		assertEquals(8, el.getLastTickShed());
+
+		el.cpuNanoTime = 5500;
+		el.systemTick(new Time(3, 30));
+		assertEquals(500, el.getLastTickCpuNanoTime());
+		assertEquals(0, el.getLastTickShed());
+		assertEquals(8, el.getTotalShed());
+	}
+
+	@Test
+	public void testImplicitProcessing() throws InterruptedException {
+		EmptyLayer el = new EmptyLayer();
+		Id id = IdManager.instance().getId("Implicit processing", EmptyCognitiveFunction.class);
+		EmptyProcessable ep = new EmptyProcessable(id, 0, 0);
+		ep.setActivation(new Activation(Activation.MAX));
+		EmptyCognitiveFunction ecf = new EmptyCognitiveFunction(id);
+		EmptyCognitiveFunction ecf2 = new EmptyCognitiveFunction(id);
+		assertTrue(el.addCognitiveFunction(ecf));
+		assertTrue(el.addCognitiveFunction(ecf2));
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		long sleep = EmptyCognitiveFunction.sleep;
+		EmptyCognitiveFunction.sleep = 100;
+		try {
+			assertEquals(ImplicitProcessing.SERIAL, el.getImplicitProcessing());
+			try {
+				el.setImplicitProcessing(ImplicitProcessing.PARALLEL, null);
+				fail();
+			} catch (IllegalArgumentException e) {
+				// ok
+			}
+
+			el.setImplicitProcessing(ImplicitProcessing.PARALLEL, executor);
+			long t1 = System.currentTimeMillis();
+			el.manageResult(ep);
+			long time = System.currentTimeMillis() - t1;
+			assertTrue(time >= 100 && time < 190);
+			assertSame(ep, el.lastResult);
+			assertSame(ep, ecf.lastImplicit);
+			assertSame(ep, ecf2.lastImplicit);
+			assertEquals(1, el.getImplicitProcessingWaits());
+			assertTrue(el.getImplicitProcessingWaitNanoTime() > 0);
+
+			el.reset();
+			ecf.reset();
+			ecf2.reset();
+			el.setImplicitProcessing(ImplicitProcessing.ASYNCHRONOUS, executor);
+			assertTrue(el.isIdle());
+			el.manageResult(ep);
+			assertSame(ep, el.lastResult);
+			assertEquals(1, el.getImplicitProcessingWaits());
+			// the implicit processing is still running
+			assertFalse(el.isIdle());
+			executor.shutdown();
+			assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+			assertSame(ep, ecf.lastImplicit);
+			assertSame(ep, ecf2.lastImplicit);
+			assertTrue(el.isIdle());
+		} finally {
+			EmptyCognitiveFunction.sleep = sleep;
+			executor.shutdownNow();
+		}
+	}
+
 	@Test
 	public void testAverageActivation() {
 		EmptyLayer el = new EmptyLayer();
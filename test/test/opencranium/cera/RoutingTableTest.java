@@ -0,0 +1,73 @@
+package test.opencranium.cera;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import opencranium.Core;
+import opencranium.cera.CeraException;
+import opencranium.cera.Layer;
+import opencranium.cera.RoutingTable;
+import opencranium.cranium.Processable.Kind;
+import opencranium.cranium.ProcessorThreadPool;
+
+import org.junit.Test;
+
+import test.opencranium.cranium.EmptyProcessable;
+
+/**
+ * @author Jorge Muñoz
+ */
+public class RoutingTableTest extends TestCase {
+
+	@Test
+	public void testRoutes() {
+		RoutingTable table = RoutingTable.createDefault();
+
+		assertTrue(Arrays.equals(new Layer.Type[] { Layer.Type.PHYSICAL_LAYER, Layer.Type.MISSION_LAYER }, table
+				.getRoute(Layer.Type.SENSORY_MOTOR_LAYER, Kind.MISSION_PERCEPT)));
+		assertNull(table.getRoute(Layer.Type.SENSORY_MOTOR_LAYER, Kind.SIMPLE_ACTION));
+		for (Kind kind : Kind.values()) {
+			assertNull(table.getRoute(Layer.Type.CORE_LAYER, kind));
+		}
+
+		try {
+			table.setRoute(Layer.Type.CORE_LAYER, Kind.OTHER, Layer.Type.CORE_LAYER, Layer.Type.CORE_LAYER);
+			fail();
+		} catch (IllegalArgumentException exception) {
+		}
+		try {
+			table.compile(new Layer[0]);
+			fail();
+		} catch (IllegalArgumentException exception) {
+		}
+
+		table.setRoute(Layer.Type.CORE_LAYER, Kind.OTHER);
+		assertEquals(0, table.getRoute(Layer.Type.CORE_LAYER, Kind.OTHER).length);
+		table.removeRoute(Layer.Type.CORE_LAYER, Kind.OTHER);
+		assertNull(table.getRoute(Layer.Type.CORE_LAYER, Kind.OTHER));
+	}
+
+	@Test
+	public void testCoreRoutes() {
+		Core core = Core.instance();
+		EmptySensoryMotorLayer esml = new EmptySensoryMotorLayer(core, new ProcessorThreadPool());
+
+		assertSame(core.getPhysicalLayer(), core.getRoute(Layer.Type.SENSORY_MOTOR_LAYER, Kind.SINGLE_PERCEPT)[0]);
+		try {
+			esml.layerManageResult(new EmptyProcessable(1, 1));
+			fail();
+		} catch (CeraException exception) {
+		}
+
+		RoutingTable table = RoutingTable.createDefault();
+		table.setRoute(Layer.Type.SENSORY_MOTOR_LAYER, Kind.OTHER);
+		try {
+			core.setRoutingTable(table);
+			assertSame(table, core.getRoutingTable());
+			esml.layerManageResult(new EmptyProcessable(1, 1));
+		} finally {
+			core.setRoutingTable(RoutingTable.createDefault());
+		}
+	}
+
+}
@@ -114,4 +114,19 @@ public class AbstractActionTest extends TestCase {
 		assertTrue(a1.getGeneratedBy().isEmpty());
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void testSortingValues() {
+		EmptyAction a1 = new EmptyAction(Priority.HIGHEST);
+		a1.setActivation(new Activation(500));
+		assertEquals(650, a1.getSortingValue());
+		a1.getActivation().setValue(Activation.MAX);
+		assertEquals(Activation.MAX, a1.getSortingValue());
+
+		EmptyAction a2 = new EmptyAction(Priority.LOWEST);
+		a2.setActivation(new Activation(500));
+		assertEquals(350, a2.getSortingValue());
+		a2.getActivation().setValue(Activation.MIN);
+		assertEquals(Activation.MIN, a2.getSortingValue());
+	}
+
+}
@@ -0,0 +1,116 @@
+package test.opencranium.cranium;
+
+import junit.framework.TestCase;
+import opencranium.Core;
+import opencranium.cranium.AgentScheduler;
+import opencranium.cranium.CraniumException;
+import opencranium.cranium.Processable;
+import opencranium.util.StatisticsManager;
+
+import org.junit.Test;
+
+import test.opencranium.data.EmptyPercept;
+
+/**
+ * @author Jorge Muñoz
+ */
+public class AgentSchedulerTest extends TestCase {
+
+	private static class CoreProcessor extends EmptyProcessor {
+
+		private volatile Core core;
+
+		@Override
+		public void processNextElement(Processable element, long milliseconds) {
+			this.core = Core.current();
+			super.processNextElement(element, milliseconds);
+		}
+
+	}
+
+	private boolean recording;
+
+	@Override
+	protected void setUp() {
+		// the executions must not count in the statistics of EmptyProcessor
+		this.recording = StatisticsManager.isRecording();
+		StatisticsManager.disableStatistics();
+	}
+
+	@Override
+	protected void tearDown() {
+		if (this.recording) {
+			StatisticsManager.enableStatistics();
+		}
+	}
+
+	@Test
+	public void testAgents() throws InterruptedException {
+		AgentScheduler scheduler = new AgentScheduler(2);
+		scheduler.setQuotaPeriod(10000);
+		AgentScheduler.Agent first = scheduler.createAgent();
+		AgentScheduler.Agent second = scheduler.createAgent();
+		Core core = new Core(first);
+		assertSame(core, first.getCore());
+		assertEquals(2, first.getNumberOfThreads());
+		second.setCpuQuota(1);
+
+		CoreProcessor firstProcessor = new CoreProcessor();
+		EmptyProcessor secondProcessor = new EmptyProcessor();
+		assertTrue(first.addProcessor(firstProcessor));
+		assertFalse(second.addProcessor(firstProcessor));
+		assertTrue(second.addProcessor(secondProcessor));
+		try {
+			scheduler.addProcessor(new EmptyProcessor());
+			fail();
+		} catch (CraniumException exception) {
+		}
+		for (int i = 0; i < 20; i++) {
+			firstProcessor.addProcessable(new EmptyPercept());
+			secondProcessor.addProcessable(new EmptyPercept());
+		}
+
+		scheduler.startAll();
+		first.resumeAll();
+		second.resumeAll();
+		Thread.sleep(300);
+		first.pauseAll();
+		second.pauseAll();
+		scheduler.stopAll();
+
+		assertSame(core, firstProcessor.core);
+		assertTrue(first.getExecutions() > 5);
+		// the second agent used its quota with the first execution
+		assertEquals(1, second.getExecutions());
+		assertTrue(first.getThroughput() > 0);
+		assertTrue(first.getMaximumExecutionInterval() >= first.getAverageExecutionInterval());
+		assertTrue(first.getProcessingNanoTime() >= first.getExecutions() * 10000000L);
+
+		assertTrue(scheduler.removeAgent(second));
+		assertFalse(scheduler.removeProcessor(secondProcessor));
+		assertEquals(1, scheduler.getAgents().size());
+	}
+
+	@Test
+	public void testQuotaPeriods() throws InterruptedException {
+		AgentScheduler scheduler = new AgentScheduler(1);
+		scheduler.setQuotaPeriod(50);
+		AgentScheduler.Agent agent = scheduler.createAgent();
+		agent.setCpuQuota(1);
+		EmptyProcessor processor = new EmptyProcessor();
+		assertTrue(agent.addProcessor(processor));
+		for (int i = 0; i < 20; i++) {
+			processor.addProcessable(new EmptyPercept());
+		}
+
+		scheduler.startAll();
+		agent.resumeAll();
+		Thread.sleep(300);
+		agent.pauseAll();
+		scheduler.stopAll();
+
+		// the thread waited for the next periods instead of pausing
+		assertTrue(agent.getExecutions() > 2);
+	}
+
+}
@@ -54,6 +54,11 @@ public class EmptyProcessable implements Processable {
 		return null;
 	}
 
+	@Override
+	public int getCreationTick() {
+		return -1;
+	}
+
 	@Override
 	public Set<Entry<String, Float>> getDataRepresentation() {
 		return null;
@@ -83,6 +88,11 @@ public class EmptyProcessable implements Processable {
 		return false;
 	}
 
+	@Override
+	public Kind getKind() {
+		return Kind.OTHER;
+	}
+
 	@Override
 	public boolean isComplexPercept() {
 		return false;
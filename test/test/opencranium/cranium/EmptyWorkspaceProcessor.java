@@ -61,6 +61,10 @@ public class EmptyWorkspaceProcessor extends WorkspaceProcessor {
 		this.setInputTypes(inputset);
 	}
 
+	public void setInputClass(Set<Class<?>> inputset) {
+		this.setInputClasses(inputset);
+	}
+
 	@Override
 	public void cleanMemory() {
 		this.memory = 0;
@@ -1,6 +1,7 @@
 package test.opencranium.cranium;
 
 import junit.framework.TestCase;
+import opencranium.cranium.Activation;
 import opencranium.util.ElementProcessingTime;
 import opencranium.util.StatisticsManager;
 
@@ -80,4 +81,64 @@ public class ProcessorTest extends TestCase {
 		assertSame(ep3, ep.lastProcessable);
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void testBatch() {
+		EmptyProcessable ep1 = new EmptyProcessable(1, 1);
+		EmptyProcessable ep2 = new EmptyProcessable(2, 2);
+		EmptyProcessable ep3 = new EmptyProcessable(3, 3);
+
+		EmptyProcessor ep = new EmptyProcessor();
+		assertEquals(1, ep.getBatchSize());
+		try {
+			ep.setBatchSize(0);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+		ep.setBatchSize(2);
+		ep.addProcessable(ep1);
+		ep.addProcessable(ep2);
+		ep.addProcessable(ep3);
+
+		ep.process(0);
+		assertSame(ep2, ep.lastProcessable);
+		assertTrue(ep.isSomethingToProcess());
+		ep.process(0);
+		assertSame(ep3, ep.lastProcessable);
+		assertFalse(ep.isSomethingToProcess());
+		ep.process(0);
+		assertTrue(ep.processedNothing);
+	}
+
+	@Test
+	public void testShedLowest() {
+		EmptyProcessable ep1 = new EmptyProcessable(1, 1);
+		ep1.setActivation(new Activation(300));
+		EmptyProcessable ep2 = new EmptyProcessable(2, 2);
+		ep2.setActivation(new Activation(100));
+		EmptyProcessable ep3 = new EmptyProcessable(3, 3);
+		ep3.setActivation(new Activation(200));
+		EmptyProcessable ep4 = new EmptyProcessable(4, 4);
+		ep4.setActivation(new Activation(100));
+
+		EmptyProcessor ep = new EmptyProcessor();
+		ep.addProcessable(ep1);
+		ep.addProcessable(ep2);
+		ep.addProcessable(ep3);
+		ep.addProcessable(ep4);
+		assertEquals(0, ep.shedLowest(0));
+		assertEquals(4, ep.getQueueSize());
+
+		// with the same sorting value the last ones are shed first
+		assertEquals(1, ep.shedLowest(1));
+		assertEquals(3, ep.getQueueSize());
+		assertEquals(1, ep.shedLowest(1));
+		ep.process(0);
+		assertSame(ep1, ep.lastProcessable);
+		ep.process(0);
+		assertSame(ep2, ep.lastProcessable);
+		assertFalse(ep.isSomethingToProcess());
+		assertEquals(0, ep.shedLowest(5));
+		assertTrue(ep.getTotalCpuNanoTime() >= 0);
+	}
+
+}
@@ -2,6 +2,7 @@ package test.opencranium.cranium;
 
 import junit.framework.TestCase;
 import opencranium.cranium.CraniumException;
+import opencranium.cranium.Processable;
 import opencranium.cranium.ProcessorThreadPool;
 import opencranium.util.Id;
 import opencranium.util.IdManager;
@@ -208,4 +209,51 @@ public class ProcessorThreadPoolTest extends TestCase {
 		assertSame(ep1, ptp.getNextProcessor());
 		assertNull(ptp.getNextProcessor());
 	}
-}
\ No newline at end of file
+	@Test
+	public void testDrainAndStop() {
+		ProcessorThreadPool ptp = new ProcessorThreadPool(2);
+		Id id1 = IdManager.instance().getId("EmptyProcessor 1", EmptyProcessor.class);
+		Id id2 = IdManager.instance().getId("EmptyProcessor 2", EmptyProcessor.class);
+		EmptyProcessor ep1 = new EmptyProcessor(id1);
+		assertTrue(ptp.addProcessor(ep1));
+		for (int i = 0; i < 5; i++) {
+			assertTrue(ep1.addProcessable(new EmptyProcessable(i, i)));
+		}
+		try {
+			ptp.drainAndStop(1000);
+			fail();
+		} catch (CraniumException e) {
+		}
+		// the failed call does not close the input
+		assertFalse(ep1.isInputClosed());
+		assertTrue(ep1.addProcessable(new EmptyProcessable(5, 5)));
+		ptp.startAll();
+		assertEquals(0, ptp.drainAndStop(5000).length);
+		assertFalse(ep1.isSomethingToProcess());
+		Processable late = new EmptyProcessable(10, 10);
+		assertFalse(ep1.addProcessable(late));
+		assertEquals(1, ep1.getRejected());
+		// the elements rejected after the drain are kept for the caller
+		Processable[] rejected = ptp.removeRejected();
+		assertEquals(1, rejected.length);
+		assertSame(late, rejected[0]);
+		assertEquals(0, ep1.removeRejected().length);
+		try {
+			ptp.resumeAll();
+			fail();
+		} catch (CraniumException e) {
+		}
+
+		ptp = new ProcessorThreadPool(1);
+		EmptyProcessor ep2 = new EmptyProcessor(id2);
+		assertTrue(ptp.addProcessor(ep2));
+		for (int i = 0; i < 100; i++) {
+			assertTrue(ep2.addProcessable(new EmptyProcessable(i, i)));
+		}
+		ptp.startAll();
+		Processable[] dropped = ptp.drainAndStop(50);
+		assertTrue(dropped.length > 0);
+		assertFalse(ep2.isSomethingToProcess());
+	}
+
+}
@@ -0,0 +1,93 @@
+package test.opencranium.cranium;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import junit.framework.TestCase;
+import opencranium.Core;
+import opencranium.cranium.Processable;
+import opencranium.cranium.ProvenanceStore;
+import opencranium.util.Time;
+
+import org.junit.Test;
+
+import test.opencranium.data.EmptyPercept;
+
+/**
+ * @author Jorge Muñoz
+ */
+public class ProvenanceStoreTest extends TestCase {
+
+	@Test
+	public void testLineage() {
+		ProvenanceStore store = new ProvenanceStore(100, 10, 3);
+		Processable[] chain = new Processable[6];
+		chain[0] = new EmptyPercept();
+		for (int i = 1; i < chain.length; i++) {
+			chain[i] = new EmptyPercept();
+			chain[i].setGeneratedBy(store.createProvenance(new Processable[] { chain[i - 1], null }));
+		}
+		Collection<Processable> generatedBy = chain[5].getGeneratedBy();
+		assertEquals(1, generatedBy.size());
+		assertSame(chain[4], generatedBy.iterator().next());
+
+		assertEquals(Arrays.asList(chain[4], chain[3]), store.getLineage(chain[5], 2));
+		List<Processable> lineage = store.getLineage(chain[5], 10);
+		assertEquals(Arrays.asList(chain[4], chain[3], chain[2]), lineage);
+		assertEquals(-1, store.getId(chain[5]));
+		assertEquals(5, store.size());
+
+		// a forgotten generator is still counted but no longer iterated
+		ProvenanceStore small = new ProvenanceStore(1, 10, 1);
+		Processable generated = new EmptyPercept();
+		generated.setGeneratedBy(small.createProvenance(new Processable[] { chain[0] }));
+		small.register(chain[1]);
+		assertEquals(1, generated.getGeneratedBy().size());
+		assertFalse(generated.getGeneratedBy().iterator().hasNext());
+
+		try {
+			new ProvenanceStore(0, 1, 1);
+			fail();
+		} catch (IllegalArgumentException exception) {
+		}
+	}
+
+	@Test
+	public void testBounded() {
+		Core core = Core.instance();
+		Time tick = core.getCurrentTick();
+		try {
+			ProvenanceStore store = new ProvenanceStore(4, 2, 10);
+			core.setCurrentTick(new Time(0, 0));
+			Processable first = new EmptyPercept();
+			int id = store.register(first);
+			WeakReference<Processable> reference = new WeakReference<Processable>(first);
+			first = null;
+			for (int i = 1; i <= 3; i++) {
+				core.setCurrentTick(new Time(i, 0));
+				store.register(new EmptyPercept());
+			}
+			// the first element is older than the maximum age
+			for (int i = 0; i < 10 && reference.get() != null; i++) {
+				System.gc();
+			}
+			assertNull(reference.get());
+			assertNull(store.get(id));
+			assertEquals(4, store.size());
+
+			Processable last = new EmptyPercept();
+			int lastId = store.register(last);
+			assertEquals(4, store.size());
+			assertSame(last, store.get(lastId));
+			assertEquals(lastId, store.register(last));
+			// the capacity is exceeded, the first id is forgotten
+			assertEquals(id + 4, lastId);
+			assertNull(store.get(id));
+		} finally {
+			core.setCurrentTick(tick);
+		}
+	}
+
+}
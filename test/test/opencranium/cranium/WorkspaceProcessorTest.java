@@ -1,8 +1,13 @@
 package test.opencranium.cranium;
 
+import java.util.HashSet;
+
 import junit.framework.TestCase;
 import opencranium.command.Action;
 import opencranium.cranium.CraniumException;
+import opencranium.data.Percept;
+import opencranium.util.Id;
+import opencranium.util.IdManager;
 
 import org.junit.Test;
 
@@ -142,4 +147,20 @@ public class WorkspaceProcessorTest extends TestCase {
 		assertNotNull(ewp.lastResult);
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void testInputClassesCache() {
+		EmptyWorkspaceProcessor ewp = new EmptyWorkspaceProcessor();
+		Id id = IdManager.instance().getId("Class input cached", EmptyPercept.class);
+		assertFalse(ewp.isValidInput(id));
+		assertFalse(ewp.isValidInput(id));
+		HashSet<Class<?>> classes = new HashSet<Class<?>>();
+		classes.add(Percept.class);
+		ewp.setInputClass(classes);
+		// the cached rejection is forgotten with the new classes
+		assertTrue(ewp.isValidInput(id));
+		assertTrue(ewp.isValidInput(id));
+		ewp.setInputClass(new HashSet<Class<?>>());
+		assertFalse(ewp.isValidInput(id));
+	}
+
+}
@@ -1,16 +1,22 @@
 package test.opencranium.cranium;
 
+import java.util.HashSet;
 import java.util.TreeSet;
 
 import junit.framework.TestCase;
+import opencranium.cranium.Processable;
 import opencranium.cranium.ProcessorThreadPool;
 import opencranium.cranium.Workspace;
 import opencranium.cranium.WorkspaceProcessor;
+import opencranium.data.Percept;
 import opencranium.util.Id;
 import opencranium.util.IdManager;
+import opencranium.util.collection.ElementFilter;
 
 import org.junit.Test;
 
+import test.opencranium.data.EmptyPercept;
+
 /**
  * @author Jorge Muñoz
  */
@@ -99,4 +105,179 @@ public class WorkspaceTest extends TestCase {
 
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void testSubmitAfterUnregister() {
+		Workspace w = new Workspace(new ProcessorThreadPool());
+		EmptyWorkspaceProcessor ewp1 = new EmptyWorkspaceProcessor();
+		Id id1 = IdManager.instance().getId("Input id 1", WorkspaceProcessor.class);
+		Id idUnknown = IdManager.instance().getId("Input id without listeners", WorkspaceProcessor.class);
+
+		w.submitProcessable(new EmptyProcessable(id1, 1, 1));
+		assertFalse(ewp1.isSomethingToProcess());
+
+		assertTrue(w.registerProcessor(ewp1));
+		w.submitProcessable(new EmptyProcessable(idUnknown, 1, 1));
+		assertFalse(ewp1.isSomethingToProcess());
+		w.submitProcessable(new EmptyProcessable(id1, 1, 1));
+		assertTrue(ewp1.isSomethingToProcess());
+		ewp1.process(0);
+
+		assertTrue(w.unregisterProcessor(ewp1));
+		w.submitProcessable(new EmptyProcessable(id1, 1, 1));
+		assertFalse(ewp1.isSomethingToProcess());
+	}
+
+	@Test
+	public void testSubmitProcessables() {
+		Workspace w = new Workspace(new ProcessorThreadPool());
+		EmptyWorkspaceProcessor ewp1 = new EmptyWorkspaceProcessor();
+		assertTrue(w.registerProcessor(ewp1));
+		Id id1 = IdManager.instance().getId("Input id 1", WorkspaceProcessor.class);
+		Id id2 = IdManager.instance().getId("Input id 2", WorkspaceProcessor.class);
+		Id id4 = IdManager.instance().getId("Input id 4", WorkspaceProcessor.class);
+		TreeSet<Id> inputSet = new TreeSet<Id>();
+		inputSet.add(id2);
+		inputSet.add(id4);
+		Id idw = IdManager.instance().getId("EmptyWorkspaceProcessor2", WorkspaceProcessor.class);
+		EmptyWorkspaceProcessor ewp2 = new EmptyWorkspaceProcessor(idw);
+		ewp2.setInputId(inputSet);
+		assertTrue(w.registerProcessor(ewp2));
+
+		EmptyProcessable ep1 = new EmptyProcessable(id1, 3, 3);
+		EmptyProcessable ep2 = new EmptyProcessable(id2, 2, 2);
+		EmptyProcessable ep4 = new EmptyProcessable(id4, 1, 1);
+		w.submitProcessables(new Processable[] { ep1, ep2, ep4 });
+
+		ewp1.process(0);
+		assertSame(ep1, ewp1.lastProcessable);
+		ewp1.process(0);
+		assertSame(ep2, ewp1.lastProcessable);
+		assertFalse(ewp1.isSomethingToProcess());
+
+		ewp2.process(0);
+		assertSame(ep2, ewp2.lastProcessable);
+		ewp2.process(0);
+		assertSame(ep4, ewp2.lastProcessable);
+		assertFalse(ewp2.isSomethingToProcess());
+	}
+
+	@Test
+	public void testInputFilter() {
+		Workspace w = new Workspace(new ProcessorThreadPool());
+		EmptyWorkspaceProcessor ewp1 = new EmptyWorkspaceProcessor();
+		assertTrue(w.registerProcessor(ewp1));
+		Id id1 = IdManager.instance().getId("Input id 1", WorkspaceProcessor.class);
+		ElementFilter<Processable> filter = new ElementFilter<Processable>() {
+			@Override
+			public boolean accept(Processable element) {
+				return ((EmptyProcessable) element).id % 2 == 0;
+			}
+		};
+		assertTrue(ewp1.addInputFilter(filter));
+		assertFalse(ewp1.addInputFilter(filter));
+
+		EmptyProcessable ep1 = new EmptyProcessable(id1, 1, 1);
+		EmptyProcessable ep2 = new EmptyProcessable(id1, 2, 2);
+		EmptyProcessable ep3 = new EmptyProcessable(id1, 3, 3);
+		EmptyProcessable ep4 = new EmptyProcessable(id1, 4, 4);
+		w.submitProcessable(ep1);
+		assertFalse(ewp1.isSomethingToProcess());
+		w.submitProcessable(ep2);
+		w.submitProcessables(new Processable[] { ep3, ep4 });
+		ewp1.process(0);
+		assertSame(ep2, ewp1.lastProcessable);
+		ewp1.process(0);
+		assertSame(ep4, ewp1.lastProcessable);
+		assertFalse(ewp1.isSomethingToProcess());
+
+		assertTrue(ewp1.removeInputFilter(filter));
+		assertFalse(ewp1.removeInputFilter(filter));
+		w.submitProcessable(ep1);
+		assertTrue(ewp1.isSomethingToProcess());
+	}
+
+	@Test
+	public void testInputClasses() {
+		Workspace w = new Workspace(new ProcessorThreadPool());
+		Id idw = IdManager.instance().getId("EmptyWorkspaceProcessor2", WorkspaceProcessor.class);
+		EmptyWorkspaceProcessor ewp1 = new EmptyWorkspaceProcessor(idw);
+		ewp1.setInputId(new TreeSet<Id>());
+		HashSet<Class<?>> inputClasses = new HashSet<Class<?>>();
+		inputClasses.add(Percept.class);
+		ewp1.setInputClass(inputClasses);
+		EmptyWorkspaceProcessor ewp2 = new EmptyWorkspaceProcessor();
+		assertTrue(w.registerProcessor(ewp1));
+		assertTrue(w.registerProcessor(ewp2));
+
+		Id idp = IdManager.instance().getId("Percept id created after registration", EmptyPercept.class);
+		Id id1 = IdManager.instance().getId("Input id 1", WorkspaceProcessor.class);
+		assertTrue(ewp1.isValidInput(idp));
+		assertTrue(ewp1.isValidInput(EmptyPercept.ID));
+		assertFalse(ewp1.isValidInput(id1));
+
+		EmptyProcessable ep1 = new EmptyProcessable(idp, 1, 1);
+		EmptyProcessable ep2 = new EmptyProcessable(id1, 2, 2);
+		EmptyProcessable ep3 = new EmptyProcessable(EmptyPercept.ID, 3, 3);
+		w.submitProcessable(ep1);
+		w.submitProcessable(ep2);
+		w.submitProcessable(ep3);
+
+		ewp1.process(0);
+		assertSame(ep1, ewp1.lastProcessable);
+		ewp1.process(0);
+		assertSame(ep3, ewp1.lastProcessable);
+		assertFalse(ewp1.isSomethingToProcess());
+
+		ewp2.process(0);
+		assertSame(ep2, ewp2.lastProcessable);
+		ewp2.process(0);
+		assertSame(ep3, ewp2.lastProcessable);
+		assertFalse(ewp2.isSomethingToProcess());
+
+		assertTrue(w.unregisterProcessor(ewp1));
+		w.submitProcessable(ep1);
+		assertFalse(ewp1.isSomethingToProcess());
+	}
+
+	@Test
+	public void testShards() {
+		Workspace w = new Workspace(new ProcessorThreadPool(), 3);
+		assertEquals(3, w.getNumberOfShards());
+		EmptyWorkspaceProcessor ewp1 = new EmptyWorkspaceProcessor();
+		assertTrue(w.registerProcessor(ewp1));
+		Id id1 = IdManager.instance().getId("Input id 1", WorkspaceProcessor.class);
+		Id id2 = IdManager.instance().getId("Input id 2", WorkspaceProcessor.class);
+		Id id3 = IdManager.instance().getId("Input id 3", WorkspaceProcessor.class);
+		Id id4 = IdManager.instance().getId("Input id 4", WorkspaceProcessor.class);
+
+		EmptyProcessable ep1 = new EmptyProcessable(id1, 1, 1);
+		EmptyProcessable ep2 = new EmptyProcessable(id2, 2, 2);
+		EmptyProcessable ep3 = new EmptyProcessable(id3, 3, 3);
+		EmptyProcessable ep4 = new EmptyProcessable(id4, 4, 4);
+		w.submitProcessables(new Processable[] { ep1, ep2, ep3, ep4 });
+		ewp1.process(0);
+		assertSame(ep1, ewp1.lastProcessable);
+		ewp1.process(0);
+		assertSame(ep2, ewp1.lastProcessable);
+		ewp1.process(0);
+		assertSame(ep3, ewp1.lastProcessable);
+		assertFalse(ewp1.isSomethingToProcess());
+
+		assertFalse(w.isDispatchThreadsRunning());
+		w.startDispatchThreads();
+		assertTrue(w.isDispatchThreadsRunning());
+		w.submitProcessable(ep1);
+		w.submitProcessables(new Processable[] { ep2, ep4 });
+		w.stopDispatchThreads();
+		assertFalse(w.isDispatchThreadsRunning());
+		assertEquals(0, w.getPendingDispatches());
+		ewp1.process(0);
+		ewp1.process(0);
+		assertFalse(ewp1.isSomethingToProcess());
+
+		assertTrue(w.unregisterProcessor(ewp1));
+		w.submitProcessable(ep1);
+		assertFalse(ewp1.isSomethingToProcess());
+	}
+
+}
@@ -1,7 +1,13 @@
 package test.opencranium.data;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
 import junit.framework.TestCase;
 import opencranium.cranium.Activation;
+import opencranium.cranium.Processable.Kind;
+import opencranium.data.AbstractPercept;
+import opencranium.data.Confidence;
 import opencranium.data.Percept.AppraisalType;
 import opencranium.data.Percept.MemoryType;
 import opencranium.data.Percept.Nature;
@@ -131,10 +137,73 @@ public class AbstractPerceptTest extends TestCase {
 		EmptyPercept p1 = new EmptyPercept();
 		assertNotNull(p1.getGeneratedBy());
 		assertTrue(p1.getGeneratedBy().isEmpty());
+		assertFalse(p1.hasContext());
 		assertNotNull(p1.getContext());
 		assertTrue(p1.getContext().isEmpty());
 		assertNotNull(p1.getDataRepresentation());
 		assertTrue(p1.getDataRepresentation().isEmpty());
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void testCompactLayout() {
+		// shallow size with compressed references and 12 bytes of header
+		int size = 12;
+		int references = 0;
+		for (Field field : AbstractPercept.class.getDeclaredFields()) {
+			if (Modifier.isStatic(field.getModifiers())) {
+				continue;
+			}
+			if (!field.getType().isPrimitive()) {
+				references++;
+				size += 4;
+			} else if (field.getType() == long.class || field.getType() == double.class) {
+				size += 8;
+			} else {
+				size += 4;
+			}
+		}
+		assertEquals(5, references);
+		assertTrue(size <= 48);
+		assertTrue(Source.values().length <= 16);
+
+		EmptyPercept.TYPE = Type.MISSION_PERCEPT;
+		EmptyPercept p1 = new EmptyPercept();
+		p1.setAppraisalType(AppraisalType.MISSMATCH);
+		p1.setSource(Source.values()[Source.values().length - 1]);
+		assertSame(Type.MISSION_PERCEPT, p1.getType());
+		assertSame(Kind.MISSION_PERCEPT, p1.getKind());
+		assertSame(Nature.UNKNOWN, p1.getNature());
+		assertSame(AppraisalType.MISSMATCH, p1.getAppraisalType());
+		assertSame(p1.getContext(), p1.getContext());
+		assertSame(p1.getConfidence(), p1.getConfidence());
+		assertEquals(Confidence.MIN, p1.getConfidence().getValue());
+	}
+
+	@Test
+	public void testConcurrentLazyFields() throws InterruptedException {
+		for (int i = 0; i < 100; i++) {
+			final EmptyPercept percept = new EmptyPercept();
+			final Object[][] seen = new Object[4][];
+			Thread[] threads = new Thread[seen.length];
+			for (int j = 0; j < threads.length; j++) {
+				final int index = j;
+				threads[j] = new Thread() {
+					@Override
+					public void run() {
+						seen[index] = new Object[] { percept.getConfidence(), percept.getContext() };
+					}
+				};
+				threads[j].start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			// all the threads get the same instances
+			for (Object[] fields : seen) {
+				assertSame(percept.getConfidence(), fields[0]);
+				assertSame(percept.getContext(), fields[1]);
+			}
+		}
+	}
+
+}
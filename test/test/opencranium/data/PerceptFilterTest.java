@@ -0,0 +1,125 @@
+package test.opencranium.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+import junit.framework.TestCase;
+import opencranium.cognitive.attention.Context;
+import opencranium.cranium.Activation;
+import opencranium.data.AbstractPercept;
+import opencranium.data.PerceptFilter;
+import opencranium.data.Percept.Nature;
+import opencranium.data.Percept.Source;
+import opencranium.data.Percept.Type;
+
+import org.junit.Test;
+
+/**
+ * @author Jorge Muñoz
+ */
+public class PerceptFilterTest extends TestCase {
+
+	@Test
+	public void testActivation() {
+		EmptyPercept.TYPE = Type.SINGLE_PERCEPT;
+		PerceptFilter filter = new PerceptFilter();
+		EmptyPercept p1 = new EmptyPercept();
+		p1.setActivation(new Activation(100));
+		assertTrue(filter.accept(p1));
+		filter.setActivationRange(200, 500);
+		assertFalse(filter.accept(p1));
+		p1.setActivation(new Activation(200));
+		assertTrue(filter.accept(p1));
+		p1.setActivation(new Activation(500));
+		assertTrue(filter.accept(p1));
+		p1.setActivation(new Activation(501));
+		assertFalse(filter.accept(p1));
+		try {
+			filter.setActivationRange(10, 5);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+	}
+
+	@Test
+	public void testSourceAndNature() {
+		EmptyPercept.TYPE = Type.SINGLE_PERCEPT;
+		PerceptFilter filter = new PerceptFilter();
+		filter.setSources(Source.EXTEROCEPTIVE_SENSOR, Source.PROPRIOCEPTIVE_SENSOR);
+		EmptyPercept p1 = new EmptyPercept();
+		assertFalse(filter.accept(p1));
+		p1.setSource(Source.PROPRIOCEPTIVE_SENSOR);
+		assertTrue(filter.accept(p1));
+		EmptyPercept p2 = new EmptyPercept();
+		p2.setSource(Source.COGNITIVE_FUNCTION);
+		assertFalse(filter.accept(p2));
+
+		filter.setNatures(Nature.REAL);
+		assertFalse(filter.accept(p1));
+		p1.setNature(Nature.REAL);
+		assertTrue(filter.accept(p1));
+	}
+
+	@Test
+	public void testType() {
+		PerceptFilter filter = new PerceptFilter();
+		filter.setTypes(Type.COMPLEX_PERCEPT, Type.MISSION_PERCEPT);
+		EmptyPercept.TYPE = Type.SINGLE_PERCEPT;
+		assertFalse(filter.accept(new EmptyPercept()));
+		EmptyPercept.TYPE = Type.COMPLEX_PERCEPT;
+		assertTrue(filter.accept(new EmptyPercept()));
+		EmptyPercept.TYPE = Type.SINGLE_PERCEPT;
+	}
+
+	@Test
+	public void testContext() {
+		Collection<Context> contexts = new ArrayList<Context>();
+		contexts.add(new PositionContext(10));
+		ContextPercept p1 = new ContextPercept(contexts);
+		PerceptFilter filter = new PerceptFilter();
+		assertTrue(filter.accept(p1));
+		filter.setContext(new PositionContext(0), 5);
+		assertFalse(filter.accept(p1));
+		filter.setContext(new PositionContext(7), 5);
+		assertTrue(filter.accept(p1));
+		// a percept without context is rejected without creating it
+		EmptyPercept p2 = new EmptyPercept();
+		assertFalse(filter.accept(p2));
+		assertFalse(p2.hasContext());
+		filter.setContext(null, 0);
+		assertTrue(filter.accept(p1));
+	}
+
+	private static class ContextPercept extends AbstractPercept {
+
+		public ContextPercept(Collection<Context> contexts) {
+			super(EmptyPercept.ID, Type.SINGLE_PERCEPT, contexts, null);
+		}
+
+	}
+
+	private static class PositionContext implements Context {
+
+		private float position;
+
+		public PositionContext(float position) {
+			this.position = position;
+		}
+
+		@Override
+		public float distance(Context context) {
+			if (context instanceof PositionContext) {
+				return Math.abs(this.position - ((PositionContext) context).position);
+			}
+			return -1;
+		}
+
+		@Override
+		public Activation getActivation() {
+			return null;
+		}
+
+	}
+
+}
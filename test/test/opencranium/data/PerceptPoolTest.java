@@ -0,0 +1,242 @@
+package test.opencranium.data;
+
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+import opencranium.cera.Layer.ImplicitProcessing;
+import opencranium.cranium.Activation;
+import opencranium.cranium.Generators;
+import opencranium.cranium.Processable;
+import opencranium.cranium.ProcessorThreadPool;
+import opencranium.cranium.ProvenanceStore;
+import opencranium.cranium.Workspace;
+import opencranium.data.Percept;
+import opencranium.data.PerceptException;
+import opencranium.data.PerceptPool;
+import opencranium.data.PooledPercept;
+import opencranium.util.Id;
+import opencranium.util.IdManager;
+import opencranium.util.collection.LockedSortedList;
+
+import org.junit.Test;
+
+import test.opencranium.cera.EmptyLayer;
+import test.opencranium.cognitive.EmptyCognitiveFunction;
+import test.opencranium.cranium.EmptyProcessor;
+import test.opencranium.cranium.EmptyWorkspaceProcessor;
+
+/**
+ * @author Jorge Muñoz
+ */
+public class PerceptPoolTest extends TestCase {
+
+	private static class EmptyPooledPercept extends PooledPercept {
+
+		public static final Id ID = IdManager.instance().getId("EmptyPooledPercept", EmptyPooledPercept.class);
+
+		public int value;
+
+		public EmptyPooledPercept(PerceptPool<EmptyPooledPercept> pool) {
+			super(pool, ID, Percept.Type.SINGLE_PERCEPT);
+		}
+
+		@Override
+		protected void clearData() {
+			this.value = 0;
+		}
+
+	}
+
+	private static class EmptyPerceptPool extends PerceptPool<EmptyPooledPercept> {
+
+		public EmptyPerceptPool(int capacity) {
+			super(capacity);
+		}
+
+		@Override
+		protected EmptyPooledPercept create() {
+			return new EmptyPooledPercept(this);
+		}
+
+	}
+
+	@Test
+	public void testReuse() {
+		EmptyPerceptPool pool = new EmptyPerceptPool(1);
+		EmptyPooledPercept first = pool.acquire();
+		assertEquals(1, first.getReferences());
+		first.value = 10;
+		first.setSource(Percept.Source.EXTEROCEPTIVE_SENSOR);
+		first.release();
+		assertEquals(0, first.getReferences());
+		assertEquals(0, first.value);
+		try {
+			first.release();
+			fail();
+		} catch (PerceptException e) {
+		}
+		try {
+			first.retain();
+			fail();
+		} catch (PerceptException e) {
+		}
+
+		EmptyPooledPercept second = pool.acquire();
+		assertSame(first, second);
+		assertSame(Percept.Source.UNKNOWN, second.getSource());
+		assertEquals(1, pool.getCreated());
+		assertEquals(1, pool.getReused());
+
+		// the free queue is full, the other percept is left to the collector
+		EmptyPooledPercept third = pool.acquire();
+		assertNotSame(second, third);
+		second.release();
+		third.release();
+		assertSame(second, pool.acquire());
+		assertEquals(2, pool.getCreated());
+	}
+
+	@Test
+	public void testHolders() {
+		EmptyPerceptPool pool = new EmptyPerceptPool(10);
+		EmptyPooledPercept percept = pool.acquire();
+		EmptyProcessor processor = new EmptyProcessor();
+		assertTrue(processor.addProcessable(percept));
+		ProvenanceStore store = new ProvenanceStore(1, 100, 1);
+		int id = store.register(percept);
+		assertEquals(3, percept.getReferences());
+
+		percept.release();
+		processor.process(0);
+		assertEquals(1, percept.getReferences());
+		assertSame(percept, store.get(id));
+
+		// the store forgets the percept when its entry is reused
+		store.register(new EmptyPercept());
+		assertEquals(0, percept.getReferences());
+		assertNull(store.get(id));
+		assertSame(percept, pool.acquire());
+	}
+
+	@Test
+	public void testGenerators() {
+		EmptyPerceptPool pool = new EmptyPerceptPool(10);
+		EmptyPooledPercept generator = pool.acquire();
+		Generators generators = new Generators(new Processable[] { generator });
+		EmptyPooledPercept result = pool.acquire();
+		generators.retainElements();
+		result.setGeneratedBy(generators);
+		assertEquals(2, generator.getReferences());
+
+		// the generator outlives its holder while the result references it
+		generator.release();
+		assertEquals(1, generator.getReferences());
+		assertSame(generator, result.getGeneratedBy().iterator().next());
+		result.release();
+		assertEquals(0, generator.getReferences());
+		assertTrue(result.getGeneratedBy().isEmpty());
+	}
+
+	@Test
+	public void testEviction() {
+		EmptyPerceptPool pool = new EmptyPerceptPool(10);
+		EmptyProcessor processor = new EmptyProcessor() {
+			{
+				this.processableSortedList = new LockedSortedList<Processable>(1);
+			}
+		};
+		EmptyPooledPercept low = pool.acquire();
+		EmptyPooledPercept high = pool.acquire();
+		high.getActivation().setValue(Activation.MAX);
+		assertTrue(processor.addProcessable(low));
+		low.release();
+		assertEquals(1, low.getReferences());
+		// the full queue evicts the low percept and releases it
+		assertTrue(processor.addProcessable(high));
+		assertEquals(0, low.getReferences());
+		assertEquals(2, high.getReferences());
+
+		// the batch path evicts and releases in the same way
+		EmptyPooledPercept higher = pool.acquire();
+		higher.getActivation().setValue(Activation.MAX);
+		high.getActivation().setValue(Activation.MAX - 1);
+		assertEquals(1, processor.addProcessables(new Processable[] { higher }));
+		assertEquals(1, high.getReferences());
+		assertEquals(2, higher.getReferences());
+	}
+
+	@Test
+	public void testCrossThread() throws InterruptedException {
+		final EmptyPerceptPool pool = new EmptyPerceptPool(10);
+		final EmptyPooledPercept percept = pool.acquire();
+		// released by other thread, like a processor of a sensor percept
+		Thread releaser = new Thread() {
+			@Override
+			public void run() {
+				percept.release();
+			}
+		};
+		releaser.start();
+		releaser.join();
+		assertEquals(0, percept.getReferences());
+		assertSame(percept, pool.acquire());
+		assertEquals(1, pool.getCreated());
+		assertEquals(1, pool.getReused());
+	}
+
+	@Test
+	public void testAsynchronousHolders() throws InterruptedException {
+		EmptyPerceptPool pool = new EmptyPerceptPool(10);
+		Workspace workspace = new Workspace(new ProcessorThreadPool(), 2);
+		EmptyWorkspaceProcessor processor = new EmptyWorkspaceProcessor();
+		TreeSet<Id> inputs = new TreeSet<Id>();
+		inputs.add(EmptyPooledPercept.ID);
+		processor.setInputId(inputs);
+		assertTrue(workspace.registerProcessor(processor));
+		workspace.startDispatchThreads();
+		try {
+			// the dispatch queue holds the percept until it is dispatched
+			EmptyPooledPercept percept = pool.acquire();
+			workspace.submitProcessable(percept);
+			percept.release();
+			while (workspace.getPendingDispatches() > 0) {
+				Thread.sleep(1);
+			}
+			assertEquals(1, percept.getReferences());
+			processor.process(0);
+			assertSame(percept, processor.lastProcessable);
+			assertEquals(0, percept.getReferences());
+			assertSame(percept, pool.acquire());
+			percept.release();
+		} finally {
+			workspace.stopDispatchThreads();
+		}
+
+		EmptyLayer layer = new EmptyLayer();
+		EmptyCognitiveFunction function = new EmptyCognitiveFunction(EmptyPooledPercept.ID);
+		assertTrue(layer.addCognitiveFunction(function));
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		long sleep = EmptyCognitiveFunction.sleep;
+		EmptyCognitiveFunction.sleep = 100;
+		try {
+			layer.setImplicitProcessing(ImplicitProcessing.ASYNCHRONOUS, executor);
+			// the implicit process holds the percept until it ends
+			EmptyPooledPercept percept = pool.acquire();
+			layer.manageResult(percept);
+			percept.release();
+			assertEquals(1, percept.getReferences());
+			executor.shutdown();
+			assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+			assertSame(percept, function.lastImplicit);
+			assertEquals(0, percept.getReferences());
+			assertSame(percept, pool.acquire());
+		} finally {
+			EmptyCognitiveFunction.sleep = sleep;
+			executor.shutdownNow();
+		}
+	}
+
+}
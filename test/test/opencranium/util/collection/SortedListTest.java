@@ -1,8 +1,12 @@
 package test.opencranium.util.collection;
 
+import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 import junit.framework.TestCase;
+import opencranium.util.collection.ElementFilter;
+import opencranium.util.collection.LockedOperation;
 import opencranium.util.collection.LockedSortedList;
 import opencranium.util.collection.SortedElement;
 import opencranium.util.collection.SortedList;
@@ -183,6 +187,120 @@ public class SortedListTest extends TestCase {
 		assertTrue(lsl.unlock(this));
 	}
 
+	@Test
+	public void testSnapshot() {
+		LockedSortedList<Element> lsl = new LockedSortedList<Element>();
+		assertTrue(lsl.snapshot().isEmpty());
+		Element e1 = new Element(1);
+		Element e2 = new Element(2);
+		assertTrue(lsl.addElement(e1));
+		assertTrue(lsl.addElement(e2));
+		List<Element> snapshot = lsl.snapshot();
+		assertEquals(2, snapshot.size());
+		assertSame(e2, snapshot.get(0));
+		assertSame(e1, snapshot.get(1));
+		assertSame(snapshot, lsl.snapshot());
+		long version = lsl.getVersion();
+		assertSame(e2, lsl.getFirstElement());
+		assertTrue(lsl.getVersion() != version);
+		// old snapshot is not modified
+		assertEquals(2, snapshot.size());
+		assertEquals(1, lsl.snapshot().size());
+		try {
+			lsl.snapshot().clear();
+			fail();
+		} catch (UnsupportedOperationException e) {
+		}
+	}
+
+	@Test
+	public void testExecute() {
+		LockedSortedList<Element> lsl = new LockedSortedList<Element>();
+		final Element e1 = new Element(1);
+		Element e2 = new Element(2);
+		assertTrue(lsl.addElement(e1));
+		assertTrue(lsl.addElement(e2));
+		assertTrue(lsl.execute(new LockedOperation<Element>() {
+			@Override
+			public boolean execute(Iterator<Element> iterator) {
+				boolean removed = false;
+				while (iterator.hasNext()) {
+					if (iterator.next() == e1) {
+						iterator.remove();
+						removed = true;
+					}
+				}
+				return removed;
+			}
+		}));
+		assertEquals(1, lsl.getSize());
+		List<Element> snapshot = lsl.snapshot();
+		assertEquals(1, snapshot.size());
+		// a read only operation keeps the version and the snapshot
+		long version = lsl.getVersion();
+		assertFalse(lsl.execute(new LockedOperation<Element>() {
+			@Override
+			public boolean execute(Iterator<Element> iterator) {
+				while (iterator.hasNext()) {
+					iterator.next();
+				}
+				return false;
+			}
+		}));
+		assertEquals(version, lsl.getVersion());
+		assertSame(snapshot, lsl.snapshot());
+		try {
+			lsl.execute(new LockedOperation<Element>() {
+				@Override
+				public boolean execute(Iterator<Element> iterator) {
+					throw new IllegalStateException();
+				}
+			});
+			fail();
+		} catch (IllegalStateException e) {
+		}
+		// the list was unlocked after the exception
+		assertNotNull(lsl.iterator(this));
+		assertTrue(lsl.unlock(this));
+	}
+
+	@Test
+	public void testDrain() {
+		LockedSortedList<Element> lsl = new LockedSortedList<Element>();
+		Element e1 = new Element(1);
+		Element e2 = new Element(2);
+		Element e3 = new Element(3);
+		Element e4 = new Element(4);
+		assertTrue(lsl.addElement(e1));
+		assertTrue(lsl.addElement(e2));
+		assertTrue(lsl.addElement(e3));
+		assertTrue(lsl.addElement(e4));
+
+		Element[] array = new Element[3];
+		assertEquals(2, lsl.drainTo(array, 2));
+		assertSame(e4, array[0]);
+		assertSame(e3, array[1]);
+		assertNull(array[2]);
+		assertEquals(2, lsl.getSize());
+
+		array = new Element[3];
+		ElementFilter<Element> filter = new ElementFilter<Element>() {
+			@Override
+			public boolean accept(Element element) {
+				return element.getSortingValue() > 1;
+			}
+		};
+		assertEquals(1, lsl.drainWhile(filter, array));
+		assertSame(e2, array[0]);
+		assertEquals(0, lsl.drainWhile(filter, array));
+		assertEquals(1, lsl.getSize());
+
+		assertEquals(1, lsl.drainTo(array, 10));
+		assertSame(e1, array[0]);
+		assertTrue(lsl.isEmpty());
+		assertEquals(0, lsl.drainTo(array, 10));
+	}
+
 	@Test
 	public void testClear() {
 		SortedList<Element> sl = new SortedList<Element>(3);